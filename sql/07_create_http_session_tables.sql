@@ -0,0 +1,149 @@
+-- 切换到e2ee_chat数据库
+\c e2ee_chat
+
+-- 创建HTTP会话表
+CREATE TABLE http_sessions (
+    idx BIGSERIAL PRIMARY KEY,
+    session_id VARCHAR(128) NOT NULL,
+    session_data BYTEA NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1,
+    max_inactive_interval INTEGER NOT NULL,
+    last_accessed_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMPTZ NOT NULL,
+    CONSTRAINT uk_http_sessions_session_id UNIQUE (session_id),
+    CONSTRAINT ck_http_sessions_data_length CHECK (length(session_data) <= 4096)
+);
+
+CREATE INDEX ix_http_sessions_expires_at ON http_sessions(expires_at);
+
+-- 保存会话函数（存在则覆盖并递增版本号）
+CREATE OR REPLACE FUNCTION save_http_session(
+    p_session_id VARCHAR(128),
+    p_session_data BYTEA,
+    p_max_inactive_interval INTEGER
+) RETURNS BIGINT
+SECURITY DEFINER
+AS $$
+DECLARE
+    v_version BIGINT;
+BEGIN
+    INSERT INTO http_sessions (
+        session_id,
+        session_data,
+        max_inactive_interval,
+        last_accessed_at,
+        expires_at
+    ) VALUES (
+        p_session_id,
+        p_session_data,
+        p_max_inactive_interval,
+        CURRENT_TIMESTAMP,
+        CURRENT_TIMESTAMP + make_interval(secs => p_max_inactive_interval)
+    )
+    ON CONFLICT (session_id) DO UPDATE
+    SET session_data = EXCLUDED.session_data,
+        version = http_sessions.version + 1,
+        max_inactive_interval = EXCLUDED.max_inactive_interval,
+        last_accessed_at = EXCLUDED.last_accessed_at,
+        expires_at = EXCLUDED.expires_at
+    RETURNING version INTO v_version;
+
+    RETURN v_version;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 读取会话函数（仅返回未过期的会话）
+CREATE OR REPLACE FUNCTION load_http_session(
+    p_session_id VARCHAR(128)
+) RETURNS TABLE(
+    session_data BYTEA,
+    version BIGINT,
+    max_inactive_interval INTEGER
+)
+SECURITY DEFINER
+AS $$
+BEGIN
+    RETURN QUERY
+    SELECT s.session_data,
+           s.version,
+           s.max_inactive_interval
+    FROM http_sessions s
+    WHERE s.session_id = p_session_id
+      AND s.expires_at > CURRENT_TIMESTAMP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 删除会话函数
+CREATE OR REPLACE FUNCTION delete_http_session(
+    p_session_id VARCHAR(128)
+) RETURNS BOOLEAN
+SECURITY DEFINER
+AS $$
+BEGIN
+    DELETE FROM http_sessions WHERE session_id = p_session_id;
+    RETURN FOUND;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 会话ID变更函数（容器重新分配会话ID后迁移原有记录）
+CREATE OR REPLACE FUNCTION rename_http_session(
+    p_old_session_id VARCHAR(128),
+    p_new_session_id VARCHAR(128)
+) RETURNS BOOLEAN
+SECURITY DEFINER
+AS $$
+BEGIN
+    UPDATE http_sessions
+    SET session_id = p_new_session_id
+    WHERE session_id = p_old_session_id
+      AND NOT EXISTS (SELECT 1 FROM http_sessions WHERE session_id = p_new_session_id);
+    RETURN FOUND;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 批量清理过期会话函数
+CREATE OR REPLACE FUNCTION purge_expired_http_sessions(
+    p_batch_size INTEGER DEFAULT 500
+) RETURNS INTEGER
+SECURITY DEFINER
+AS $$
+DECLARE
+    v_count INTEGER;
+BEGIN
+    DELETE FROM http_sessions
+    WHERE idx IN (
+        SELECT s.idx
+        FROM http_sessions s
+        WHERE s.expires_at <= CURRENT_TIMESTAMP
+        ORDER BY s.expires_at
+        LIMIT p_batch_size
+        FOR UPDATE SKIP LOCKED
+    );
+    GET DIAGNOSTICS v_count = ROW_COUNT;
+    RETURN v_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 授予服务账号执行权限
+GRANT EXECUTE ON FUNCTION save_http_session(VARCHAR, BYTEA, INTEGER) TO e2ee_chat_service;
+GRANT EXECUTE ON FUNCTION load_http_session(VARCHAR) TO e2ee_chat_service;
+GRANT EXECUTE ON FUNCTION delete_http_session(VARCHAR) TO e2ee_chat_service;
+GRANT EXECUTE ON FUNCTION rename_http_session(VARCHAR, VARCHAR) TO e2ee_chat_service;
+GRANT EXECUTE ON FUNCTION purge_expired_http_sessions(INTEGER) TO e2ee_chat_service;
+
+-- 添加注释
+COMMENT ON TABLE http_sessions IS 'HTTP会话持久化表';
+
+COMMENT ON COLUMN http_sessions.idx IS '自增主键';
+COMMENT ON COLUMN http_sessions.session_id IS '容器会话ID（JSESSIONID）';
+COMMENT ON COLUMN http_sessions.session_data IS '会话属性的紧凑二进制编码';
+COMMENT ON COLUMN http_sessions.version IS '会话数据版本号，每次保存递增';
+COMMENT ON COLUMN http_sessions.max_inactive_interval IS '最大不活动时间（秒）';
+COMMENT ON COLUMN http_sessions.last_accessed_at IS '最后保存时间';
+COMMENT ON COLUMN http_sessions.expires_at IS '过期时间';
+
+COMMENT ON FUNCTION save_http_session IS '保存HTTP会话，存在则覆盖并递增版本号';
+COMMENT ON FUNCTION load_http_session IS '读取未过期的HTTP会话';
+COMMENT ON FUNCTION delete_http_session IS '删除HTTP会话';
+COMMENT ON FUNCTION rename_http_session IS '将HTTP会话记录迁移到新的会话ID';
+COMMENT ON FUNCTION purge_expired_http_sessions IS '批量删除过期的HTTP会话，返回删除数量';
@@ -0,0 +1,85 @@
+-- 切换到e2ee_chat数据库
+\c e2ee_chat
+
+-- 发送消息并返回新消息信息的函数
+-- 与 send_message 相同，但返回新消息的元数据，供应用服务器填充会话尾部消息缓存
+CREATE OR REPLACE FUNCTION send_message_returning(
+    p_user_id UUID,
+    p_session_id UUID,
+    p_message_iv BYTEA,
+    p_message_content BYTEA,
+    p_is_system BOOLEAN DEFAULT FALSE
+) RETURNS TABLE(
+    message_id UUID,
+    cursor BIGINT,
+    receiver_id UUID,
+    sent_at TIMESTAMPTZ
+)
+SECURITY DEFINER
+AS $$
+DECLARE
+    v_initiator_id UUID;
+    v_participant_id UUID;
+    v_new_cursor BIGINT;
+    v_message_id UUID;
+    v_receiver_id UUID;
+    v_sent_at TIMESTAMPTZ := CURRENT_TIMESTAMP;
+BEGIN
+    -- 在同一条语句中验证权限、锁定会话并递增消息计数器，
+    -- 不再先以 SELECT ... FOR UPDATE 单独读取会话（应用服务器已通过成员索引预先校验了权限）
+    UPDATE chat_sessions AS s
+    SET message_counter = s.message_counter + 1
+    WHERE s.session_id = p_session_id
+      AND (s.initiator_id = p_user_id OR s.participant_id = p_user_id)
+    RETURNING s.message_counter, s.initiator_id, s.participant_id
+    INTO v_new_cursor, v_initiator_id, v_participant_id;
+
+    -- 会话不存在或用户无权限时返回空结果
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+
+    v_receiver_id := CASE
+        WHEN v_initiator_id = p_user_id THEN v_participant_id
+        ELSE v_initiator_id
+    END;
+
+    -- 插入新消息
+    INSERT INTO chat_messages AS m (
+        message_id,
+        session_id,
+        cursor,
+        sender_id,
+        receiver_id,
+        message_iv,
+        message_content,
+        is_system,
+        sent_at
+    ) VALUES (
+        gen_random_uuid(),
+        p_session_id,
+        v_new_cursor,
+        p_user_id,
+        v_receiver_id,
+        p_message_iv,
+        p_message_content,
+        p_is_system,
+        v_sent_at
+    )
+    RETURNING m.message_id INTO v_message_id;
+
+    -- 更新会话最后消息信息
+    UPDATE chat_sessions AS s
+    SET last_message_id = v_message_id,
+        last_message_at = v_sent_at
+    WHERE s.session_id = p_session_id;
+
+    RETURN QUERY SELECT v_message_id, v_new_cursor, v_receiver_id, v_sent_at;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 授予服务账号执行权限
+GRANT EXECUTE ON FUNCTION send_message_returning(UUID, UUID, BYTEA, BYTEA, BOOLEAN) TO e2ee_chat_service;
+
+-- 添加注释
+COMMENT ON FUNCTION send_message_returning IS '发送新消息，自动更新会话信息，返回新消息的ID、游标、接收者和发送时间';
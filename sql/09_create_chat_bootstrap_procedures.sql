@@ -0,0 +1,193 @@
+-- 切换到e2ee_chat数据库
+\c e2ee_chat
+
+-- 计算打开会话时消息窗口的锚点
+-- 优先使用指定的消息；未指定或该消息不属于会话时使用首条未读消息，没有未读消息时使用最后一条消息
+-- 仅供本文件中的函数内部调用，调用方负责校验用户是否为会话参与者
+CREATE OR REPLACE FUNCTION get_chat_anchor(
+    p_user_id UUID,
+    p_session_id UUID,
+    p_message_id UUID DEFAULT NULL
+) RETURNS TABLE(
+    anchor_cursor BIGINT,
+    anchor_unread BOOLEAN
+)
+AS $$
+DECLARE
+    v_message_id UUID;
+BEGIN
+    IF p_message_id IS NOT NULL THEN
+        SELECT m.message_id INTO v_message_id
+        FROM chat_messages m
+        WHERE m.message_id = p_message_id
+          AND m.session_id = p_session_id;
+    END IF;
+
+    IF v_message_id IS NULL THEN
+        v_message_id := get_first_unread(p_user_id, p_session_id);
+    END IF;
+
+    -- 会话中没有消息时返回空结果
+    RETURN QUERY
+    SELECT m.cursor,
+           m.receiver_id = p_user_id AND NOT m.is_read
+    FROM chat_messages m
+    WHERE m.message_id = v_message_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 打开会话时获取会话信息、对方用户资料和消息窗口锚点的函数
+CREATE OR REPLACE FUNCTION open_chat(
+    p_user_id UUID,
+    p_session_id UUID,
+    p_message_id UUID DEFAULT NULL
+) RETURNS TABLE(
+    session_id UUID,
+    initiator_id UUID,
+    participant_id UUID,
+    created_at TIMESTAMPTZ,
+    message_counter BIGINT,
+    last_message_id UUID,
+    last_message_at TIMESTAMPTZ,
+    peer_id UUID,
+    peer_username VARCHAR(16),
+    peer_display_name VARCHAR(32),
+    peer_public_key BYTEA,
+    peer_last_online TIMESTAMPTZ,
+    anchor_cursor BIGINT,
+    anchor_unread BOOLEAN
+)
+SECURITY DEFINER
+AS $$
+BEGIN
+    -- 返回会话信息（仅当用户是会话的发起者或参与者时）
+    RETURN QUERY
+    SELECT s.session_id,
+           s.initiator_id,
+           s.participant_id,
+           s.created_at,
+           s.message_counter,
+           s.last_message_id,
+           s.last_message_at,
+           p.user_id,
+           p.username,
+           p.display_name,
+           p.public_key,
+           p.last_online,
+           a.anchor_cursor,
+           COALESCE(a.anchor_unread, FALSE)
+    FROM chat_sessions s
+    JOIN user_profiles p ON p.user_id = CASE
+        WHEN s.initiator_id = p_user_id THEN s.participant_id
+        ELSE s.initiator_id
+    END
+    LEFT JOIN LATERAL get_chat_anchor(p_user_id, p_session_id, p_message_id) a ON TRUE
+    WHERE s.session_id = p_session_id
+      AND (s.initiator_id = p_user_id OR s.participant_id = p_user_id);
+END;
+$$ LANGUAGE plpgsql;
+
+-- 获取锚点前后消息窗口的函数
+-- 返回锚点之前最多 p_before 条消息，以及从锚点开始最多 p_after 条消息，按游标升序排列
+CREATE OR REPLACE FUNCTION get_messages_around(
+    p_user_id UUID,
+    p_session_id UUID,
+    p_message_id UUID DEFAULT NULL,
+    p_before INTEGER DEFAULT 20,
+    p_after INTEGER DEFAULT 30
+) RETURNS TABLE(
+    message_id UUID,
+    cursor BIGINT,
+    sender_id UUID,
+    receiver_id UUID,
+    is_system BOOLEAN,
+    is_read BOOLEAN,
+    message_iv BYTEA,
+    message_content BYTEA,
+    sent_at TIMESTAMPTZ
+)
+SECURITY DEFINER
+AS $$
+DECLARE
+    v_anchor BIGINT;
+    v_from BIGINT;
+    v_to BIGINT;
+BEGIN
+    -- 验证用户是否为会话参与者
+    IF NOT EXISTS (
+        SELECT 1
+        FROM chat_sessions s
+        WHERE s.session_id = p_session_id
+          AND (s.initiator_id = p_user_id OR s.participant_id = p_user_id)
+    ) THEN
+        RETURN;
+    END IF;
+
+    -- 更新最后在线时间
+    PERFORM update_last_online(p_user_id);
+
+    SELECT a.anchor_cursor INTO v_anchor
+    FROM get_chat_anchor(p_user_id, p_session_id, p_message_id) a;
+
+    -- 会话中没有消息时返回空结果
+    IF v_anchor IS NULL THEN
+        RETURN;
+    END IF;
+
+    SELECT COALESCE(MIN(sub.cursor), v_anchor) INTO v_from
+    FROM (
+        SELECT sub_cm.cursor
+        FROM chat_messages AS sub_cm
+        WHERE sub_cm.session_id = p_session_id
+          AND sub_cm.cursor < v_anchor
+        ORDER BY sub_cm.cursor DESC
+        LIMIT p_before
+    ) AS sub;
+
+    SELECT COALESCE(MAX(sub.cursor), v_anchor) INTO v_to
+    FROM (
+        SELECT sub_cm.cursor
+        FROM chat_messages AS sub_cm
+        WHERE sub_cm.session_id = p_session_id
+          AND sub_cm.cursor >= v_anchor
+        ORDER BY sub_cm.cursor
+        LIMIT p_after
+    ) AS sub;
+
+    -- 标记要返回的接收消息为已读
+    UPDATE chat_messages AS cm
+    SET is_read = TRUE
+    WHERE cm.session_id = p_session_id
+      AND cm.receiver_id = p_user_id
+      AND cm.is_read = FALSE
+      AND cm.cursor BETWEEN v_from AND v_to;
+
+    -- 返回消息列表
+    RETURN QUERY
+    SELECT m.message_id,
+           m.cursor,
+           m.sender_id,
+           m.receiver_id,
+           m.is_system,
+           m.is_read,
+           m.message_iv,
+           m.message_content,
+           m.sent_at
+    FROM chat_messages m
+    WHERE m.session_id = p_session_id
+      AND m.cursor BETWEEN v_from AND v_to
+    ORDER BY m.cursor;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 内部函数不允许直接调用
+REVOKE ALL ON FUNCTION get_chat_anchor(UUID, UUID, UUID) FROM PUBLIC;
+
+-- 授予服务账号执行权限
+GRANT EXECUTE ON FUNCTION open_chat(UUID, UUID, UUID) TO e2ee_chat_service;
+GRANT EXECUTE ON FUNCTION get_messages_around(UUID, UUID, UUID, INTEGER, INTEGER) TO e2ee_chat_service;
+
+-- 添加注释
+COMMENT ON FUNCTION get_chat_anchor IS '计算打开会话时消息窗口的锚点游标：指定消息、首条未读消息或最后一条消息';
+COMMENT ON FUNCTION open_chat IS '获取会话信息、对方用户资料和消息窗口锚点，仅当用户是会话参与者时返回';
+COMMENT ON FUNCTION get_messages_around IS '获取锚点前后的消息窗口，并将其中的接收消息标记为已读';
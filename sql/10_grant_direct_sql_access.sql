@@ -0,0 +1,33 @@
+-- 切换到e2ee_chat数据库
+\c e2ee_chat
+
+-- 直接 SQL 模式（dao.mode=sql）所需的权限
+-- 用户资料、会话列表、会话和消息分页不再通过存储过程，而是由服务账号直接执行参数化 SQL，
+-- 因此只授予这些查询实际访问的列，机密表、保险库表和其余写操作仍然只能通过存储过程访问
+--
+-- 注意：执行本脚本后，服务账号不再“仅具有存储过程执行权限”。
+-- 它可以读取所有用户的资料、所有会话以及所有消息的密文和 IV，并可以修改任意消息的已读标记和任意用户的最后在线时间。
+-- “只能访问自己参与的会话”这一检查不再由数据库保证，而是写在应用的 SQL 语句中（见 DirectSql）；
+-- 服务账号的凭据泄露或应用出现注入漏洞时，影响范围从存储过程允许的操作扩大到上述所有行。
+-- 不再使用直接 SQL 模式时，应执行文件末尾注释中的 REVOKE 语句收回这些权限
+
+-- 读取用户资料，刷新最后在线时间
+GRANT SELECT (user_id, username, display_name, public_key, last_online, registered_at) ON user_profiles TO e2ee_chat_service;
+GRANT UPDATE (last_online) ON user_profiles TO e2ee_chat_service;
+
+-- 读取会话
+GRANT SELECT (session_id, initiator_id, participant_id, created_at, message_counter, last_message_id, last_message_at)
+    ON chat_sessions TO e2ee_chat_service;
+
+-- 读取消息，将返回的接收消息标记为已读
+GRANT SELECT (message_id, session_id, cursor, sender_id, receiver_id, is_system, is_read, message_iv, message_content, sent_at)
+    ON chat_messages TO e2ee_chat_service;
+GRANT UPDATE (is_read) ON chat_messages TO e2ee_chat_service;
+
+COMMENT ON ROLE e2ee_chat_service IS '端到端加密聊天应用的服务账号，具有存储过程执行权限，以及直接 SQL 模式所需的部分表读写权限';
+
+-- 收回直接 SQL 模式的权限：
+-- REVOKE SELECT, UPDATE ON user_profiles FROM e2ee_chat_service;
+-- REVOKE SELECT ON chat_sessions FROM e2ee_chat_service;
+-- REVOKE SELECT, UPDATE ON chat_messages FROM e2ee_chat_service;
+-- COMMENT ON ROLE e2ee_chat_service IS '端到端加密聊天应用的服务账号，仅具有存储过程执行权限';
@@ -0,0 +1,87 @@
+-- 直接 SQL 模式的热点读取，与 DAO 在 dao.mode=sql 下执行的语句相同（见 DirectSql）
+-- 变量：user_id 为会话参与者的用户ID，session_id 为该用户参与的会话ID，通过 pgbench -D 传入：
+--   pgbench -n -M prepared -D user_id=<用户ID> -D session_id=<会话ID> -f direct_reads.sql
+-- 需要先执行 sql/10_grant_direct_sql_access.sql；用法见 README 的“DAO 模式基准测试”一节
+SELECT p.user_id, p.username, p.display_name, p.public_key, p.last_online, p.registered_at
+FROM user_profiles p
+WHERE p.user_id = :user_id;
+
+WITH touched AS (
+    UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = :user_id
+)
+SELECT s.session_id, s.initiator_id, s.participant_id, s.created_at,
+       s.message_counter, s.last_message_id, s.last_message_at
+FROM chat_sessions s
+WHERE s.initiator_id = :user_id OR s.participant_id = :user_id
+ORDER BY s.last_message_at DESC NULLS LAST;
+
+WITH touched AS (
+    UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = :user_id
+)
+SELECT s.session_id, s.initiator_id, s.participant_id, s.created_at,
+       s.message_counter, s.last_message_id, s.last_message_at
+FROM chat_sessions s
+WHERE s.session_id = :session_id
+  AND (s.initiator_id = :user_id OR s.participant_id = :user_id);
+
+WITH touched AS (
+    UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = :user_id
+), page AS (
+    SELECT m.message_id, m.cursor, m.sender_id, m.receiver_id, m.is_system, m.is_read,
+           m.message_iv, m.message_content, m.sent_at
+    FROM chat_messages m
+    WHERE m.session_id = :session_id
+      AND EXISTS (
+          SELECT 1 FROM chat_sessions s
+          WHERE s.session_id = m.session_id
+          AND (s.initiator_id = :user_id OR s.participant_id = :user_id)
+      )
+      AND m.cursor <= 9223372036854775807
+    ORDER BY m.cursor DESC
+    LIMIT 50
+), marked AS (
+    UPDATE chat_messages cm
+    SET is_read = TRUE
+    FROM page
+    WHERE cm.message_id = page.message_id
+      AND cm.receiver_id = :user_id
+      AND NOT cm.is_read
+    RETURNING cm.message_id
+)
+SELECT page.message_id, page.cursor, page.sender_id, page.receiver_id, page.is_system,
+       page.is_read OR marked.message_id IS NOT NULL AS is_read,
+       page.message_iv, page.message_content, page.sent_at
+FROM page
+LEFT JOIN marked ON marked.message_id = page.message_id
+ORDER BY page.cursor DESC;
+
+WITH touched AS (
+    UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = :user_id
+), page AS (
+    SELECT m.message_id, m.cursor, m.sender_id, m.receiver_id, m.is_system, m.is_read,
+           m.message_iv, m.message_content, m.sent_at
+    FROM chat_messages m
+    WHERE m.session_id = :session_id
+      AND EXISTS (
+          SELECT 1 FROM chat_sessions s
+          WHERE s.session_id = m.session_id
+          AND (s.initiator_id = :user_id OR s.participant_id = :user_id)
+      )
+      AND m.cursor >= 1
+    ORDER BY m.cursor ASC
+    LIMIT 50
+), marked AS (
+    UPDATE chat_messages cm
+    SET is_read = TRUE
+    FROM page
+    WHERE cm.message_id = page.message_id
+      AND cm.receiver_id = :user_id
+      AND NOT cm.is_read
+    RETURNING cm.message_id
+)
+SELECT page.message_id, page.cursor, page.sender_id, page.receiver_id, page.is_system,
+       page.is_read OR marked.message_id IS NOT NULL AS is_read,
+       page.message_iv, page.message_content, page.sent_at
+FROM page
+LEFT JOIN marked ON marked.message_id = page.message_id
+ORDER BY page.cursor ASC;
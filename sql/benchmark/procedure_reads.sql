@@ -0,0 +1,9 @@
+-- 存储过程模式的热点读取，与 DAO 在 dao.mode=procedure 下执行的语句相同
+-- 变量：user_id 为会话参与者的用户ID，session_id 为该用户参与的会话ID，通过 pgbench -D 传入：
+--   pgbench -n -M prepared -D user_id=<用户ID> -D session_id=<会话ID> -f procedure_reads.sql
+-- 用法见 README 的“DAO 模式基准测试”一节
+SELECT * FROM get_user_profile(:user_id);
+SELECT * FROM get_recent_sessions(:user_id);
+SELECT * FROM get_session(:user_id, :session_id);
+SELECT * FROM get_messages_before(:user_id, :session_id, -1, 50);
+SELECT * FROM get_messages_after(:user_id, :session_id, 1, 50);
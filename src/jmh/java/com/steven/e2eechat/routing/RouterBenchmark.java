@@ -0,0 +1,125 @@
+package com.steven.e2eechat.routing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 比较 {@link Router} 与原先 {@code SessionsController} 中基于 {@code endsWith}、{@code substring}、
+ * 正则表达式和 {@link UUID#fromString(String)} 的 GET 请求分派。
+ * <p>
+ * 两种实现都返回匹配到的处理器编号和解析出的会话ID，路由表与 {@code SessionsController} 中注册的相同。
+ * 运行方式：{@code mvn -Pjmh compile exec:exec -Djmh.args="RouterBenchmark"}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+    private static final Pattern UUID_PATTERN = Pattern.compile(
+            "^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$"
+    );
+    private static final String SESSION_ID = "3f2b8c1e-5d4a-4e6f-9a7b-1c2d3e4f5a6b";
+
+    private static final int ROOT = 0;
+    private static final int LIST = 1;
+    private static final int MESSAGES = 2;
+    private static final int OPEN = 3;
+    private static final int DETAIL = 4;
+    private static final int BAD_REQUEST = 5;
+
+    /**
+     * 请求路径，覆盖轮询最频繁的会话列表和消息接口，以及格式错误的会话ID。
+     */
+    @Param({"/list", "/" + SESSION_ID + "/messages", "/" + SESSION_ID, "/not-a-uuid/messages"})
+    public String pathInfo;
+
+    private Router<Integer> router;
+
+    /**
+     * 一次分派的结果。
+     *
+     * @param handler   处理器编号。
+     * @param sessionId 解析出的会话ID，没有时为 {@code null}。
+     */
+    public record Dispatch(int handler, UUID sessionId) {
+    }
+
+    /**
+     * 构建与 {@code SessionsController} 相同的 GET 路由表。
+     */
+    @Setup
+    public void setUp() {
+        router = Router.<Integer>builder()
+                .get("/", ROOT)
+                .get("/list", LIST)
+                .get("/{uuid}/messages", MESSAGES)
+                .get("/*/messages", BAD_REQUEST)
+                .get("/{uuid}/open", OPEN)
+                .get("/*/open", BAD_REQUEST)
+                .get("/{uuid}", DETAIL)
+                .build();
+    }
+
+    /**
+     * 通过 {@link Router} 分派。
+     *
+     * @return 分派结果。
+     */
+    @Benchmark
+    public Dispatch router() {
+        Router.Match<Integer> match = router.match("GET", pathInfo);
+        if (match == null) {
+            return new Dispatch(BAD_REQUEST, null);
+        }
+        return new Dispatch(match.handler(), match.parameters().length > 0 ? match.uuid(0) : null);
+    }
+
+    /**
+     * 按原先 {@code SessionsController.doGet} 的方式分派：后缀判断、截取子串、正则校验后解析UUID。
+     *
+     * @return 分派结果。
+     */
+    @Benchmark
+    public Dispatch legacy() {
+        if (pathInfo == null || "/".equals(pathInfo)) {
+            return new Dispatch(ROOT, null);
+        } else if ("/list".equals(pathInfo)) {
+            return new Dispatch(LIST, null);
+        } else if (pathInfo.endsWith("/messages")) {
+            return legacyWithSuffix(MESSAGES, 9);
+        } else if (pathInfo.endsWith("/open")) {
+            return legacyWithSuffix(OPEN, 5);
+        }
+        String sessionId = pathInfo.substring(1);
+        if (!UUID_PATTERN.matcher(sessionId.toLowerCase()).matches()) {
+            return new Dispatch(BAD_REQUEST, null);
+        }
+        return new Dispatch(DETAIL, UUID.fromString(sessionId));
+    }
+
+    private Dispatch legacyWithSuffix(int handler, int suffixLength) {
+        if (pathInfo.length() <= suffixLength) {
+            return new Dispatch(BAD_REQUEST, null);
+        }
+        String sessionId = pathInfo.substring(1, pathInfo.length() - suffixLength);
+        if (!UUID_PATTERN.matcher(sessionId).matches()) {
+            return new Dispatch(BAD_REQUEST, null);
+        }
+        return new Dispatch(handler, UUID.fromString(sessionId));
+    }
+}
@@ -0,0 +1,192 @@
+package com.steven.e2eechat.codec;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code BufferPool} 是按大小分级的直接内存缓冲区池，用于消息 IV 和密文的收发。
+ * <p>
+ * 每个大小级别按需一次分配一整块直接内存（slab），切分为若干个等长的 {@link ByteBuffer}，
+ * 借出的缓冲区归还后放回对应级别的空闲队列，不再释放。每个级别最多分配 {@code bufferPool.maxSlabsPerClass} 块，
+ * 达到上限后，或请求的容量超过最大级别时，临时分配不入池的堆缓冲区，保证调用方总能拿到缓冲区。
+ * <p>
+ * {@code bufferPool.debug=true} 时启用泄漏检测：每次借出都会记录调用栈，
+ * 如果 {@link PooledBuffer} 在未归还的情况下被垃圾回收，则记录一条包含借出位置的警告。
+ * 调试模式下访问已归还的缓冲区会抛出 {@link IllegalStateException}。
+ */
+public final class BufferPool {
+    private static final Logger logger = Logger.getLogger(BufferPool.class.getName());
+
+    /**
+     * 各级别的缓冲区容量。最大级别可以容纳一个完整的二进制发送消息请求体
+     * （3 字节头部 + 255 字节 IV + 4 字节长度 + 65535 字节密文）。
+     */
+    private static final int[] CLASS_CAPACITIES = {1 << 10, 1 << 12, 1 << 14, 72 << 10};
+    private static final int BUFFERS_PER_SLAB = 16;
+
+    private static final BufferPool INSTANCE = new BufferPool();
+
+    private final SizeClass[] classes;
+    private final boolean debug;
+    private final Cleaner cleaner;
+    private final AtomicLong leaks = new AtomicLong();
+
+    private BufferPool() {
+        int maxSlabsPerClass = Integer.parseInt(DatabaseConfig.getProperty("bufferPool.maxSlabsPerClass", "4"));
+        this.debug = Boolean.parseBoolean(DatabaseConfig.getProperty("bufferPool.debug", "false"));
+        this.cleaner = debug ? Cleaner.create() : null;
+        this.classes = new SizeClass[CLASS_CAPACITIES.length];
+        for (int i = 0; i < CLASS_CAPACITIES.length; i++) {
+            classes[i] = new SizeClass(CLASS_CAPACITIES[i], maxSlabsPerClass);
+        }
+    }
+
+    /**
+     * 获取 {@code BufferPool} 的单例实例。
+     *
+     * @return {@code BufferPool} 实例。
+     */
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 借出一个容量不小于 {@code capacity} 的缓冲区。
+     * <p>
+     * 返回的缓冲区 position 为 0，limit 为 {@code capacity}。使用完毕后必须调用 {@link PooledBuffer#release()}。
+     *
+     * @param capacity 需要的容量（字节）。
+     * @return 借出的 {@link PooledBuffer}。
+     * @throws IllegalArgumentException 如果 {@code capacity} 为负数。
+     */
+    public PooledBuffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("缓冲区容量不能为负数: " + capacity);
+        }
+        SizeClass sizeClass = null;
+        ByteBuffer buffer = null;
+        for (SizeClass candidate : classes) {
+            if (candidate.capacity >= capacity) {
+                sizeClass = candidate;
+                buffer = candidate.poll();
+                break;
+            }
+        }
+        if (buffer == null) {
+            // 超过最大级别或该级别已耗尽，分配不入池的缓冲区
+            sizeClass = null;
+            buffer = ByteBuffer.allocate(capacity);
+        }
+        buffer.clear().limit(capacity);
+
+        if (!debug) {
+            return new PooledBuffer(this, sizeClass, buffer, null);
+        }
+        LeakTracker tracker = new LeakTracker(new Throwable("缓冲区借出位置"), leaks);
+        PooledBuffer pooled = new PooledBuffer(this, sizeClass, buffer, tracker);
+        pooled.attachCleanable(cleaner.register(pooled, tracker));
+        return pooled;
+    }
+
+    /**
+     * 检查是否启用了调试模式（泄漏检测）。
+     *
+     * @return 如果 {@code bufferPool.debug=true}，则返回 {@code true}。
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * 获取调试模式下检测到的泄漏次数。
+     *
+     * @return 未归还即被回收的缓冲区数量；未启用调试模式时始终为 0。
+     */
+    public long leakCount() {
+        return leaks.get();
+    }
+
+    /**
+     * 将缓冲区放回所属级别的空闲队列。由 {@link PooledBuffer#release()} 调用。
+     */
+    void recycle(SizeClass sizeClass, ByteBuffer buffer) {
+        if (sizeClass != null) {
+            sizeClass.free.offer(buffer);
+        }
+    }
+
+    /**
+     * 一个大小级别：空闲队列以及已分配的 slab 数量。
+     */
+    static final class SizeClass {
+        private final int capacity;
+        private final int maxSlabs;
+        private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger slabs = new AtomicInteger();
+
+        private SizeClass(int capacity, int maxSlabs) {
+            this.capacity = capacity;
+            this.maxSlabs = maxSlabs;
+        }
+
+        /**
+         * 取出一个空闲缓冲区，队列为空时尝试分配新的 slab。
+         *
+         * @return 空闲缓冲区；已达到 slab 上限时返回 {@code null}。
+         */
+        private ByteBuffer poll() {
+            ByteBuffer buffer = free.poll();
+            while (buffer == null) {
+                int allocated = slabs.get();
+                if (allocated >= maxSlabs) {
+                    return null;
+                }
+                if (slabs.compareAndSet(allocated, allocated + 1)) {
+                    ByteBuffer slab = ByteBuffer.allocateDirect(capacity * BUFFERS_PER_SLAB);
+                    for (int i = 1; i < BUFFERS_PER_SLAB; i++) {
+                        free.offer(slab.slice(i * capacity, capacity));
+                    }
+                    return slab.slice(0, capacity);
+                }
+                buffer = free.poll();
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * 调试模式下跟踪单个借出的缓冲区。
+     * <p>
+     * 作为 {@link Cleaner} 的清理动作，它不能引用 {@link PooledBuffer} 本身，否则对象永远不会被回收。
+     */
+    static final class LeakTracker implements Runnable {
+        private final Throwable allocationSite;
+        private final AtomicLong leaks;
+        private volatile boolean released;
+
+        private LeakTracker(Throwable allocationSite, AtomicLong leaks) {
+            this.allocationSite = allocationSite;
+            this.leaks = leaks;
+        }
+
+        void markReleased() {
+            released = true;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                leaks.incrementAndGet();
+                logger.log(Level.WARNING, "检测到缓冲区泄漏：PooledBuffer 未归还即被回收", allocationSite);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.steven.e2eechat.codec;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code ByteBufferInputStream} 以 {@link InputStream} 的形式读取 {@link ByteBuffer} 中剩余的字节。
+ * <p>
+ * 用于把池化缓冲区中的 IV 和密文通过 {@link java.sql.PreparedStatement#setBinaryStream(int, InputStream, int)}
+ * 交给 JDBC 驱动，而不必先复制为 {@code byte[]}。读取操作会推进缓冲区的 position，调用方应传入独立的视图。
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    /**
+     * 创建输入流。
+     *
+     * @param buffer 数据所在的缓冲区，从当前 position 读到 limit。
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,131 @@
+package com.steven.e2eechat.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@code IncomingMessageDecoder} 增量解码二进制格式的发送消息请求体，格式见 {@link MessageBinaryCodec}。
+ * <p>
+ * 解码器从 {@link BufferPool} 借用一个直接内存缓冲区，调用方把读到的字节直接写入 {@link #buffer()}
+ * （例如通过 {@link jakarta.servlet.ServletInputStream#read(ByteBuffer)}），再调用 {@link #advance()}。
+ * 头部一旦完整就能得知声明的密文长度，超过上限时立即拒绝，而不是等整个请求体缓冲完毕之后才检查。
+ * <p>
+ * {@link #finish()} 返回的 IV 和密文是缓冲区的只读视图，不复制数据，
+ * 因此必须在消息处理完毕之后才能调用 {@link #release()} 归还缓冲区。
+ */
+public class IncomingMessageDecoder {
+    private static final int HEADER_LENGTH = 3;
+    private static final int LENGTH_FIELD = 4;
+    private static final int MAX_IV_LENGTH = 255;
+
+    private final int maxContentLength;
+    private final PooledBuffer pooled;
+    private final ByteBuffer buffer;
+    private int expectedLength = -1;
+
+    /**
+     * 创建解码器并从池中借用缓冲区。
+     *
+     * @param maxContentLength 密文的最大允许长度。
+     * @param contentLength    请求声明的 {@code Content-Length}，未知时为 -1。
+     *                         用于选择合适大小级别的缓冲区，超过最大请求体长度时按最大长度借用。
+     */
+    public IncomingMessageDecoder(int maxContentLength, long contentLength) {
+        this.maxContentLength = maxContentLength;
+        int maxBodyLength = HEADER_LENGTH + MAX_IV_LENGTH + LENGTH_FIELD + maxContentLength;
+        int capacity = contentLength >= 0 && contentLength < maxBodyLength ? (int) contentLength : maxBodyLength;
+        this.pooled = BufferPool.getInstance().acquire(capacity);
+        this.buffer = pooled.buffer();
+    }
+
+    /**
+     * 获取用于接收数据的缓冲区。
+     * <p>
+     * 缓冲区的 position 为已接收的字节数，limit 为允许写到的位置；
+     * 如果已经解析出请求体的总长度，则只允许写到该长度为止。
+     *
+     * @return 内部缓冲区。
+     */
+    public ByteBuffer buffer() {
+        return pooled.buffer();
+    }
+
+    /**
+     * 获取缓冲区剩余可写入的字节数。
+     *
+     * @return 剩余可写入的字节数。
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    /**
+     * 在向 {@link #buffer()} 写入字节之后调用，头部完整时校验声明的长度。
+     * <p>
+     * 已写入的字节数由缓冲区的 position 决定，写入时 position 已经前进。
+     *
+     * @throws IllegalArgumentException 如果格式版本不受支持或声明的密文长度超过上限。
+     */
+    public void advance() {
+        int position = buffer.position();
+        if (expectedLength >= 0 || position < HEADER_LENGTH) {
+            return;
+        }
+        if (buffer.get(0) != MessageBinaryCodec.FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported format version");
+        }
+        int ivLength = buffer.get(2) & 0xFF;
+        int lengthOffset = HEADER_LENGTH + ivLength;
+        if (position < lengthOffset + LENGTH_FIELD) {
+            return;
+        }
+        int contentLength = buffer.getInt(lengthOffset);
+        if (contentLength < 0 || contentLength > maxContentLength) {
+            throw new IllegalArgumentException("Message content too large");
+        }
+        expectedLength = lengthOffset + LENGTH_FIELD + contentLength;
+        if (position > expectedLength) {
+            throw new IllegalArgumentException("Unexpected trailing data");
+        }
+        if (expectedLength > buffer.limit()) {
+            // 请求的 Content-Length 小于请求体头部声明的长度
+            throw new IllegalArgumentException("Truncated message body");
+        }
+        buffer.limit(expectedLength);
+    }
+
+    /**
+     * 检查请求体是否已完整接收。
+     *
+     * @return 如果已接收到声明长度的全部字节，则返回 {@code true}。
+     */
+    public boolean isComplete() {
+        return expectedLength >= 0 && buffer.position() == expectedLength;
+    }
+
+    /**
+     * 从已接收的字节中取出 IV 和密文。
+     * <p>
+     * 返回的缓冲区是内部缓冲区的只读视图，在 {@link #release()} 之后不能再使用。
+     *
+     * @return 解码后的 {@link MessageBinaryCodec.IncomingMessage}。
+     * @throws IllegalArgumentException 如果请求体不完整。
+     */
+    public MessageBinaryCodec.IncomingMessage finish() {
+        if (!isComplete()) {
+            throw new IllegalArgumentException("Truncated message body");
+        }
+        int ivLength = buffer.get(2) & 0xFF;
+        int contentOffset = HEADER_LENGTH + ivLength + LENGTH_FIELD;
+        ByteBuffer messageIv = buffer.slice(HEADER_LENGTH, ivLength).asReadOnlyBuffer();
+        ByteBuffer messageContent = buffer.slice(contentOffset, expectedLength - contentOffset).asReadOnlyBuffer();
+        boolean isSystem = (buffer.get(1) & MessageBinaryCodec.FLAG_SYSTEM) != 0;
+        return new MessageBinaryCodec.IncomingMessage(messageIv, messageContent, isSystem);
+    }
+
+    /**
+     * 将缓冲区归还到池中。重复调用是安全的。
+     */
+    public void release() {
+        pooled.release();
+    }
+}
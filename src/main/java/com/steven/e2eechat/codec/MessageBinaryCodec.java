@@ -0,0 +1,115 @@
+package com.steven.e2eechat.codec;
+
+import com.steven.e2eechat.model.ChatMessage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * {@code MessageBinaryCodec} 实现消息接口的长度前缀二进制线路格式。
+ * <p>
+ * 所有整数均为大端序。消息列表响应的格式为：
+ * <pre>
+ * u8   格式版本（2）
+ * 每条消息，一直排列到响应体结束：
+ *   16B  messageId
+ *   i64  cursor
+ *   16B  senderId
+ *   16B  receiverId
+ *   u8   标志位（bit0 = isSystem，bit1 = isRead）
+ *   i64  sentAt（纪元微秒，UTC）
+ *   u8   IV 长度，随后为 IV 原始字节
+ *   u32  密文长度，随后为密文原始字节
+ * </pre>
+ * 发送消息的请求体格式为：
+ * <pre>
+ * u8   格式版本（当前为 1）
+ * u8   标志位（bit0 = isSystem）
+ * u8   IV 长度，随后为 IV 原始字节
+ * u32  密文长度，随后为密文原始字节
+ * </pre>
+ * 列表格式版本 2 不需要预先知道消息数量，消息可以逐条写出；早期带消息数量的版本 1 列表格式已不再使用。
+ * <p>
+ * 对于已经持有 {@code Uint8Array} 的 WebCrypto 客户端，这种格式不需要任何 Base64 或 JSON 处理。
+ * 请求体由 {@link IncomingMessageDecoder} 增量解码。
+ */
+public final class MessageBinaryCodec {
+    /**
+     * 二进制消息格式的媒体类型。
+     */
+    public static final String MEDIA_TYPE = "application/octet-stream";
+
+    /**
+     * 发送消息请求体的格式版本。
+     */
+    public static final byte FORMAT_VERSION = 1;
+    /**
+     * 不带消息数量、消息一直排列到响应体结束的列表格式版本。
+     */
+    public static final byte STREAM_FORMAT_VERSION = 2;
+    public static final int FLAG_SYSTEM = 1;
+    private static final int FLAG_READ = 1 << 1;
+
+    /**
+     * 解码后的发送消息请求。
+     * <p>
+     * IV 和密文是解码器池化缓冲区的只读视图，仅在解码器归还缓冲区之前有效。
+     *
+     * @param messageIv      消息 IV。
+     * @param messageContent 消息密文。
+     * @param isSystem       是否为系统消息。
+     */
+    public record IncomingMessage(ByteBuffer messageIv, ByteBuffer messageContent, boolean isSystem) {
+    }
+
+    /**
+     * 写入单条消息。
+     * <p>
+     * 调用方需要先写入格式版本 {@link #STREAM_FORMAT_VERSION}。
+     *
+     * @param out     目标输出流。
+     * @param message 要写入的消息。
+     * @throws IOException 如果写入过程中发生 I/O 错误。
+     */
+    public static void writeMessage(DataOutputStream out, ChatMessage message) throws IOException {
+        writeMessage(out, message.getMessageId(), message.getCursor(), message.getSenderId(),
+                message.getReceiverId(), message.isSystem(), message.isRead(), message.getSentAt(),
+                message.getMessageIv(), message.getMessageContent());
+    }
+
+    private static void writeMessage(DataOutputStream out, UUID messageId, long cursor, UUID senderId,
+                                     UUID receiverId, boolean isSystem, boolean isRead, OffsetDateTime sentAt,
+                                     byte[] messageIv, byte[] messageContent) throws IOException {
+        writeUuid(out, messageId);
+        out.writeLong(cursor);
+        writeUuid(out, senderId);
+        writeUuid(out, receiverId);
+        out.writeByte((isSystem ? FLAG_SYSTEM : 0) | (isRead ? FLAG_READ : 0));
+        out.writeLong(toEpochMicros(sentAt));
+        out.writeByte(messageIv.length);
+        out.write(messageIv);
+        out.writeInt(messageContent.length);
+        out.write(messageContent);
+    }
+
+    /**
+     * 将时间戳转换为 UTC 纪元微秒。
+     */
+    private static long toEpochMicros(OffsetDateTime value) {
+        Instant instant = value.toInstant();
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private MessageBinaryCodec() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
@@ -0,0 +1,67 @@
+package com.steven.e2eechat.codec;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code PooledBuffer} 是从 {@link BufferPool} 借出的缓冲区。
+ * <p>
+ * 使用完毕后必须调用 {@link #release()}（或通过 try-with-resources 调用 {@link #close()}）归还，
+ * 归还之后不能再访问 {@link #buffer()} 以及从中派生的任何视图。重复归还是安全的。
+ */
+public final class PooledBuffer implements AutoCloseable {
+    private final BufferPool pool;
+    private final BufferPool.SizeClass sizeClass;
+    private final BufferPool.LeakTracker tracker;
+    private ByteBuffer buffer;
+    private Cleaner.Cleanable cleanable;
+
+    PooledBuffer(BufferPool pool, BufferPool.SizeClass sizeClass, ByteBuffer buffer, BufferPool.LeakTracker tracker) {
+        this.pool = pool;
+        this.sizeClass = sizeClass;
+        this.buffer = buffer;
+        this.tracker = tracker;
+    }
+
+    void attachCleanable(Cleaner.Cleanable cleanable) {
+        this.cleanable = cleanable;
+    }
+
+    /**
+     * 获取借出的缓冲区。
+     *
+     * @return 缓冲区。
+     * @throws IllegalStateException 如果缓冲区已经归还。
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer current = buffer;
+        if (current == null) {
+            throw new IllegalStateException("缓冲区已归还");
+        }
+        return current;
+    }
+
+    /**
+     * 将缓冲区归还到池中。重复调用是安全的。
+     */
+    public void release() {
+        ByteBuffer released = buffer;
+        if (released == null) {
+            return;
+        }
+        buffer = null;
+        if (tracker != null) {
+            tracker.markReleased();
+            cleanable.clean();
+        }
+        pool.recycle(sizeClass, released);
+    }
+
+    /**
+     * 等同于 {@link #release()}。
+     */
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,36 @@
+package com.steven.e2eechat.config;
+
+import com.steven.e2eechat.service.AssetIndex;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * {@code AssetContextListener} 在 ServletContext 初始化时建立静态资源索引。
+ * <p>
+ * 索引在应用启动时一次性建立，而不是在第一次请求 `/assets/*` 时懒加载，
+ * 这样所有请求都不需要等待扫描目录和预压缩文件。
+ */
+@WebListener
+public class AssetContextListener implements ServletContextListener {
+
+    /**
+     * 在 ServletContext 初始化时被调用，扫描 `assets` 目录建立 {@link AssetIndex}。
+     *
+     * @param sce {@link ServletContextEvent} 对象，包含有关 ServletContext 的信息。
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        AssetIndex.getInstance().start(sce.getServletContext());
+    }
+
+    /**
+     * 在 ServletContext 销毁时被调用，停止开发模式下的目录监听。
+     *
+     * @param sce {@link ServletContextEvent} 对象，包含有关 ServletContext 的信息。
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        AssetIndex.getInstance().stop();
+    }
+}
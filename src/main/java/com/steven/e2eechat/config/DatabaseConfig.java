@@ -5,10 +5,21 @@ import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.pool.HikariPool;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * {@code DatabaseConfig} 类负责配置和管理数据库连接池。
@@ -17,13 +28,46 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 提供了获取数据库连接、检查连接池状态以及关闭连接池的方法。
  * <p>
  * 本类使用了单例模式以保证在应用程序中只有一个连接池实例。
+ * <p>
+ * 请求运行在虚拟线程上时（{@code virtualThreads.enabled=true}，需同时在 Tomcat 连接器上开启虚拟线程），
+ * 借出连接前先从一个大小为 {@code db.poolSize} 的公平信号量获取许可，连接关闭时归还。
+ * 成千上万个等待连接的请求在信号量上按到达顺序挂起，只占用很少的内存，也不会固定（pin）载体线程。
+ * 初始化和重建连接池时使用 {@link ReentrantLock} 而不是 {@code synchronized}：
+ * 在 Java 21 中，持有监视器锁期间阻塞（例如建立数据库连接）会使虚拟线程固定在载体线程上。
+ * <p>
+ * 除主连接池外，还可以通过 {@link #registerSubPool(String, int)} 注册命名的连接子池（例如供隔离舱独占）。
+ * 线程通过 {@link #routeConnections(String)} 指定子池后，{@link #getConnection()} 从该子池借出连接；
+ * 子池在第一次借出连接时创建，连接参数与主连接池相同。
+ * <p>
+ * 从主连接池借出连接的等待时间被平滑为一个随时间衰减的估计值（{@link #getRecentConnectionWaitMillis()}），
+ * 与等待连接的线程数（{@link #getThreadsAwaitingConnection()}）一起用于判断连接池是否饱和。
  */
 public class DatabaseConfig {
     private static final String DB_PROPERTIES_FILE = "db.properties";
 
     private static volatile HikariDataSource dataSource;
+    private static volatile Properties properties;
     private static final AtomicBoolean initialized = new AtomicBoolean(false);
-    private static final Object lock = new Object();
+    private static final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 虚拟线程模式下借出连接的许可，未启用时为 {@code null}。
+     */
+    private static volatile Semaphore connectionPermits;
+    private static volatile long connectionTimeout;
+    private static final Map<String, Integer> subPoolSizes = new ConcurrentHashMap<>();
+    private static final Map<String, HikariDataSource> subPools = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> connectionRoute = new ThreadLocal<>();
+
+    /**
+     * 新的等待时间样本在估计值中所占的权重。
+     */
+    private static final double WAIT_SMOOTHING = 0.2;
+    /**
+     * 没有新样本时，估计值按此时间常数（纳秒）指数衰减，避免连接池空闲后仍停留在高位。
+     */
+    private static final double WAIT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final AtomicLong waitEstimateBits = new AtomicLong(Double.doubleToLongBits(0));
+    private static volatile long lastWaitSampleNanos = System.nanoTime();
 
     /**
      * 获取数据库连接池的单例实例。
@@ -36,7 +80,8 @@ public class DatabaseConfig {
      */
     public static HikariDataSource getDataSource() {
         if (!initialized.get()) {
-            synchronized (lock) {
+            lock.lock();
+            try {
                 if (!initialized.get()) {
                     try {
                         initializeDataSource();
@@ -47,6 +92,8 @@ public class DatabaseConfig {
                         throw new RuntimeException("数据库连接池初始化失败", e);
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
         return dataSource;
@@ -56,27 +103,186 @@ public class DatabaseConfig {
      * 从连接池中获取一个数据库连接。
      * <p>
      * 每次调用此方法都会尝试从连接池中获取一个新的连接。如果连接池已关闭，则会尝试重新初始化连接池。
+     * 虚拟线程模式下先获取连接许可，最多等待 {@code db.connectionTimeout} 毫秒，返回的连接关闭时归还许可。
      *
      * @return {@link Connection} 数据库连接对象。
-     * @throws SQLException 如果获取连接过程中发生任何 SQL 异常。
+     * @throws SQLException 如果获取连接过程中发生任何 SQL 异常，或等待连接许可超时、被中断。
      */
     public static Connection getConnection() throws SQLException {
+        String route = connectionRoute.get();
+        if (route != null && subPoolSizes.containsKey(route)) {
+            return getSubPool(route).getConnection();
+        }
+
         HikariDataSource ds = getDataSource();
+        long start = System.nanoTime();
+        try {
+            return borrowMainConnection(ds);
+        } finally {
+            recordConnectionWait(System.nanoTime() - start);
+        }
+    }
+
+    private static Connection borrowMainConnection(HikariDataSource ds) throws SQLException {
+        Semaphore permits = connectionPermits;
+        if (permits == null) {
+            return borrowConnection(ds);
+        }
+
+        try {
+            if (!permits.tryAcquire(connectionTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("等待数据库连接许可超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("等待数据库连接许可时被中断", e);
+        }
+        try {
+            Connection connection = borrowConnection(ds);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PermitConnectionHandler(connection, permits));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取最近从主连接池借出连接的平均等待时间。
+     * <p>
+     * 每次借出（包括等待超时）记录一个样本，按指数加权平滑；之后没有新样本时随时间衰减。
+     *
+     * @return 等待时间的估计值（毫秒）。
+     */
+    public static double getRecentConnectionWaitMillis() {
+        return decayedWaitEstimate(Double.longBitsToDouble(waitEstimateBits.get()), System.nanoTime());
+    }
+
+    /**
+     * 获取正在等待主连接池连接的线程数，虚拟线程模式下包括等待连接许可的线程。
+     *
+     * @return 等待的线程数，连接池未初始化时返回 0。
+     */
+    public static int getThreadsAwaitingConnection() {
+        HikariDataSource ds = dataSource;
+        if (ds == null || ds.isClosed()) {
+            return 0;
+        }
+        Semaphore permits = connectionPermits;
+        int waiting = ds.getHikariPoolMXBean().getThreadsAwaitingConnection();
+        return permits != null ? waiting + permits.getQueueLength() : waiting;
+    }
+
+    private static void recordConnectionWait(long nanos) {
+        long now = System.nanoTime();
+        double sample = nanos / 1_000_000.0;
+        waitEstimateBits.getAndUpdate(bits -> {
+            double estimate = decayedWaitEstimate(Double.longBitsToDouble(bits), now);
+            return Double.doubleToLongBits(estimate + WAIT_SMOOTHING * (sample - estimate));
+        });
+        lastWaitSampleNanos = now;
+    }
+
+    private static double decayedWaitEstimate(double estimate, long now) {
+        long idle = Math.max(0, now - lastWaitSampleNanos);
+        return estimate * Math.exp(-idle / WAIT_DECAY_NANOS);
+    }
+
+    /**
+     * 注册一个命名的连接子池。子池在第一次借出连接时创建；重复注册同一名称时以第一次为准。
+     *
+     * @param name     子池名称。
+     * @param poolSize 子池的最大连接数。
+     */
+    public static void registerSubPool(String name, int poolSize) {
+        subPoolSizes.putIfAbsent(name, poolSize);
+    }
+
+    /**
+     * 指定当前线程之后的 {@link #getConnection()} 使用的连接子池。
+     * <p>
+     * 名称为 {@code null} 或未注册时使用主连接池。调用方应在处理完成后用返回值恢复之前的设置。
+     *
+     * @param name 子池名称，可以为 {@code null}。
+     * @return 之前的设置。
+     */
+    public static String routeConnections(String name) {
+        String previous = connectionRoute.get();
+        if (name == null) {
+            connectionRoute.remove();
+        } else {
+            connectionRoute.set(name);
+        }
+        return previous;
+    }
+
+    private static HikariDataSource getSubPool(String name) {
+        HikariDataSource pool = subPools.get(name);
+        if (pool != null) {
+            return pool;
+        }
+        getDataSource();
+        lock.lock();
+        try {
+            return subPools.computeIfAbsent(name,
+                    key -> createDataSource(properties, "E2EEChatPool-" + key, subPoolSizes.get(key)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Connection borrowConnection(HikariDataSource ds) throws SQLException {
         try {
             return ds.getConnection();
         } catch (SQLException e) {
             // 如果是因为连接池未初始化导致的异常，尝试重新初始化
             if (e.getCause() instanceof HikariPool.PoolInitializationException) {
-                synchronized (lock) {
+                lock.lock();
+                try {
                     initialized.set(false);
                     closeDataSource();
                     return getDataSource().getConnection();
+                } finally {
+                    lock.unlock();
                 }
             }
             throw e;
         }
     }
 
+    /**
+     * 持有连接许可的连接代理，第一次关闭时归还许可。
+     */
+    private static final class PermitConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private PermitConnectionHandler(Connection connection, Semaphore permits) {
+            this.connection = connection;
+            this.permits = permits;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                try {
+                    connection.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+                return null;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
     /**
      * 检查数据库连接池是否健康可用。
      * <p>
@@ -98,7 +304,7 @@ public class DatabaseConfig {
     /**
      * 获取数据库连接池的统计信息。
      * <p>
-     * 返回包含活动连接数、空闲连接数和等待连接数的格式化字符串。
+     * 返回包含活动连接数、空闲连接数和等待连接数的格式化字符串；虚拟线程模式下还包含等待连接许可的请求数。
      *
      * @return {@link String} 包含连接池统计信息的字符串，如果连接池未初始化则返回 "连接池未初始化"。
      */
@@ -106,12 +312,45 @@ public class DatabaseConfig {
         if (dataSource == null) {
             return "连接池未初始化";
         }
-        return String.format(
+        String stats = String.format(
                 "活动连接数: %d, 空闲连接数: %d, 等待连接数: %d",
                 dataSource.getHikariPoolMXBean().getActiveConnections(),
                 dataSource.getHikariPoolMXBean().getIdleConnections(),
                 dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()
         );
+        Semaphore permits = connectionPermits;
+        if (permits != null) {
+            stats += String.format(", 等待许可数: %d", permits.getQueueLength());
+        }
+        return stats;
+    }
+
+    /**
+     * 读取 `db.properties` 中的配置项。
+     * <p>
+     * 配置文件只在首次调用时加载一次，之后复用缓存的 {@link Properties}。
+     * 除数据库连接参数外，其他模块的可选配置（例如会话存储）也放在同一个文件中。
+     *
+     * @param key          配置项名称。
+     * @param defaultValue 配置项不存在时返回的默认值。
+     * @return 配置项的值，如果不存在则返回 {@code defaultValue}。
+     * @throws RuntimeException 如果无法找到或加载配置文件。
+     */
+    public static String getProperty(String key, String defaultValue) {
+        Properties props = properties;
+        if (props == null) {
+            lock.lock();
+            try {
+                if (properties == null) {
+                    properties = loadProperties();
+                }
+                props = properties;
+            } finally {
+                lock.unlock();
+            }
+        }
+        String value = props.getProperty(key, defaultValue);
+        return value != null ? value.trim() : null;
     }
 
     /**
@@ -123,7 +362,27 @@ public class DatabaseConfig {
      * @throws RuntimeException 如果加载配置文件或初始化连接池过程中发生任何异常。
      */
     private static void initializeDataSource() {
-        Properties props = loadProperties();
+        if (properties == null) {
+            properties = loadProperties();
+        }
+        Properties props = properties;
+        int poolSize = Integer.parseInt(props.getProperty("db.poolSize", "10"));
+        dataSource = createDataSource(props, "E2EEChatPool", poolSize);
+
+        // 虚拟线程模式下，等待连接的请求在公平信号量上挂起
+        boolean virtualThreads = Boolean.parseBoolean(props.getProperty("virtualThreads.enabled", "false").trim());
+        connectionPermits = virtualThreads ? new Semaphore(poolSize, true) : null;
+    }
+
+    /**
+     * 按 `db.properties` 中的连接参数创建连接池。
+     *
+     * @param props    配置。
+     * @param poolName 连接池名称。
+     * @param poolSize 最大连接数。
+     * @return 新的 {@link HikariDataSource}。
+     */
+    private static HikariDataSource createDataSource(Properties props, String poolName, int poolSize) {
         HikariConfig config = new HikariConfig();
 
         // 设置数据库连接基础信息
@@ -133,16 +392,17 @@ public class DatabaseConfig {
         config.setPassword(props.getProperty("db.password"));
 
         // 设置连接池大小
-        config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.poolSize", "10")));
+        config.setMaximumPoolSize(poolSize);
         // 设置连接超时时间
-        config.setConnectionTimeout(Long.parseLong(props.getProperty("db.connectionTimeout", "30000")));
+        connectionTimeout = Long.parseLong(props.getProperty("db.connectionTimeout", "30000"));
+        config.setConnectionTimeout(connectionTimeout);
         // 设置空闲连接超时时间
         config.setIdleTimeout(Long.parseLong(props.getProperty("db.idleTimeout", "600000")));
         // 设置连接的最长生命周期
         config.setMaxLifetime(Long.parseLong(props.getProperty("db.maxLifetime", "1800000")));
 
         // 设置连接池名称
-        config.setPoolName("E2EEChatPool");
+        config.setPoolName(poolName);
 
         // 优化配置，使用预处理语句缓存
         config.addDataSourceProperty("cachePrepStmts", "true");
@@ -155,7 +415,7 @@ public class DatabaseConfig {
         // 设置连接初始化 SQL，例如设置时区
         config.setConnectionInitSql("SET TIME ZONE 'UTC'");
 
-        dataSource = new HikariDataSource(config);
+        return new HikariDataSource(config);
     }
 
     /**
@@ -180,15 +440,20 @@ public class DatabaseConfig {
     /**
      * 关闭数据库连接池。
      * <p>
-     * 释放所有连接并关闭连接池，此操作通常在应用程序关闭时执行。
-     * 使用同步块确保线程安全。
+     * 释放所有连接并关闭连接池及已创建的连接子池，此操作通常在应用程序关闭时执行。
+     * 使用锁确保线程安全。
      */
     public static void closeDataSource() {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (dataSource != null && !dataSource.isClosed()) {
                 dataSource.close();
                 initialized.set(false);
             }
+            subPools.values().forEach(HikariDataSource::close);
+            subPools.clear();
+        } finally {
+            lock.unlock();
         }
     }
 
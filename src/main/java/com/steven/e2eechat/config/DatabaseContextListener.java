@@ -1,5 +1,8 @@
 package com.steven.e2eechat.config;
 
+import com.steven.e2eechat.dao.DaoExecutor;
+import com.steven.e2eechat.service.HttpSessionStore;
+import com.steven.e2eechat.service.StatsReporter;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.annotation.WebListener;
@@ -23,13 +26,23 @@ public class DatabaseContextListener implements ServletContextListener {
      * 在 ServletContext 销毁时被调用。
      * <p>
      * 此方法执行以下操作：
-     * 1. 遍历并注销所有已注册的 JDBC 驱动程序，防止可能的内存泄漏。
-     * 2. 调用 {@link DatabaseConfig#closeDataSource()} 关闭数据库连接池，释放数据库连接等资源。
+     * 1. 停止持久化会话的后台清理任务、虚拟线程固定诊断和运行统计输出。
+     * 2. 关闭执行异步 DAO 调用的 {@link DaoExecutor} 线程池。
+     * 3. 遍历并注销所有已注册的 JDBC 驱动程序，防止可能的内存泄漏。
+     * 4. 调用 {@link DatabaseConfig#closeDataSource()} 关闭数据库连接池，释放数据库连接等资源。
      *
      * @param sce {@link ServletContextEvent} 对象，包含有关 ServletContext 的信息。
      */
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
+        // 停止持久化会话清理任务
+        HttpSessionStore.getInstance().stop();
+        PinningMonitor.getInstance().stop();
+        StatsReporter.getInstance().stop();
+
+        // 停止异步 DAO 线程池
+        DaoExecutor.shutdown();
+
         // 注销所有已注册的 JDBC 驱动程序
         Enumeration<Driver> drivers = DriverManager.getDrivers();
         while (drivers.hasMoreElements()) {
@@ -49,13 +62,17 @@ public class DatabaseContextListener implements ServletContextListener {
     /**
      * 在 ServletContext 初始化时被调用。
      * <p>
-     * 目前此方法为空，可以根据需要在应用程序启动时执行一些初始化操作，
-     * 例如，初始化某些全局配置或执行必要的检查。
+     * 如果启用了数据库会话存储（{@code session.store=jdbc}），则启动过期会话的后台清理任务；
+     * 如果启用了虚拟线程固定诊断（{@code virtualThreads.pinningDiagnostics=true}），则启动 {@link PinningMonitor}。
+     * 最后启动定期输出运行统计的 {@link StatsReporter}。
      *
      * @param sce {@link ServletContextEvent} 对象，包含有关 ServletContext 的信息。
      */
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        // 在此处添加应用程序启动时需要执行的初始化操作
+        // 启动持久化会话清理任务
+        HttpSessionStore.getInstance().start();
+        PinningMonitor.getInstance().start();
+        StatsReporter.getInstance().start();
     }
 }
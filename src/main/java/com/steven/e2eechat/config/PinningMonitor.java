@@ -0,0 +1,109 @@
+package com.steven.e2eechat.config;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * {@code PinningMonitor} 记录虚拟线程被固定（pin）在载体线程上的情况，用于排查虚拟线程模式下的吞吐问题。
+ * <p>
+ * 在 Java 21 中，虚拟线程在 {@code synchronized} 块内或本地方法中阻塞时无法卸载，会一直占用载体线程。
+ * 本类通过 JFR 的 {@code jdk.VirtualThreadPinned} 事件监听固定时间超过阈值的阻塞，
+ * 将持续时间和阻塞处的调用栈写入日志，并统计发生次数，次数由 {@code StatsReporter} 定期写入日志。{@link DatabaseConfig} 的初始化和重建连接池
+ * 已改用 {@link java.util.concurrent.locks.ReentrantLock}，日志中仍出现的固定通常来自第三方库或其他同步代码。
+ * <p>
+ * 配置项（`db.properties`）：{@code virtualThreads.pinningDiagnostics}、{@code virtualThreads.pinnedThresholdMillis}。
+ */
+public class PinningMonitor {
+    private static final Logger logger = Logger.getLogger(PinningMonitor.class.getName());
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_FRAMES = 12;
+
+    private static final PinningMonitor INSTANCE = new PinningMonitor();
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final LongAdder pinnedEvents = new LongAdder();
+    private RecordingStream stream;
+
+    private PinningMonitor() {
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("virtualThreads.pinningDiagnostics", "false"));
+        this.threshold = Duration.ofMillis(
+                Long.parseLong(DatabaseConfig.getProperty("virtualThreads.pinnedThresholdMillis", "20")));
+    }
+
+    /**
+     * 获取 {@code PinningMonitor} 的单例实例。
+     *
+     * @return {@code PinningMonitor} 实例。
+     */
+    public static PinningMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始监听虚拟线程固定事件。未启用诊断时不执行任何操作。
+     */
+    public void start() {
+        if (!enabled || stream != null) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::record);
+        stream.startAsync();
+        logger.info("虚拟线程固定诊断已启动，阈值: " + threshold.toMillis() + " ms");
+    }
+
+    /**
+     * 停止监听。
+     */
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    /**
+     * 检查是否启用了固定诊断。
+     *
+     * @return 如果配置了 {@code virtualThreads.pinningDiagnostics=true} 则返回 {@code true}。
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取启动以来记录到的固定次数。
+     *
+     * @return 超过阈值的固定次数。
+     */
+    public long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+
+    private void record(RecordedEvent event) {
+        pinnedEvents.increment();
+        StringBuilder message = new StringBuilder("虚拟线程被固定 ")
+                .append(event.getDuration().toMillis()).append(" ms");
+        if (event.getThread() != null) {
+            message.append("，线程: ").append(event.getThread().getJavaName());
+        }
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(frames.size(), MAX_LOGGED_FRAMES); i++) {
+                RecordedFrame frame = frames.get(i);
+                message.append("\n    at ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        logger.warning(message.toString());
+    }
+}
@@ -3,6 +3,8 @@ package com.steven.e2eechat.controller;
 import com.steven.e2eechat.dto.web.LoginRequest;
 import com.steven.e2eechat.dto.web.RegisterRequest;
 import com.steven.e2eechat.model.UserProfile;
+import com.steven.e2eechat.service.HttpSessionStore;
+import com.steven.e2eechat.service.SessionRowCache;
 import com.steven.e2eechat.service.UserService;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -251,6 +253,8 @@ public class AccountController extends HttpServlet {
      * 处理用户注销请求。
      * <p>
      * 使当前会话失效，并重定向到登录页面。
+     * 如果启用了数据库会话存储，还会删除对应的持久化会话，防止旧的 JSESSIONID 在其他节点上被恢复。
+     * 同时清除该用户缓存的会话列表片段。
      *
      * @param request  客户端发送的 {@link HttpServletRequest} 对象。
      * @param response 服务器发送的 {@link HttpServletResponse} 对象，用于重定向。
@@ -260,6 +264,14 @@ public class AccountController extends HttpServlet {
             throws IOException {
         HttpSession session = request.getSession(false);
         if (session != null) {
+            HttpSessionStore sessionStore = HttpSessionStore.getInstance();
+            if (sessionStore.isEnabled()) {
+                sessionStore.delete(session.getId(), session.getMaxInactiveInterval());
+            }
+            // 清除该用户缓存的会话列表片段
+            if (session.getAttribute("user") instanceof UserProfile user) {
+                SessionRowCache.getInstance().evict(user.getUserId());
+            }
             session.invalidate();
         }
         response.sendRedirect(request.getContextPath() + "/account/login");
@@ -1,30 +1,69 @@
 package com.steven.e2eechat.controller;
 
+import com.steven.e2eechat.filter.GzipSupport;
+import com.steven.e2eechat.service.AssetIndex;
+import com.steven.e2eechat.service.AssetIndex.Asset;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * {@code AssetsController} 用于处理对 `/assets/*` 路径的静态资源请求。
  * <p>
- * 该 Servlet 负责从 Web 应用的 `assets` 目录下检索请求的资源，并将其发送回客户端。
- * 它设置了缓存控制头以优化性能，并确保只提供 `assets` 目录下的文件，防止目录遍历攻击。
+ * 该 Servlet 从启动时建立的 {@link AssetIndex} 中查找请求的资源，并将其发送回客户端。
+ * 通过带内容哈希的版本化路径（由 JSP 中的 {@code asset:url} 函数生成）请求的资源以 {@code immutable} 缓存一年；
+ * 通过普通路径请求的资源则要求浏览器每次使用 {@code ETag} 重新验证，避免部署后继续使用旧文件。
+ * 它为每个资源设置强 {@code ETag}、{@code Last-Modified} 和缓存控制头，对条件请求返回 304，
+ * 并在客户端支持时直接发送预压缩的 gzip 版本。
+ * 支持单个字节范围的 {@code Range} 请求；超过内存缓存上限的大文件交给 Tomcat 的 sendfile 发送，
+ * 容器不支持时退回到经由用户空间缓冲区的逐块复制。HEAD 请求只返回响应头，不读取也不写出响应体。
+ * 只有索引中存在的路径才会被响应，因此不会提供 `assets` 目录之外的文件。
  */
 @WebServlet(name = "AssetsController", urlPatterns = {"/assets/*"})
 public class AssetsController extends HttpServlet {
+    private static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable"; // 1年
+    private static final String CACHE_CONTROL_REVALIDATE = "public, no-cache";
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 表示无法满足的范围请求。
+     */
+    private static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private final AssetIndex assetIndex = AssetIndex.getInstance();
+
+    /**
+     * 闭区间字节范围。
+     *
+     * @param start 起始偏移。
+     * @param end   结束偏移（包含）。
+     */
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
 
     /**
      * 处理对静态资源的 HTTP GET 请求。
      * <p>
-     * 接收客户端对 `/assets/*` 的请求，解析请求的资源路径，并在服务器的 `assets` 目录下查找对应的文件。
-     * 如果文件存在且位于 `assets` 目录下，则设置正确的 `Content-Type` 头和缓存控制头，并将文件内容写入响应输出流。
-     * 如果请求的资源不存在或路径不合法，则返回 404 错误。
+     * 接收客户端对 `/assets/*` 的请求，在 {@link AssetIndex} 中查找对应的资源。
+     * 如果请求携带的 {@code If-None-Match} 或 {@code If-Modified-Since} 与资源当前版本一致，则返回 304；
+     * 否则设置正确的 `Content-Type`、`Content-Length` 和缓存控制头，并写出内存中的内容或磁盘上的文件。
+     * 携带 {@code Range} 请求头时返回 206 和对应的字节范围，范围无法满足时返回 416。
+     * 如果请求的资源不存在，则返回 404 错误。容器对 HEAD 请求调用本方法时，设置完响应头即返回。
      *
      * @param request  客户端发送的 {@link HttpServletRequest} 对象。
      * @param response 服务器发送的 {@link HttpServletResponse} 对象。
@@ -36,34 +75,217 @@ public class AssetsController extends HttpServlet {
             throws ServletException, IOException {
         // 获取请求的资源路径信息
         String pathInfo = request.getPathInfo();
-        if (pathInfo == null || pathInfo.equals("/")) {
+        Asset asset = assetIndex.lookupVersioned(pathInfo);
+        boolean versioned = asset != null;
+        if (!versioned) {
+            asset = assetIndex.lookup(pathInfo);
+        }
+        if (asset == null) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
-        // 获取 Web 应用根目录的真实路径
-        String webappPath = request.getServletContext().getRealPath("/");
-        // 构建请求资源的完整路径
-        Path resourcePath = Paths.get(webappPath, "assets", pathInfo);
+        // 解析 Range 请求，范围请求只针对原始内容
+        ByteRange range = null;
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && isRangeApplicable(request, asset)) {
+            range = parseRange(rangeHeader, asset.length());
+        }
 
-        // 安全检查：确保请求的资源位于 assets 目录下，防止目录遍历攻击
-        Path assetsRoot = Paths.get(webappPath, "assets").toAbsolutePath().normalize();
-        Path absoluteResourcePath = resourcePath.toAbsolutePath().normalize();
-        if (!Files.exists(resourcePath) || !absoluteResourcePath.startsWith(assetsRoot)) {
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        // 客户端支持 gzip 且存在预压缩版本时，直接发送压缩后的内容
+        boolean gzip = range == null && asset.gzipContent() != null && GzipSupport.acceptsGzip(request);
+        String etag = gzip ? asset.gzipEtag() : asset.etag();
+
+        // 设置响应的 Content-Type，根据文件扩展名获取 MIME 类型
+        if (asset.contentType() != null) {
+            response.setContentType(asset.contentType());
+        }
+        // 版本化 URL 的内容永远不会改变，可以永久缓存；其他 URL 每次使用前都需要用 ETag 重新验证
+        response.setHeader("Cache-Control", versioned ? CACHE_CONTROL_IMMUTABLE : CACHE_CONTROL_REVALIDATE);
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", asset.lastModified());
+        response.setHeader("Accept-Ranges", "bytes");
+        if (asset.gzipContent() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+
+        if (isNotModified(request, asset, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
             return;
         }
 
-        // 设置响应的 Content-Type，根据文件扩展名获取 MIME 类型
-        String contentType = getServletContext().getMimeType(resourcePath.toString());
-        if (contentType != null) {
-            response.setContentType(contentType);
+        if (range == UNSATISFIABLE) {
+            response.setHeader("Content-Range", "bytes */" + asset.length());
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        boolean headOnly = "HEAD".equals(request.getMethod());
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(asset.gzipContent().length);
+            if (!headOnly) {
+                response.getOutputStream().write(asset.gzipContent());
+            }
+            return;
+        }
+
+        long start = 0;
+        long length = asset.length();
+        if (range != null) {
+            start = range.start();
+            length = range.length();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range",
+                    "bytes " + range.start() + "-" + range.end() + "/" + asset.length());
+        }
+        response.setContentLengthLong(length);
+        if (headOnly) {
+            // HEAD 请求只需要响应头，不必读取文件内容再由容器丢弃
+            return;
+        }
+
+        if (asset.content() != null) {
+            response.getOutputStream().write(asset.content(), (int) start, (int) length);
+        } else if (!trySendfile(request, asset, start, length)) {
+            // 连接器未启用 sendfile（例如使用 NIO2 或关闭了 useSendfile）时退回到逐块复制
+            copyFile(asset, start, length, response);
+        }
+    }
+
+    private boolean isNotModified(HttpServletRequest request, Asset asset, String etag) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match 使用弱比较，忽略 W/ 前缀
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = candidate.trim();
+                if (value.startsWith("W/")) {
+                    value = value.substring(2);
+                }
+                if (value.equals("*") || value.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
         }
+        // HTTP 日期只精确到秒
+        return ifModifiedSince != -1 && asset.lastModified() / 1000 <= ifModifiedSince / 1000;
+    }
 
-        // 设置缓存控制头，指示客户端可以缓存资源一年
-        response.setHeader("Cache-Control", "public, max-age=31536000"); // 1年
+    /**
+     * 判断 Range 请求头是否适用于资源的当前版本。
+     * <p>
+     * 如果请求携带的 {@code If-Range} 与资源当前的 ETag 或最后修改时间不一致，则忽略范围请求，返回完整内容。
+     */
+    private boolean isRangeApplicable(HttpServletRequest request, Asset asset) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range 使用强比较
+            return ifRange.equals(asset.etag());
+        }
+        try {
+            long date = request.getDateHeader("If-Range");
+            return date != -1 && asset.lastModified() / 1000 == date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 
-        // 将请求的资源内容写入响应输出流
-        Files.copy(resourcePath, response.getOutputStream());
+    /**
+     * 解析单个字节范围。
+     * <p>
+     * 支持 {@code bytes=a-b}、{@code bytes=a-} 和 {@code bytes=-n} 三种形式。
+     * 多个范围或格式不正确的请求头会被忽略，返回完整内容。
+     *
+     * @return 解析出的范围；需要忽略时返回 {@code null}；无法满足时返回 {@link #UNSATISFIABLE}。
+     */
+    private ByteRange parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long start;
+        long end;
+        try {
+            if (dash == 0) {
+                // 后缀范围：最后 n 个字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start < 0 || end < start) {
+            return null;
+        }
+        if (start >= length) {
+            return UNSATISFIABLE;
+        }
+        return new ByteRange(start, Math.min(end, length - 1));
+    }
+
+    /**
+     * 通过 Tomcat 的 sendfile 支持发送文件。
+     * <p>
+     * 设置 {@code org.apache.tomcat.sendfile.*} 请求属性后，容器会在请求处理完成后由内核直接将文件写入套接字，
+     * 文件内容不会进入用户空间。
+     *
+     * @return 如果容器接管了文件发送则返回 {@code true}。
+     */
+    private boolean trySendfile(HttpServletRequest request, Asset asset, long start, long length) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, asset.file().toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, start + length);
+        return true;
+    }
+
+    /**
+     * 将文件的指定范围逐块复制到响应中。
+     * <p>
+     * 响应输出流不是文件或套接字通道，{@link FileChannel#transferTo} 在这里同样要经过用户空间缓冲区，
+     * 因此直接使用固定大小的缓冲区复制，只在容器不支持 sendfile 时使用。
+     */
+    private void copyFile(Asset asset, long start, long length, HttpServletResponse response)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(asset.file(), StandardOpenOption.READ)) {
+            InputStream in = Channels.newInputStream(channel.position(start));
+            ServletOutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
     }
 }
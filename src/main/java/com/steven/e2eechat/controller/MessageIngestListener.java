@@ -0,0 +1,142 @@
+package com.steven.e2eechat.controller;
+
+import com.steven.e2eechat.codec.IncomingMessageDecoder;
+import com.steven.e2eechat.codec.MessageBinaryCodec;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code MessageIngestListener} 以非阻塞方式读取二进制格式的发送消息请求体。
+ * <p>
+ * 容器在数据可读时回调 {@link #onDataAvailable()}，监听器把字节直接读入
+ * {@link IncomingMessageDecoder} 从 {@link com.steven.e2eechat.codec.BufferPool} 借用的直接内存缓冲区，并在头部到达后立即校验声明的密文长度。
+ * 请求体读取完毕后调用 {@link Handler} 处理消息，最后结束异步上下文。
+ */
+class MessageIngestListener implements ReadListener {
+    private static final Logger logger = Logger.getLogger(MessageIngestListener.class.getName());
+
+    /**
+     * 请求体解码完成后的处理回调。
+     */
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * 处理解码后的消息并写入响应。
+         * <p>
+         * 消息的 IV 和密文只在本次调用期间有效。
+         *
+         * @param message 解码后的消息。
+         * @throws IOException 如果写入响应时发生 I/O 错误。
+         */
+        void handle(MessageBinaryCodec.IncomingMessage message) throws IOException;
+    }
+
+    private final AsyncContext asyncContext;
+    private final ServletInputStream input;
+    private final IncomingMessageDecoder decoder;
+    private final Handler handler;
+    private boolean finished;
+
+    /**
+     * 创建监听器。
+     *
+     * @param asyncContext     当前请求的异步上下文。
+     * @param input            请求体输入流。
+     * @param maxContentLength 密文的最大允许长度。
+     * @param contentLength    请求声明的 {@code Content-Length}，未知时为 -1。
+     * @param handler          请求体解码完成后的处理回调。
+     */
+    MessageIngestListener(AsyncContext asyncContext, ServletInputStream input, int maxContentLength,
+                          long contentLength, Handler handler) {
+        this.asyncContext = asyncContext;
+        this.input = input;
+        this.decoder = new IncomingMessageDecoder(maxContentLength, contentLength);
+        this.handler = handler;
+    }
+
+    /**
+     * 在有数据可读时被容器调用，读取当前所有可用的数据。
+     *
+     * @throws IOException 如果读取请求体时发生 I/O 错误。
+     */
+    @Override
+    public void onDataAvailable() throws IOException {
+        try {
+            while (!finished && !input.isFinished() && input.isReady()) {
+                if (decoder.remaining() == 0) {
+                    // 已读满声明的长度，再探测一个字节确认请求体是否结束
+                    if (input.read() < 0) {
+                        return;
+                    }
+                    fail(decoder.isComplete() ? "Unexpected trailing data" : "Message content too large");
+                    return;
+                }
+                if (input.read(decoder.buffer()) < 0) {
+                    return;
+                }
+                decoder.advance();
+            }
+        } catch (IllegalArgumentException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 在请求体读取完毕时被容器调用，解码消息并交给处理回调。
+     *
+     * @throws IOException 如果写入响应时发生 I/O 错误。
+     */
+    @Override
+    public void onAllDataRead() throws IOException {
+        if (finished) {
+            return;
+        }
+        MessageBinaryCodec.IncomingMessage message;
+        try {
+            message = decoder.finish();
+        } catch (IllegalArgumentException e) {
+            fail(e.getMessage());
+            return;
+        }
+
+        finished = true;
+        try {
+            handler.handle(message);
+        } finally {
+            // 消息引用的是解码器的缓冲区，处理完毕后才能归还
+            decoder.release();
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * 在读取过程中发生错误（例如客户端断开连接）时被容器调用。
+     *
+     * @param t 导致失败的异常。
+     */
+    @Override
+    public void onError(Throwable t) {
+        logger.log(Level.FINE, "读取消息请求体失败", t);
+        if (!finished) {
+            finished = true;
+            decoder.release();
+            asyncContext.complete();
+        }
+    }
+
+    private void fail(String message) throws IOException {
+        finished = true;
+        decoder.release();
+        try {
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, message);
+        } finally {
+            asyncContext.complete();
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package com.steven.e2eechat.controller;
 
+import com.steven.e2eechat.codec.MessageBinaryCodec;
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.dao.UnitOfWork;
 import com.steven.e2eechat.model.ChatSession;
 import com.steven.e2eechat.model.UserProfile;
 import com.steven.e2eechat.model.ChatMessage;
+import com.steven.e2eechat.dto.db.ChatBootstrapDTO;
 import com.steven.e2eechat.dto.db.NewMessageDTO;
+import com.steven.e2eechat.json.JsonSupport;
+import com.steven.e2eechat.routing.RouteHandler;
+import com.steven.e2eechat.routing.Router;
+import com.steven.e2eechat.routing.UuidParser;
+import com.steven.e2eechat.service.Bulkhead;
 import com.steven.e2eechat.service.SessionService;
 import com.steven.e2eechat.service.UserService;
 import com.steven.e2eechat.service.MessageService;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,80 +26,88 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import com.google.gson.JsonObject;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.TypeAdapter;
-import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
-import com.google.gson.stream.JsonToken;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.time.OffsetDateTime;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * {@code SessionsController} 负责处理用户会话相关的 HTTP 请求。
  * <p>
  * 提供了会话列表展示、创建新会话、查看会话详情以及发送和接收消息的功能。
  */
-@WebServlet(name = "sessionsController", urlPatterns = {
+@WebServlet(name = "sessionsController", asyncSupported = true, urlPatterns = {
         "/sessions",
         "/sessions/",
         "/sessions/*"
 })
 public class SessionsController extends HttpServlet {
-    private static final Pattern UUID_PATTERN = Pattern.compile(
-            "^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$"
-    );
+    private static final Logger logger = Logger.getLogger(SessionsController.class.getName());
+
+    /**
+     * 消息响应的线路格式版本。
+     * <ul>
+     *     <li>{@code 1}: 旧格式，{@code messageContent} 和 {@code messageIv} 为有符号整数数组。</li>
+     *     <li>{@code 2}: {@code messageContent} 和 {@code messageIv} 为 Base64 字符串。</li>
+     * </ul>
+     * 客户端通过查询参数 {@code v} 选择版本，未指定时使用旧格式以保持兼容。
+     */
+    private static final int WIRE_VERSION_LEGACY = 1;
+    private static final int WIRE_VERSION_BASE64 = 2;
+    private static final int MAX_MESSAGE_CONTENT_LENGTH = 65535;
+    private static final int MAX_BINARY_BODY_LENGTH = 3 + 255 + 4 + MAX_MESSAGE_CONTENT_LENGTH;
+    /**
+     * 长轮询的最长等待时间（秒），客户端通过查询参数 {@code wait} 请求的时间按此值截断。
+     */
+    private static final long MAX_WAIT_SECONDS = Long.parseLong(
+            DatabaseConfig.getProperty("longPoll.maxWaitSeconds", "25"));
     private final SessionService sessionService;
     private final UserService userService;
     private final MessageService messageService;
     private final Gson gson;
+    private final Gson base64Gson;
+    private final Router<RouteHandler> router;
 
     /**
-     * 默认构造器，初始化 {@link SessionService}, {@link UserService}, {@link MessageService} 和配置了 {@link OffsetDateTime} 适配器的 {@link Gson} 实例。
+     * 默认构造器，初始化 {@link SessionService}, {@link UserService}, {@link MessageService} 和共享的 {@link Gson} 实例。
+     * <p>
+     * 其中将 {@code byte[]} 编码为 Base64 字符串的 {@link Gson} 实例用于 {@link #WIRE_VERSION_BASE64} 格式的消息响应。
+     * 构造器还会编译本控制器的路由表。
      */
     public SessionsController() {
         this.sessionService = new SessionService();
         this.userService = new UserService();
         this.messageService = new MessageService();
-        this.gson = new GsonBuilder()
-                .registerTypeAdapter(OffsetDateTime.class, new TypeAdapter<OffsetDateTime>() {
-                    /**
-                     * 将 {@link OffsetDateTime} 对象写入 JSON 输出流。如果值为 null，则写入 JSON null。
-                     *
-                     * @param out   JSON 输出流。
-                     * @param value 要写入的 {@link OffsetDateTime} 对象。
-                     * @throws IOException 如果写入过程中发生 I/O 错误。
-                     */
-                    @Override
-                    public void write(JsonWriter out, OffsetDateTime value) throws IOException {
-                        if (value == null) {
-                            out.nullValue();
-                        } else {
-                            out.value(value.toString());
-                        }
-                    }
-
-                    /**
-                     * 从 JSON 输入流中读取 {@link OffsetDateTime} 对象。如果遇到 JSON null，则返回 null。
-                     *
-                     * @param in JSON 输入流。
-                     * @return 从输入流中读取的 {@link OffsetDateTime} 对象，如果为 null 则返回 null。
-                     * @throws IOException 如果读取过程中发生 I/O 错误或 JSON 格式不正确。
-                     */
-                    @Override
-                    public OffsetDateTime read(JsonReader in) throws IOException {
-                        if (in.peek() == JsonToken.NULL) {
-                            in.nextNull();
-                            return null;
-                        }
-                        return OffsetDateTime.parse(in.nextString());
-                    }
-                })
-                .create();
+        this.gson = JsonSupport.gson();
+        this.base64Gson = JsonSupport.base64Gson();
+        this.router = Router.<RouteHandler>builder()
+                .get("/", (request, response, match) -> request.getRequestDispatcher("/WEB-INF/sessions/index.jsp")
+                        .forward(request, response))
+                .get("/list", (request, response, match) -> handleSessionsList(request, response))
+                .get("/{uuid}/messages", (request, response, match) ->
+                        handleGetMessages(request, response, match.uuid(0)))
+                .get("/*/messages", (request, response, match) ->
+                        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid session ID format"))
+                .get("/{uuid}/open", (request, response, match) ->
+                        handleOpenChat(request, response, match.uuid(0)))
+                .get("/*/open", (request, response, match) ->
+                        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid session ID format"))
+                .get("/{uuid}", (request, response, match) -> handleSessionDetail(request, response, match.uuid(0)))
+                .post("/new", (request, response, match) -> handleNewSession(request, response))
+                .post("/{uuid}/messages", (request, response, match) ->
+                        handleSendMessage(request, response, match.uuid(0)))
+                .post("/*/messages", (request, response, match) ->
+                        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid session ID format"))
+                .build();
     }
 
     /**
@@ -98,8 +117,9 @@ public class SessionsController extends HttpServlet {
      *     <li>`/sessions/list`: 获取并返回会话列表数据。</li>
      *     <li>`/sessions/{sessionId}`: 显示特定会话的聊天页面。</li>
      *     <li>`/sessions/{sessionId}/messages`: 获取特定会话的消息。</li>
+     *     <li>`/sessions/{sessionId}/open`: 获取打开聊天所需的会话信息、对方资料和消息窗口。</li>
      * </ul>
-     * 如果用户未登录，则重定向到登录页面。
+     * 如果用户未登录，则重定向到登录页面；如果路径中的会话ID格式不正确，则设置错误消息并重定向回会话列表页面。
      *
      * @param request  客户端发送的 {@link HttpServletRequest} 对象。
      * @param response 服务器发送的 {@link HttpServletResponse} 对象。
@@ -116,18 +136,13 @@ public class SessionsController extends HttpServlet {
             return;
         }
 
-        String pathInfo = request.getPathInfo();
-        if (pathInfo == null || "/".equals(pathInfo)) {
-            request.getRequestDispatcher("/WEB-INF/sessions/index.jsp")
-                    .forward(request, response);
-        } else if ("/list".equals(pathInfo)) {
-            handleSessionsList(request, response);
-        } else if (pathInfo.endsWith("/messages")) {
-            handleGetMessages(request, response);
+        Router.Match<RouteHandler> match = router.match("GET", request.getPathInfo());
+        if (match != null) {
+            match.handler().handle(request, response, match);
         } else {
-            // 移除开头的斜杠
-            String sessionId = pathInfo.substring(1);
-            handleSessionDetail(request, response, sessionId);
+            session.setAttribute("messageLevel", "error");
+            session.setAttribute("messageContent", "无效的会话ID格式");
+            response.sendRedirect(request.getContextPath() + "/sessions");
         }
     }
 
@@ -154,11 +169,9 @@ public class SessionsController extends HttpServlet {
             return;
         }
 
-        String pathInfo = request.getPathInfo();
-        if ("/new".equals(pathInfo)) {
-            handleNewSession(request, response);
-        } else if (pathInfo.endsWith("/messages")) {
-            handleSendMessage(request, response);
+        Router.Match<RouteHandler> match = router.match("POST", request.getPathInfo());
+        if (match != null) {
+            match.handler().handle(request, response, match);
         } else {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -191,12 +204,8 @@ public class SessionsController extends HttpServlet {
             }
         }
 
-        Map<UUID, UserProfile> profiles = new HashMap<>();
-        for (UUID userId : userIds) {
-            userService.getUserById(userId).ifPresent(profile ->
-                    profiles.put(userId, profile)
-            );
-        }
+        // 所有对方用户的资料在一次数据库往返中读取
+        Map<UUID, UserProfile> profiles = userService.getUsersByIds(userIds);
 
         // 设置请求属性
         request.setAttribute("sessions", sessions);
@@ -235,76 +244,87 @@ public class SessionsController extends HttpServlet {
             username = username.trim();  // 再次去除可能的首尾空格
         }
 
-        // 查找目标用户
-        Optional<UUID> targetUserUuid = userService.getUserUuidByUsername(username);
-        if (targetUserUuid.isEmpty()) {
+        // 查找目标用户并获取或创建会话，所有查询共用一个数据库连接
+        UUID currentUserId = currentUser.getUserId();
+        String targetUsername = username;
+        NewSessionOutcome outcome = UnitOfWork.withConnection(() -> createSession(currentUserId, targetUsername));
+
+        if (outcome.sessionId() != null) {
+            response.sendRedirect(request.getContextPath() + "/sessions/" + outcome.sessionId());
+        } else {
             session.setAttribute("messageLevel", "error");
-            session.setAttribute("messageContent", "用户不存在");
+            session.setAttribute("messageContent", outcome.error());
             response.sendRedirect(request.getContextPath() + "/sessions");
-            return;
+        }
+    }
+
+    /**
+     * 创建会话的结果，成功时 {@code sessionId} 不为 null，否则 {@code error} 为显示给用户的错误消息。
+     */
+    private record NewSessionOutcome(UUID sessionId, String error) {
+    }
+
+    /**
+     * 查找目标用户，并获取或创建当前用户与其的会话。
+     */
+    private NewSessionOutcome createSession(UUID currentUserId, String username) {
+        Optional<UUID> targetUserUuid = userService.getUserUuidByUsername(username);
+        if (targetUserUuid.isEmpty()) {
+            return new NewSessionOutcome(null, "用户不存在");
         }
 
         Optional<UserProfile> targetUser = userService.getUserById(targetUserUuid.get());
         if (targetUser.isEmpty()) {
-            session.setAttribute("messageLevel", "error");
-            session.setAttribute("messageContent", "用户不存在");
-            response.sendRedirect(request.getContextPath() + "/sessions");
-            return;
+            return new NewSessionOutcome(null, "用户不存在");
         }
 
         // 不能和自己创建会话
-        if (targetUser.get().getUserId().equals(currentUser.getUserId())) {
-            session.setAttribute("messageLevel", "error");
-            session.setAttribute("messageContent", "不能和自己创建会话");
-            response.sendRedirect(request.getContextPath() + "/sessions");
-            return;
+        if (targetUser.get().getUserId().equals(currentUserId)) {
+            return new NewSessionOutcome(null, "不能和自己创建会话");
         }
 
         // 获取或创建会话
-        Optional<UUID> sessionId = sessionService.getOrCreateSession(
-                currentUser.getUserId(),
-                targetUser.get().getUserId()
-        );
-
-        if (sessionId.isPresent()) {
-            response.sendRedirect(request.getContextPath() + "/sessions/" + sessionId.get().toString());
-        } else {
-            session.setAttribute("messageLevel", "error");
-            session.setAttribute("messageContent", "创建会话失败");
-            response.sendRedirect(request.getContextPath() + "/sessions");
-        }
+        Optional<UUID> sessionId = sessionService.getOrCreateSession(currentUserId, targetUser.get().getUserId());
+        return sessionId.map(id -> new NewSessionOutcome(id, null))
+                .orElseGet(() -> new NewSessionOutcome(null, "创建会话失败"));
     }
 
     /**
-     * 处理特定会话的详情查看请求，验证会话ID格式，并获取会话信息，最后转发到聊天页面。
-     * 如果会话ID格式不正确或会话不存在，则设置错误消息并重定向回会话列表页面。
+     * 处理查看会话详情的请求，渲染聊天页面。
+     * <p>
+     * 会话信息、对方用户资料和首屏消息窗口通过 {@link SessionService#openChat(UUID, UUID, UUID, Integer, Integer)}
+     * 在一次数据库往返中读取，消息窗口以 JSON 形式嵌入页面，客户端无需再单独请求首屏消息。
+     * 查询参数 {@code message} 指定跳转到的消息，未指定时以首条未读消息为锚点。
+     * 如果会话不存在、用户无权访问或对方的保险库尚未就绪，则设置错误消息并重定向回会话列表页面。
      *
      * @param request   客户端发送的 {@link HttpServletRequest} 对象。
      * @param response  服务器发送的 {@link HttpServletResponse} 对象。
-     * @param sessionId 会话ID字符串。
+     * @param sessionId 从路径中解析出的会话ID。
      * @throws ServletException 如果在转发请求时发生 Servlet 异常。
      * @throws IOException      如果在重定向时发生 I/O 异常。
      */
-    private void handleSessionDetail(HttpServletRequest request, HttpServletResponse response, String sessionId)
+    private void handleSessionDetail(HttpServletRequest request, HttpServletResponse response, UUID sessionId)
             throws ServletException, IOException {
         try {
-            // 验证会话ID格式
-            if (!UUID_PATTERN.matcher(sessionId.toLowerCase()).matches()) {
-                throw new IllegalArgumentException("无效的会话ID格式");
-            }
-
-            // 尝试解析UUID
-            UUID sessionUUID = UUID.fromString(sessionId);
             UserProfile currentUser = (UserProfile) request.getSession().getAttribute("user");
 
-            // 获取会话信息
-            Optional<ChatSession> session = sessionService.getSession(currentUser.getUserId(), sessionUUID);
-            if (session.isEmpty()) {
+            // 获取会话信息、对方用户资料和首屏消息
+            UUID anchorMessageId = UuidParser.parse(request.getParameter("message"));
+            Optional<ChatBootstrapDTO> chat = sessionService.openChat(currentUser.getUserId(), sessionId,
+                    anchorMessageId, null, null);
+            if (chat.isEmpty()) {
                 throw new IllegalArgumentException("会话不存在或无权访问");
             }
+            if (chat.get().getPeer().getPublicKey() == null) {
+                throw new IllegalArgumentException("对方的保险库尚未就绪，无法开始加密通信");
+            }
 
             // 设置会话信息到请求属性
-            request.setAttribute("session", session.get());
+            StringWriter bootstrapJson = new StringWriter();
+            writeBootstrap(base64Gson.newJsonWriter(bootstrapJson), chat.get());
+            request.setAttribute("session", chat.get().getSession());
+            request.setAttribute("otherUser", chat.get().getPeer());
+            request.setAttribute("bootstrapJson", bootstrapJson.toString());
 
             // 转发到聊天页面
             request.getRequestDispatcher("/WEB-INF/sessions/chat.jsp").forward(request, response);
@@ -318,34 +338,114 @@ public class SessionsController extends HttpServlet {
         }
     }
 
+    /**
+     * 处理打开聊天的请求，返回会话信息、对方用户资料以及以锚点为中心的消息窗口。
+     * <p>
+     * 查询参数：{@code messageId} 为锚点消息ID，未指定时以首条未读消息为锚点；{@code before} 和 {@code after}
+     * 为锚点前、后的消息数量。所有数据在一次数据库往返中读取，消息密文和 IV 以 Base64 字符串返回。
+     * 会话不存在或当前用户不是参与者时返回 404。
+     *
+     * @param request   客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response  服务器发送的 {@link HttpServletResponse} 对象。
+     * @param sessionId 从路径中解析出的会话ID。
+     * @throws IOException 如果在写入响应时发生 I/O 异常。
+     */
+    private void handleOpenChat(HttpServletRequest request, HttpServletResponse response, UUID sessionId)
+            throws IOException {
+        UserProfile currentUser = (UserProfile) request.getSession().getAttribute("user");
+
+        String messageIdStr = request.getParameter("messageId");
+        UUID messageId = UuidParser.parse(messageIdStr);
+        if (messageIdStr != null && !messageIdStr.isEmpty() && messageId == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid message ID format");
+            return;
+        }
+
+        Integer before;
+        Integer after;
+        try {
+            before = parseOptionalInt(request.getParameter("before"));
+            after = parseOptionalInt(request.getParameter("after"));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid window size format");
+            return;
+        }
+
+        Optional<ChatBootstrapDTO> chat = sessionService.openChat(currentUser.getUserId(), sessionId,
+                messageId, before, after);
+        if (chat.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Session not found");
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JsonWriter writer = base64Gson.newJsonWriter(response.getWriter());
+        writeBootstrap(writer, chat.get());
+        writer.flush();
+    }
+
+    /**
+     * 将打开聊天的数据写为 JSON 对象：{@code session}、{@code peer}（用户ID、用户名、显示名称和 Base64 公钥）、
+     * {@code anchorCursor}、{@code anchorUnread} 和 {@code messages}。
+     */
+    private void writeBootstrap(JsonWriter out, ChatBootstrapDTO chat) throws IOException {
+        UserProfile peer = chat.getPeer();
+        out.beginObject();
+        out.name("session");
+        base64Gson.getAdapter(ChatSession.class).write(out, chat.getSession());
+        out.name("peer").beginObject();
+        out.name("userId").value(peer.getUserId().toString());
+        out.name("username").value(peer.getUsername());
+        out.name("displayName").value(peer.getDisplayName());
+        out.name("publicKey").value(peer.getPublicKey() != null
+                ? Base64.getEncoder().encodeToString(peer.getPublicKey())
+                : null);
+        out.endObject();
+        out.name("anchorCursor").value(chat.getAnchorCursor());
+        out.name("anchorUnread").value(chat.isAnchorUnread());
+        out.name("messages").beginArray();
+        TypeAdapter<ChatMessage> adapter = base64Gson.getAdapter(ChatMessage.class);
+        for (ChatMessage message : chat.getMessages()) {
+            adapter.write(out, message);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private static Integer parseOptionalInt(String value) {
+        return value == null || value.isEmpty() ? null : Integer.valueOf(value);
+    }
+
     /**
      * 处理获取消息的请求，根据提供的游标和限制获取指定会话的消息，并将消息以 JSON 格式返回。
+     * <p>
+     * 消息数量由 {@link MessageService} 在服务端限制。整页消息读取完成并提交后才开始写出响应，
+     * 写出期间不占用数据库事务；查询失败时返回 500，不返回截断的消息列表。
+     * 当前用户不是会话参与者时返回 404，参与关系通过 {@link SessionService#isParticipant(UUID, UUID)} 检查。
+     * <p>
+     * 查询参数 {@code v=2} 时，消息密文和 IV 以 Base64 字符串返回；否则沿用旧的整数数组格式。
+     * 如果 {@code Accept} 头请求 {@link MessageBinaryCodec#MEDIA_TYPE}，则以二进制格式返回，
+     * 使用不带消息数量的 {@link MessageBinaryCodec#STREAM_FORMAT_VERSION} 格式。
+     * <p>
+     * 读取游标之后的消息时，查询参数 {@code wait} 指定没有新消息时最多等待的秒数（长轮询），
+     * 由 {@link #handleWaitForMessages} 异步处理。
      *
-     * @param request  客户端发送的 {@link HttpServletRequest} 对象，包含会话ID、游标和限制参数。
-     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param request   客户端发送的 {@link HttpServletRequest} 对象，包含游标和限制参数。
+     * @param response  服务器发送的 {@link HttpServletResponse} 对象。
+     * @param sessionId 从路径中解析出的会话ID。
      * @throws ServletException 如果在处理请求时发生 Servlet 异常。
      * @throws IOException      如果在写入响应时发生 I/O 异常。
      */
-    private void handleGetMessages(HttpServletRequest request, HttpServletResponse response)
+    private void handleGetMessages(HttpServletRequest request, HttpServletResponse response, UUID sessionId)
             throws ServletException, IOException {
         HttpSession session = request.getSession();
         UserProfile currentUser = (UserProfile) session.getAttribute("user");
 
-        // 从路径中提取会话ID
-        String pathInfo = request.getPathInfo();
-        // 检查 pathInfo 是否为 null 或长度不足
-        if (pathInfo == null || pathInfo.length() <= 9) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid request path");
+        if (!sessionService.isParticipant(currentUser.getUserId(), sessionId)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Session not found");
             return;
         }
-        String sessionIdStr = pathInfo.substring(1, pathInfo.length() - 9); // 移除开头的/和结尾的/messages
-
-        if (!UUID_PATTERN.matcher(sessionIdStr).matches()) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid session ID format");
-            return;
-        }
-
-        UUID sessionId = UUID.fromString(sessionIdStr);
 
         // 获取查询参数
         String cursorStr = request.getParameter("cursor");
@@ -372,45 +472,202 @@ public class SessionsController extends HttpServlet {
             }
         }
 
-        List<ChatMessage> messages;
-        if ("after".equals(direction)) {
-            messages = messageService.getMessagesAfter(currentUser.getUserId(), sessionId, cursor, limit);
-        } else {
-            messages = messageService.getMessagesBefore(currentUser.getUserId(), sessionId, cursor, limit);
+        UUID userId = currentUser.getUserId();
+        boolean after = "after".equals(direction);
+
+        String waitStr = request.getParameter("wait");
+        if (after && cursor != null && waitStr != null && !waitStr.isEmpty()) {
+            long waitSeconds;
+            try {
+                waitSeconds = Long.parseLong(waitStr);
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid wait format");
+                return;
+            }
+            if (waitSeconds > 0) {
+                handleWaitForMessages(request, userId, sessionId, cursor, limit,
+                        Math.min(waitSeconds, MAX_WAIT_SECONDS));
+                return;
+            }
         }
 
+        Optional<List<ChatMessage>> messages = after
+                ? messageService.getMessagesAfter(userId, sessionId, cursor, limit)
+                : messageService.getMessagesBefore(userId, sessionId, cursor, limit);
+        if (messages.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to load messages");
+            return;
+        }
+
+        Gson messageGson = resolveWireVersion(request) == WIRE_VERSION_BASE64 ? base64Gson : gson;
+        writeMessages(response, acceptsBinary(request), messageGson, messages.get());
+    }
+
+    /**
+     * 以长轮询方式等待游标之后的新消息。
+     * <p>
+     * 请求进入异步模式后立即释放容器线程；等待期间不占用任何线程，
+     * 新消息到达或等待超时后，由 {@link MessageService#waitForMessagesAfter} 的完成回调写出响应并结束请求。
+     * 响应格式与普通请求相同，写入原始响应对象，不经过压缩过滤器。读取消息失败时记录日志并返回 500。
+     */
+    private void handleWaitForMessages(HttpServletRequest request, UUID userId, UUID sessionId, long cursor,
+                                       Integer limit, long waitSeconds) {
+        boolean binary = acceptsBinary(request);
+        Gson messageGson = resolveWireVersion(request) == WIRE_VERSION_BASE64 ? base64Gson : gson;
+
+        AsyncContext asyncContext = request.startAsync();
+        // 容器超时略长于等待时间，正常情况下总是由等待完成的回调结束请求
+        asyncContext.setTimeout(TimeUnit.SECONDS.toMillis(waitSeconds + 10));
+        messageService.waitForMessagesAfter(userId, sessionId, cursor, limit, TimeUnit.SECONDS.toMillis(waitSeconds))
+                .whenComplete((messages, error) -> {
+                    HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+                    try {
+                        if (error != null) {
+                            logger.log(Level.WARNING, "等待新消息时读取消息失败", error);
+                            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Failed to load messages");
+                            return;
+                        }
+                        writeMessages(response, binary, messageGson, messages);
+                    } catch (IOException | IllegalStateException e) {
+                        // 记录日志，方便调试（客户端可能已断开连接，或请求已超时结束）
+                    } finally {
+                        try {
+                            asyncContext.complete();
+                        } catch (IllegalStateException e) {
+                            // 请求已超时结束
+                        }
+                    }
+                });
+    }
+
+    /**
+     * 以二进制或 JSON 格式写出消息列表。
+     */
+    private void writeMessages(HttpServletResponse response, boolean binary, Gson messageGson,
+                               List<ChatMessage> messages) throws IOException {
+        if (binary) {
+            response.setContentType(MessageBinaryCodec.MEDIA_TYPE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            out.writeByte(MessageBinaryCodec.STREAM_FORMAT_VERSION);
+            for (ChatMessage message : messages) {
+                MessageBinaryCodec.writeMessage(out, message);
+            }
+            out.flush();
+            return;
+        }
+
+        TypeAdapter<ChatMessage> adapter = messageGson.getAdapter(ChatMessage.class);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        response.getWriter().write(gson.toJson(messages));
+        JsonWriter writer = messageGson.newJsonWriter(response.getWriter());
+        writer.beginArray();
+        for (ChatMessage message : messages) {
+            adapter.write(writer, message);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    /**
+     * 根据查询参数 {@code v} 解析客户端请求的消息线路格式版本。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 线路格式版本，无法识别时返回 {@link #WIRE_VERSION_LEGACY}。
+     */
+    private int resolveWireVersion(HttpServletRequest request) {
+        String version = request.getParameter("v");
+        if (version != null && version.equals(String.valueOf(WIRE_VERSION_BASE64))) {
+            return WIRE_VERSION_BASE64;
+        }
+        return WIRE_VERSION_LEGACY;
     }
 
     /**
      * 处理发送消息的请求，接收包含消息内容和初始化向量的 JSON 数据，并将消息保存到数据库。
+     * <p>
+     * 如果 {@code Content-Type} 为 {@link MessageBinaryCodec#MEDIA_TYPE}，则通过 {@link MessageIngestListener}
+     * 以非阻塞方式读取请求体，在读取过程中校验密文长度，并直接解码到池化缓冲区中。
+     * 当前用户不是会话参与者时返回 404，不读取请求体。
      *
-     * @param request  客户端发送的 {@link HttpServletRequest} 对象，包含消息数据的 JSON 请求体。
-     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param request   客户端发送的 {@link HttpServletRequest} 对象，包含消息数据的 JSON 请求体。
+     * @param response  服务器发送的 {@link HttpServletResponse} 对象。
+     * @param sessionId 从路径中解析出的会话ID。
      * @throws ServletException 如果在处理请求时发生 Servlet 异常。
      * @throws IOException      如果在读取请求体或写入响应时发生 I/O 异常。
      */
-    private void handleSendMessage(HttpServletRequest request, HttpServletResponse response)
+    private void handleSendMessage(HttpServletRequest request, HttpServletResponse response, UUID sessionId)
             throws ServletException, IOException {
         HttpSession session = request.getSession();
         UserProfile currentUser = (UserProfile) session.getAttribute("user");
 
-        // 从路径中提取会话ID
-        String pathInfo = request.getPathInfo();
-        // 检查 pathInfo 是否为 null 或长度不足
-        if (pathInfo == null || pathInfo.length() <= 9) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid request path");
+        if (!sessionService.isParticipant(currentUser.getUserId(), sessionId)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Session not found");
+            return;
+        }
+
+        // 二进制请求体以非阻塞方式读取，读取完毕后在回调中发送消息
+        if (isBinaryRequest(request)) {
+            long contentLength = request.getContentLengthLong();
+            if (contentLength > MAX_BINARY_BODY_LENGTH) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Message content too large");
+                return;
+            }
+            AsyncContext asyncContext = request.startAsync();
+            ServletInputStream input = request.getInputStream();
+            input.setReadListener(new MessageIngestListener(asyncContext, input, MAX_MESSAGE_CONTENT_LENGTH,
+                    contentLength, incoming -> {
+                        NewMessageDTO newMessage = new NewMessageDTO();
+                        newMessage.setSessionId(sessionId);
+                        newMessage.setMessageContent(incoming.messageContent());
+                        newMessage.setMessageIv(incoming.messageIv());
+                        newMessage.setSystem(incoming.isSystem());
+                        // 回调运行在另一个容器线程上，发送消息仍使用写入隔离舱的连接子池（如果配置了）
+                        String previousRoute = DatabaseConfig.routeConnections(Bulkhead.WRITE);
+                        try {
+                            writeSendResult(response, messageService.sendMessage(currentUser.getUserId(), newMessage));
+                        } finally {
+                            DatabaseConfig.routeConnections(previousRoute);
+                        }
+                    }));
             return;
         }
-        String sessionIdStr = pathInfo.substring(1, pathInfo.length() - 9); // 移除开头的/和结尾的/messages
 
-        if (!UUID_PATTERN.matcher(sessionIdStr).matches()) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid session ID format");
+        NewMessageDTO newMessage = readJsonMessage(request, response);
+        if (newMessage == null) {
             return;
         }
+        newMessage.setSessionId(sessionId);
 
+        // 发送消息
+        boolean success = messageService.sendMessage(currentUser.getUserId(), newMessage);
+        writeSendResult(response, success);
+    }
+
+    /**
+     * 写入发送消息的 JSON 结果。
+     *
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param success  消息是否发送成功。
+     * @throws IOException 如果在写入响应时发生 I/O 异常。
+     */
+    private void writeSendResult(HttpServletResponse response, boolean success) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JsonObject jsonResponse = new JsonObject();
+        jsonResponse.addProperty("success", success);
+        response.getWriter().write(gson.toJson(jsonResponse));
+    }
+
+    /**
+     * 解析 JSON 格式的发送消息请求体，消息密文和 IV 为 Base64 字符串。
+     *
+     * @param request  客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象，解析失败时用于返回 400 错误。
+     * @return 解析得到的 {@link NewMessageDTO}（不含会话ID），如果请求体无效则返回 {@code null}。
+     * @throws IOException 如果在读取请求体或写入错误响应时发生 I/O 异常。
+     */
+    private NewMessageDTO readJsonMessage(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         // 读取请求体
         StringBuilder sb = new StringBuilder();
         try (BufferedReader reader = request.getReader()) {
@@ -425,13 +682,13 @@ public class SessionsController extends HttpServlet {
             jsonRequest = gson.fromJson(sb.toString(), JsonObject.class);
         } catch (Exception e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid JSON format");
-            return;
+            return null;
         }
 
         // 验证必要字段
         if (!jsonRequest.has("message_content") || !jsonRequest.has("message_iv")) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing required fields");
-            return;
+            return null;
         }
 
         // 获取并验证消息内容
@@ -443,13 +700,13 @@ public class SessionsController extends HttpServlet {
         byte[] decodedContent;
         try {
             decodedContent = Base64.getDecoder().decode(messageContent);
-            if (decodedContent.length > 65535) {
+            if (decodedContent.length > MAX_MESSAGE_CONTENT_LENGTH) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Message content too large");
-                return;
+                return null;
             }
         } catch (IllegalArgumentException e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid Base64 encoding");
-            return;
+            return null;
         }
 
         // 解码IV
@@ -458,23 +715,35 @@ public class SessionsController extends HttpServlet {
             decodedIv = Base64.getDecoder().decode(messageIv);
         } catch (IllegalArgumentException e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid IV Base64 encoding");
-            return;
+            return null;
         }
 
-        // 创建新消息DTO
         NewMessageDTO newMessage = new NewMessageDTO();
-        newMessage.setSessionId(UUID.fromString(sessionIdStr));
         newMessage.setMessageContent(decodedContent);
         newMessage.setMessageIv(decodedIv);
         newMessage.setSystem(isSystem);
+        return newMessage;
+    }
 
-        // 发送消息
-        boolean success = messageService.sendMessage(currentUser.getUserId(), newMessage);
+    /**
+     * 判断请求体是否为二进制消息格式。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 如果 {@code Content-Type} 为 {@link MessageBinaryCodec#MEDIA_TYPE}，则返回 {@code true}。
+     */
+    private boolean isBinaryRequest(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.startsWith(MessageBinaryCodec.MEDIA_TYPE);
+    }
 
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        JsonObject jsonResponse = new JsonObject();
-        jsonResponse.addProperty("success", success);
-        response.getWriter().write(gson.toJson(jsonResponse));
+    /**
+     * 判断客户端是否通过 {@code Accept} 头请求二进制消息格式。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 如果 {@code Accept} 头包含 {@link MessageBinaryCodec#MEDIA_TYPE}，则返回 {@code true}。
+     */
+    private boolean acceptsBinary(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        return accept != null && accept.contains(MessageBinaryCodec.MEDIA_TYPE);
     }
-}
+}
\ No newline at end of file
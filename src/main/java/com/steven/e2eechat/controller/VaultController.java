@@ -2,6 +2,7 @@ package com.steven.e2eechat.controller;
 
 import com.google.gson.Gson;
 import com.steven.e2eechat.dto.web.CreateVaultRequest;
+import com.steven.e2eechat.json.JsonSupport;
 import com.steven.e2eechat.model.UserProfile;
 import com.steven.e2eechat.model.UserVault;
 import com.steven.e2eechat.service.UserVaultService;
@@ -35,7 +36,7 @@ public class VaultController extends HttpServlet {
 
     public VaultController() {
         this.vaultService = new UserVaultService();
-        this.gson = new Gson();
+        this.gson = JsonSupport.gson();
     }
 
     /**
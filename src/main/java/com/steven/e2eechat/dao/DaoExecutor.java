@@ -0,0 +1,58 @@
+package com.steven.e2eechat.dao;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * {@code DaoExecutor} 在专用的线程池中执行阻塞的 DAO 调用，并以 {@link CompletionStage} 返回结果。
+ * <p>
+ * JDBC 调用会阻塞调用线程直到数据库返回。异步处理的请求（例如等待新消息的长轮询）在等待期间不占用任何线程，
+ * 只在真正需要访问数据库时，才通过本类把查询交给线程池执行，结果在完成时回调，请求线程不被阻塞。
+ * 线程数默认与连接池大小（{@code db.poolSize}）相同，更多的线程只会在 {@code getConnection()} 上等待。
+ * <p>
+ * 配置项（`db.properties`）：{@code dao.asyncThreads}。
+ */
+public final class DaoExecutor {
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    /**
+     * 在线程池中执行一次 DAO 调用。
+     *
+     * @param call 要执行的调用，可以调用多个 DAO 方法。
+     * @param <T>  结果类型。
+     * @return 调用的结果；调用抛出的异常使其以异常完成。
+     */
+    public static <T> CompletionStage<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, EXECUTOR);
+    }
+
+    /**
+     * 关闭线程池，已提交的调用仍会执行完毕。应用关闭时调用。
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdown();
+    }
+
+    private static ExecutorService createExecutor() {
+        String poolSize = DatabaseConfig.getProperty("db.poolSize", "10");
+        int threads = Integer.parseInt(DatabaseConfig.getProperty("dao.asyncThreads", poolSize));
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "dao-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    private DaoExecutor() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
@@ -0,0 +1,147 @@
+package com.steven.e2eechat.dao;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import org.postgresql.PGStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * {@code DirectSql} 保存直接 SQL 模式下热点读取使用的参数化 SQL。
+ * <p>
+ * 默认情况下所有 DAO 调用都通过 {@code SELECT * FROM 存储过程(?)} 完成。plpgsql 函数每次调用都有解释器开销，
+ * 内部查询不会以原文出现在 {@code pg_stat_statements} 中，也无法被外层查询内联规划。
+ * 设置 {@code dao.mode=sql} 后，用户资料、会话列表、会话和消息分页改为直接执行本类中的 SQL，
+ * 并从第一次执行起使用服务端预处理语句；其他调用仍然使用存储过程。
+ * <p>
+ * 直接 SQL 与对应的存储过程返回相同的列，并保留其副作用：刷新最后在线时间，将返回的接收消息标记为已读。
+ * 消息分页额外校验用户是否为会话参与者。使用该模式前需要执行 {@code sql/10_grant_direct_sql_access.sql}，
+ * 为服务账号授予相关列的读取和更新权限。
+ */
+public final class DirectSql {
+    private static final boolean ENABLED = "sql".equalsIgnoreCase(DatabaseConfig.getProperty("dao.mode", "procedure"));
+
+    /**
+     * 获取用户资料，参数：用户ID。
+     */
+    static final String USER_PROFILE = """
+            SELECT p.user_id, p.username, p.display_name, p.public_key, p.last_online, p.registered_at
+            FROM user_profiles p
+            WHERE p.user_id = ?""";
+
+    /**
+     * 获取多个用户的资料，参数：用户ID数组（{@code uuid[]}）。
+     */
+    static final String USER_PROFILES = """
+            SELECT p.user_id, p.username, p.display_name, p.public_key, p.last_online, p.registered_at
+            FROM user_profiles p
+            WHERE p.user_id = ANY(?)""";
+
+    /**
+     * 获取最近会话列表并刷新最后在线时间，参数：用户ID × 3。
+     */
+    static final String RECENT_SESSIONS = """
+            WITH touched AS (
+                UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = ?
+            )
+            SELECT s.session_id, s.initiator_id, s.participant_id, s.created_at,
+                   s.message_counter, s.last_message_id, s.last_message_at
+            FROM chat_sessions s
+            WHERE s.initiator_id = ? OR s.participant_id = ?
+            ORDER BY s.last_message_at DESC NULLS LAST""";
+
+    /**
+     * 获取会话并刷新最后在线时间，参数：用户ID、会话ID、用户ID × 2。
+     */
+    static final String SESSION = """
+            WITH touched AS (
+                UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = ?
+            )
+            SELECT s.session_id, s.initiator_id, s.participant_id, s.created_at,
+                   s.message_counter, s.last_message_id, s.last_message_at
+            FROM chat_sessions s
+            WHERE s.session_id = ?
+              AND (s.initiator_id = ? OR s.participant_id = ?)""";
+
+    /**
+     * 获取游标之前（含）的消息，按游标降序排列，参数见 {@link #messagePage(String, String)}。
+     */
+    static final String MESSAGES_BEFORE = messagePage("m.cursor <= ?", "DESC");
+
+    /**
+     * 获取游标之后（含）的消息，按游标升序排列，参数见 {@link #messagePage(String, String)}。
+     */
+    static final String MESSAGES_AFTER = messagePage("m.cursor >= ?", "ASC");
+
+    /**
+     * 构造消息分页 SQL，参数依次为：用户ID（刷新在线时间）、会话ID、用户ID × 2（校验参与者）、游标边界、数量限制、
+     * 用户ID（标记已读）。
+     * <p>
+     * 分页结果先物化为 {@code page}，再由 {@code marked} 将其中的接收消息标记为已读；
+     * 同一语句中的查询看不到 {@code marked} 的修改，因此返回的 {@code is_read} 由两者合并得到，与存储过程一致。
+     */
+    private static String messagePage(String cursorCondition, String order) {
+        return """
+                WITH touched AS (
+                    UPDATE user_profiles SET last_online = CURRENT_TIMESTAMP WHERE user_id = ?
+                ), page AS (
+                    SELECT m.message_id, m.cursor, m.sender_id, m.receiver_id, m.is_system, m.is_read,
+                           m.message_iv, m.message_content, m.sent_at
+                    FROM chat_messages m
+                    WHERE m.session_id = ?
+                      AND EXISTS (
+                          SELECT 1 FROM chat_sessions s
+                          WHERE s.session_id = m.session_id
+                            AND (s.initiator_id = ? OR s.participant_id = ?)
+                      )
+                      AND %s
+                    ORDER BY m.cursor %s
+                    LIMIT ?
+                ), marked AS (
+                    UPDATE chat_messages cm
+                    SET is_read = TRUE
+                    FROM page
+                    WHERE cm.message_id = page.message_id
+                      AND cm.receiver_id = ?
+                      AND NOT cm.is_read
+                    RETURNING cm.message_id
+                )
+                SELECT page.message_id, page.cursor, page.sender_id, page.receiver_id, page.is_system,
+                       page.is_read OR marked.message_id IS NOT NULL AS is_read,
+                       page.message_iv, page.message_content, page.sent_at
+                FROM page
+                LEFT JOIN marked ON marked.message_id = page.message_id
+                ORDER BY page.cursor %s""".formatted(cursorCondition, order, order);
+    }
+
+    /**
+     * 检查是否启用了直接 SQL 模式。
+     *
+     * @return 如果 {@code dao.mode=sql} 则返回 {@code true}。
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 预处理 SQL。直接 SQL 模式下语句从第一次执行起就使用服务端预处理语句，
+     * 而不是驱动默认的第 5 次执行；驱动按 SQL 文本在连接上缓存服务端语句，之后的调用直接复用执行计划。
+     *
+     * @param conn 数据库连接。
+     * @param sql  要预处理的 SQL。
+     * @return 预处理语句。
+     * @throws SQLException 如果预处理失败。
+     */
+    static PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        if (ENABLED) {
+            stmt.unwrap(PGStatement.class).setPrepareThreshold(1);
+        }
+        return stmt;
+    }
+
+    private DirectSql() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
@@ -0,0 +1,141 @@
+package com.steven.e2eechat.dao;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.dto.db.StoredSessionDTO;
+
+import java.sql.*;
+import java.util.Optional;
+
+/**
+ * {@code HttpSessionDAO} 封装了 {@code http_sessions} 表的数据库操作。
+ * <p>
+ * 它提供了保存、读取、删除、迁移以及批量清理持久化会话的方法。
+ * 所有数据库交互都通过存储过程进行。
+ */
+public class HttpSessionDAO {
+
+    /**
+     * 保存会话数据，如果会话已存在则覆盖并递增版本号。
+     *
+     * @param sessionId           容器会话 ID。
+     * @param sessionData         会话属性的二进制编码。
+     * @param maxInactiveInterval 最大不活动时间（秒）。
+     * @return 保存后的版本号。
+     * @throws RuntimeException 如果在执行数据库操作时发生 {@link SQLException}。
+     */
+    public long saveSession(String sessionId, byte[] sessionData, int maxInactiveInterval) {
+        String sql = "SELECT save_http_session(?, ?, ?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, sessionId);
+            stmt.setBytes(2, sessionData);
+            stmt.setInt(3, maxInactiveInterval);
+            ResultSet rs = stmt.executeQuery();
+
+            return rs.next() ? rs.getLong(1) : 0L;
+        } catch (SQLException e) {
+            throw new RuntimeException("保存会话失败", e);
+        }
+    }
+
+    /**
+     * 读取未过期的会话数据。
+     *
+     * @param sessionId 容器会话 ID。
+     * @return 如果会话存在且未过期，则返回包含会话数据的 {@link Optional}<{@link StoredSessionDTO}>；否则返回空的 {@link Optional}。
+     * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
+     */
+    public Optional<StoredSessionDTO> loadSession(String sessionId) {
+        String sql = "SELECT * FROM load_http_session(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, sessionId);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                StoredSessionDTO dto = new StoredSessionDTO();
+                dto.setSessionData(rs.getBytes("session_data"));
+                dto.setVersion(rs.getLong("version"));
+                dto.setMaxInactiveInterval(rs.getInt("max_inactive_interval"));
+                return Optional.of(dto);
+            }
+            return Optional.empty();
+        } catch (SQLException e) {
+            throw new RuntimeException("读取会话失败", e);
+        }
+    }
+
+    /**
+     * 删除会话数据。
+     *
+     * @param sessionId 容器会话 ID。
+     * @return 如果删除了会话记录，则返回 {@code true}；否则返回 {@code false}。
+     * @throws RuntimeException 如果在执行数据库操作时发生 {@link SQLException}。
+     */
+    public boolean deleteSession(String sessionId) {
+        String sql = "SELECT delete_http_session(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, sessionId);
+            ResultSet rs = stmt.executeQuery();
+
+            return rs.next() && rs.getBoolean(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("删除会话失败", e);
+        }
+    }
+
+    /**
+     * 将会话记录迁移到新的会话 ID。
+     * <p>
+     * 当会话在另一个节点上恢复时，容器会分配新的会话 ID，此时需要将原有记录迁移过去。
+     *
+     * @param oldSessionId 原会话 ID。
+     * @param newSessionId 新会话 ID。
+     * @return 如果迁移成功，则返回 {@code true}；否则返回 {@code false}。
+     * @throws RuntimeException 如果在执行数据库操作时发生 {@link SQLException}。
+     */
+    public boolean renameSession(String oldSessionId, String newSessionId) {
+        String sql = "SELECT rename_http_session(?, ?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, oldSessionId);
+            stmt.setString(2, newSessionId);
+            ResultSet rs = stmt.executeQuery();
+
+            return rs.next() && rs.getBoolean(1);
+        } catch (SQLException e) {
+            throw new RuntimeException("迁移会话失败", e);
+        }
+    }
+
+    /**
+     * 批量删除已过期的会话。
+     *
+     * @param batchSize 单批最多删除的记录数。
+     * @return 实际删除的记录数。
+     * @throws RuntimeException 如果在执行数据库操作时发生 {@link SQLException}。
+     */
+    public int purgeExpiredSessions(int batchSize) {
+        String sql = "SELECT purge_expired_http_sessions(?)";
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, batchSize);
+            ResultSet rs = stmt.executeQuery();
+
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("清理过期会话失败", e);
+        }
+    }
+}
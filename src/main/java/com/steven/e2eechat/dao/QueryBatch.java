@@ -0,0 +1,159 @@
+package com.steven.e2eechat.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code QueryBatch} 将多个相互独立的查询合并为一次数据库往返。
+ * <p>
+ * 页面加载时经常需要依次调用多个互不依赖的存储过程，例如会话列表页为每个对方用户读取一次资料，
+ * 每次调用都要承担一次到数据库的完整网络延迟。本类把加入的查询用分号连接成一条多语句 SQL，
+ * PostgreSQL JDBC 驱动会将其拆分为多条语句，以扩展查询协议一次性发送并只在最后同步一次，
+ * 之后依次读取每条语句的结果集。
+ * <p>
+ * 使用方式：先通过 {@link #add(String, ResultMapper, Object...)} 加入查询并保存返回的 {@link Result}，
+ * 再调用 {@link #execute()}，之后通过各个 {@link Result#get()} 取得结果。
+ * 加入的每条 SQL 必须是返回结果集的单条语句，且不能以分号结尾。
+ * 所有语句在同一个隐式事务中执行，其中任何一条出错都会使整批查询失败。
+ */
+public class QueryBatch {
+    private final List<Call<?>> calls = new ArrayList<>();
+    private boolean executed;
+
+    /**
+     * 将结果集映射为结果对象的函数。
+     *
+     * @param <T> 结果类型。
+     */
+    @FunctionalInterface
+    public interface ResultMapper<T> {
+        /**
+         * 映射结果集。
+         *
+         * @param rs 查询的结果集，游标位于第一行之前。
+         * @return 映射得到的结果。
+         * @throws SQLException 如果读取结果集时发生错误。
+         */
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * 批量查询中一条查询的结果，在 {@link #execute()} 完成后可用。
+     *
+     * @param <T> 结果类型。
+     */
+    public static final class Result<T> {
+        private T value;
+        private boolean done;
+
+        private Result() {
+        }
+
+        /**
+         * 获取查询结果。
+         *
+         * @return 查询结果。
+         * @throws IllegalStateException 如果批量查询尚未执行。
+         */
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("批量查询尚未执行");
+            }
+            return value;
+        }
+
+        private void complete(T value) {
+            this.value = value;
+            this.done = true;
+        }
+    }
+
+    private record Call<T>(String sql, Object[] params, ResultMapper<T> mapper, Result<T> result) {
+        private void complete(ResultSet rs) throws SQLException {
+            result.complete(mapper.map(rs));
+        }
+    }
+
+    /**
+     * 加入一条查询。
+     *
+     * @param sql    返回结果集的单条 SQL，参数使用 {@code ?} 占位。
+     * @param mapper 结果集映射函数。
+     * @param params 按顺序绑定的参数，通过 {@link PreparedStatement#setObject(int, Object)} 设置。
+     * @param <T>    结果类型。
+     * @return 查询的结果，在 {@link #execute()} 完成后可用。
+     * @throws IllegalStateException 如果批量查询已经执行。
+     */
+    public <T> Result<T> add(String sql, ResultMapper<T> mapper, Object... params) {
+        if (executed) {
+            throw new IllegalStateException("批量查询已经执行");
+        }
+        Result<T> result = new Result<>();
+        calls.add(new Call<>(sql, params, mapper, result));
+        return result;
+    }
+
+    /**
+     * 获取已加入的查询数量。
+     *
+     * @return 查询数量。
+     */
+    public int size() {
+        return calls.size();
+    }
+
+    /**
+     * 在一次数据库往返中执行所有已加入的查询。没有加入任何查询时不访问数据库。
+     *
+     * @throws RuntimeException 如果执行查询或读取结果时发生 {@link SQLException}。
+     * @throws IllegalStateException 如果批量查询已经执行。
+     */
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("批量查询已经执行");
+        }
+        executed = true;
+        if (calls.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder();
+        for (Call<?> call : calls) {
+            if (!sql.isEmpty()) {
+                sql.append(";\n");
+            }
+            sql.append(call.sql());
+        }
+
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Call<?> call : calls) {
+                for (Object param : call.params()) {
+                    stmt.setObject(index++, param);
+                }
+            }
+
+            boolean hasResultSet = stmt.execute();
+            for (Call<?> call : calls) {
+                // 跳过不返回结果集的语句产生的更新计数
+                while (!hasResultSet && stmt.getUpdateCount() != -1) {
+                    hasResultSet = stmt.getMoreResults();
+                }
+                if (!hasResultSet) {
+                    throw new SQLException("批量查询返回的结果集少于查询数量");
+                }
+                try (ResultSet rs = stmt.getResultSet()) {
+                    call.complete(rs);
+                }
+                hasResultSet = stmt.getMoreResults();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("执行批量查询失败", e);
+        }
+    }
+}
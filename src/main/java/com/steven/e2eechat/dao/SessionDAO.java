@@ -1,10 +1,13 @@
 package com.steven.e2eechat.dao;
 
-import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.codec.ByteBufferInputStream;
+import com.steven.e2eechat.dto.db.ChatBootstrapDTO;
 import com.steven.e2eechat.dto.db.NewMessageDTO;
 import com.steven.e2eechat.model.ChatMessage;
 import com.steven.e2eechat.model.ChatSession;
+import com.steven.e2eechat.model.UserProfile;
 
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
@@ -17,8 +20,51 @@ import java.util.UUID;
  * <p>
  * 它提供了用于获取最近会话、未读消息计数、消息列表、发送消息以及管理会话的方法。
  * 所有数据库交互都通过存储过程进行。
+ * 连接通过 {@link UnitOfWork#getConnection()} 获取，同一工作单元内的多次调用共享一个连接。
  */
 public class SessionDAO {
+    /**
+     * 消息分页的方向，决定使用的存储过程或直接 SQL 以及参数绑定方式。
+     */
+    private enum MessagePage {
+        BEFORE("SELECT * FROM get_messages_before(?, ?, ?, ?)", DirectSql.MESSAGES_BEFORE, Long.MAX_VALUE),
+        AFTER("SELECT * FROM get_messages_after(?, ?, ?, ?)", DirectSql.MESSAGES_AFTER, Long.MIN_VALUE);
+
+        private final String procedureSql;
+        private final String directSql;
+        /**
+         * 直接 SQL 中游标为 -1 时使用的边界，使条件对所有消息成立。
+         */
+        private final long unboundedCursor;
+
+        MessagePage(String procedureSql, String directSql, long unboundedCursor) {
+            this.procedureSql = procedureSql;
+            this.directSql = directSql;
+            this.unboundedCursor = unboundedCursor;
+        }
+
+        private String sql() {
+            return DirectSql.isEnabled() ? directSql : procedureSql;
+        }
+
+        private void bind(PreparedStatement stmt, UUID userId, UUID sessionId, long cursor, int limit)
+                throws SQLException {
+            if (!DirectSql.isEnabled()) {
+                stmt.setObject(1, userId);
+                stmt.setObject(2, sessionId);
+                stmt.setLong(3, cursor);
+                stmt.setInt(4, limit);
+                return;
+            }
+            stmt.setObject(1, userId);
+            stmt.setObject(2, sessionId);
+            stmt.setObject(3, userId);
+            stmt.setObject(4, userId);
+            stmt.setLong(5, cursor == -1 ? unboundedCursor : cursor);
+            stmt.setInt(6, limit);
+            stmt.setObject(7, userId);
+        }
+    }
 
     /**
      * 获取指定用户的最近聊天会话列表。
@@ -30,13 +76,18 @@ public class SessionDAO {
      * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
      */
     public List<ChatSession> getRecentSessions(UUID userId) {
-        String sql = "SELECT * FROM get_recent_sessions(?)";
+        boolean direct = DirectSql.isEnabled();
+        String sql = direct ? DirectSql.RECENT_SESSIONS : "SELECT * FROM get_recent_sessions(?)";
         List<ChatSession> sessions = new ArrayList<>();
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = DirectSql.prepare(conn, sql)) {
 
             stmt.setObject(1, userId);
+            if (direct) {
+                stmt.setObject(2, userId);
+                stmt.setObject(3, userId);
+            }
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
@@ -61,7 +112,7 @@ public class SessionDAO {
     public int getUnreadCount(UUID sessionId, UUID userId) {
         String sql = "SELECT get_unread_count(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, sessionId);
@@ -87,7 +138,7 @@ public class SessionDAO {
     public UUID getFirstUnreadMessageId(UUID userId, UUID sessionId) {
         String sql = "SELECT get_first_unread(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -111,8 +162,7 @@ public class SessionDAO {
      * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
      */
     public List<ChatMessage> getMessagesBefore(UUID userId, UUID sessionId, long cursor, int limit) {
-        String sql = "SELECT * FROM get_messages_before(?, ?, ?, ?)";
-        return getMessages(sql, userId, sessionId, cursor, limit);
+        return getMessages(MessagePage.BEFORE, userId, sessionId, cursor, limit);
     }
 
     /**
@@ -126,32 +176,46 @@ public class SessionDAO {
      * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
      */
     public List<ChatMessage> getMessagesAfter(UUID userId, UUID sessionId, long cursor, int limit) {
-        String sql = "SELECT * FROM get_messages_after(?, ?, ?, ?)";
-        return getMessages(sql, userId, sessionId, cursor, limit);
+        return getMessages(MessagePage.AFTER, userId, sessionId, cursor, limit);
     }
 
     /**
      * 发送一条新的聊天消息。
+     * <p>
+     * 返回的 {@link ChatMessage} 包含数据库生成的消息ID、游标、接收者和发送时间，
+     * 以及发送者和系统消息标志；不包含 IV 和密文。
      *
      * @param userId     发送消息的用户的 UUID。
      * @param newMessage 包含新消息详细信息的 {@link NewMessageDTO}。
-     * @return 如果消息发送成功，则返回 {@code true}；否则返回 {@code false}。
+     * @return 如果消息发送成功，则返回包含新消息元数据的 {@link Optional}；如果会话不存在或用户无权发送，则返回空的 {@link Optional}。
      * @throws RuntimeException 如果在执行数据库操作时发生 {@link SQLException}。
      */
-    public boolean sendMessage(UUID userId, NewMessageDTO newMessage) {
-        String sql = "SELECT send_message(?, ?, ?, ?, ?)";
+    public Optional<ChatMessage> sendMessage(UUID userId, NewMessageDTO newMessage) {
+        String sql = "SELECT * FROM send_message_returning(?, ?, ?, ?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
             stmt.setObject(2, newMessage.getSessionId());
-            stmt.setBytes(3, newMessage.getMessageIv());
-            stmt.setBytes(4, newMessage.getMessageContent());
+            setBytes(stmt, 3, newMessage.getMessageIv());
+            setBytes(stmt, 4, newMessage.getMessageContent());
             stmt.setBoolean(5, newMessage.isSystem());
 
             ResultSet rs = stmt.executeQuery();
-            return rs.next() && rs.getBoolean(1);
+            if (rs.next()) {
+                ChatMessage message = new ChatMessage();
+                message.setMessageId((UUID) rs.getObject("message_id"));
+                message.setSessionId(newMessage.getSessionId());
+                message.setCursor(rs.getLong("cursor"));
+                message.setSenderId(userId);
+                message.setReceiverId((UUID) rs.getObject("receiver_id"));
+                message.setSystem(newMessage.isSystem());
+                message.setRead(false);
+                message.setSentAt(rs.getObject("sent_at", OffsetDateTime.class));
+                return Optional.of(message);
+            }
+            return Optional.empty();
         } catch (SQLException e) {
             throw new RuntimeException("发送消息失败", e);
         }
@@ -170,7 +234,7 @@ public class SessionDAO {
     public Optional<UUID> getOrCreateSession(UUID userId, UUID otherUserId) {
         String sql = "SELECT get_or_create_session(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -198,13 +262,18 @@ public class SessionDAO {
      * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
      */
     public Optional<ChatSession> getSession(UUID userId, UUID sessionId) {
-        String sql = "SELECT * FROM get_session(?, ?)";
+        boolean direct = DirectSql.isEnabled();
+        String sql = direct ? DirectSql.SESSION : "SELECT * FROM get_session(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = DirectSql.prepare(conn, sql)) {
 
             stmt.setObject(1, userId);
             stmt.setObject(2, sessionId);
+            if (direct) {
+                stmt.setObject(3, userId);
+                stmt.setObject(4, userId);
+            }
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
@@ -217,6 +286,60 @@ public class SessionDAO {
         }
     }
 
+    /**
+     * 获取打开聊天页面所需的全部数据：会话信息、对方用户资料，以及以锚点为中心的消息窗口。
+     * <p>
+     * 锚点优先为指定的消息；未指定或该消息不属于会话时为首条未读消息，没有未读消息时为最后一条消息。
+     * {@code open_chat} 和 {@code get_messages_around} 通过 {@link QueryBatch} 在一次数据库往返中执行，
+     * 窗口中的接收消息会被标记为已读。
+     *
+     * @param userId    用户的 UUID。
+     * @param sessionId 会话的 UUID。
+     * @param messageId 作为锚点的消息 UUID，可以为 {@code null}。
+     * @param before    锚点之前最多返回的消息数量。
+     * @param after     从锚点开始最多返回的消息数量。
+     * @return 如果会话存在且用户有权限访问，则返回包含 {@link ChatBootstrapDTO} 的 {@link Optional}；否则返回空的 {@link Optional}。
+     * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
+     */
+    public Optional<ChatBootstrapDTO> openChat(UUID userId, UUID sessionId, UUID messageId, int before, int after) {
+        QueryBatch batch = new QueryBatch();
+        QueryBatch.Result<Optional<ChatBootstrapDTO>> chat = batch.add(
+                "SELECT * FROM open_chat(?, ?, ?::uuid)",
+                rs -> rs.next() ? Optional.of(getBootstrapModel(rs)) : Optional.empty(),
+                userId, sessionId, messageId);
+        QueryBatch.Result<List<ChatMessage>> window = batch.add(
+                "SELECT * FROM get_messages_around(?, ?, ?::uuid, ?, ?)",
+                rs -> {
+                    List<ChatMessage> messages = new ArrayList<>();
+                    while (rs.next()) {
+                        messages.add(getMessageModel(rs));
+                    }
+                    return messages;
+                },
+                userId, sessionId, messageId, before, after);
+        batch.execute();
+
+        chat.get().ifPresent(bootstrap -> bootstrap.setMessages(window.get()));
+        return chat.get();
+    }
+
+    private ChatBootstrapDTO getBootstrapModel(ResultSet rs) throws SQLException {
+        UserProfile peer = new UserProfile();
+        peer.setUserId((UUID) rs.getObject("peer_id"));
+        peer.setUsername(rs.getString("peer_username"));
+        peer.setDisplayName(rs.getString("peer_display_name"));
+        peer.setPublicKey(rs.getBytes("peer_public_key"));
+        peer.setLastOnline(rs.getObject("peer_last_online", OffsetDateTime.class));
+
+        ChatBootstrapDTO bootstrap = new ChatBootstrapDTO();
+        bootstrap.setSession(getSessionModel(rs));
+        bootstrap.setPeer(peer);
+        long anchorCursor = rs.getLong("anchor_cursor");
+        bootstrap.setAnchorCursor(rs.wasNull() ? null : anchorCursor);
+        bootstrap.setAnchorUnread(rs.getBoolean("anchor_unread"));
+        return bootstrap;
+    }
+
     private ChatSession getSessionModel(ResultSet rs) throws SQLException {
         ChatSession session = new ChatSession();
         session.setSessionId((UUID) rs.getObject("session_id"));
@@ -242,7 +365,7 @@ public class SessionDAO {
     public Optional<ChatMessage> getMessage(UUID userId, UUID messageId) {
         String sql = "SELECT * FROM get_message(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -272,30 +395,17 @@ public class SessionDAO {
     /**
      * 获取消息列表的辅助方法。
      */
-    private List<ChatMessage> getMessages(String sql, UUID userId, UUID sessionId, long cursor, int limit) {
+    private List<ChatMessage> getMessages(MessagePage page, UUID userId, UUID sessionId, long cursor, int limit) {
         List<ChatMessage> messages = new ArrayList<>();
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = DirectSql.prepare(conn, page.sql())) {
 
-            stmt.setObject(1, userId);
-            stmt.setObject(2, sessionId);
-            stmt.setLong(3, cursor);
-            stmt.setInt(4, limit);
+            page.bind(stmt, userId, sessionId, cursor, limit);
 
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                ChatMessage message = new ChatMessage();
-                message.setMessageId((UUID) rs.getObject("message_id"));
-                message.setCursor(rs.getLong("cursor"));
-                message.setSenderId((UUID) rs.getObject("sender_id"));
-                message.setReceiverId((UUID) rs.getObject("receiver_id"));
-                message.setSystem(rs.getBoolean("is_system"));
-                message.setRead(rs.getBoolean("is_read"));
-                message.setMessageIv(rs.getBytes("message_iv"));
-                message.setMessageContent(rs.getBytes("message_content"));
-                message.setSentAt(rs.getObject("sent_at", OffsetDateTime.class));
-                messages.add(message);
+                messages.add(getMessageModel(rs));
             }
 
             return messages;
@@ -303,4 +413,34 @@ public class SessionDAO {
             throw new RuntimeException("获取消息列表失败", e);
         }
     }
-}
+
+    private ChatMessage getMessageModel(ResultSet rs) throws SQLException {
+        ChatMessage message = new ChatMessage();
+        message.setMessageId((UUID) rs.getObject("message_id"));
+        message.setCursor(rs.getLong("cursor"));
+        message.setSenderId((UUID) rs.getObject("sender_id"));
+        message.setReceiverId((UUID) rs.getObject("receiver_id"));
+        message.setSystem(rs.getBoolean("is_system"));
+        message.setRead(rs.getBoolean("is_read"));
+        message.setMessageIv(rs.getBytes("message_iv"));
+        message.setMessageContent(rs.getBytes("message_content"));
+        message.setSentAt(rs.getObject("sent_at", OffsetDateTime.class));
+        return message;
+    }
+
+    /**
+     * 将缓冲区中的字节设置为 {@code bytea} 参数。
+     * <p>
+     * 堆缓冲区直接使用其底层数组；直接内存缓冲区以流的方式交给驱动，不复制为 {@code byte[]}。
+     * 缓冲区本身的 position 不会改变。
+     */
+    private static void setBytes(PreparedStatement stmt, int index, ByteBuffer value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, Types.BINARY);
+        } else if (value.hasArray() && value.arrayOffset() == 0 && value.position() == 0
+                && value.remaining() == value.array().length) {
+            stmt.setBytes(index, value.array());
+        } else {
+            stmt.setBinaryStream(index, new ByteBufferInputStream(value.duplicate()), value.remaining());
+        }
+    }}
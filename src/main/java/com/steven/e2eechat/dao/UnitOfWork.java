@@ -0,0 +1,281 @@
+package com.steven.e2eechat.dao;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * {@code UnitOfWork} 让一组 DAO 调用共享一个数据库连接，并可选地将它们放在同一个事务中。
+ * <p>
+ * 一些业务操作需要依次调用多次 DAO，例如创建会话时先查询用户名和用户资料，再获取或创建会话，
+ * 每次调用都要从连接池借出并校验一个连接。{@link #withConnection(Supplier)} 为这样的一组调用开始一个作用域：
+ * 作用域内 DAO 通过 {@link #getConnection()} 得到的是共享物理连接的代理，第一次调用时才从连接池借出，
+ * 作用域结束时归还。作用域只包住访问数据库的部分，密码哈希、JSP 渲染等处理不占用连接。
+ * <p>
+ * DAO 仍然用 try-with-resources 关闭连接：代理的 {@code close()} 不会归还物理连接，
+ * 只会回滚 DAO 未提交的工作并恢复自动提交，与连接归还连接池时的行为一致。
+ * <p>
+ * {@link #inTransaction(Supplier)} 将一组操作放在一个事务中执行：其间 DAO 对 {@code setAutoCommit}、
+ * {@code commit} 的调用被忽略，{@code rollback} 会使整个事务在结束时回滚。
+ * 不在任何作用域中的 DAO 调用直接从连接池借出连接。
+ */
+public final class UnitOfWork {
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 当前线程的作用域。
+     */
+    private static final class Scope {
+        private Connection physical;
+        private int openHandles;
+        private int holdDepth;
+        private int transactionDepth;
+        private boolean rollbackOnly;
+
+        private Connection acquire() throws SQLException {
+            if (physical == null) {
+                physical = DatabaseConfig.getConnection();
+            }
+            return physical;
+        }
+
+        private Connection open() throws SQLException {
+            acquire();
+            openHandles++;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ScopedConnectionHandler(this));
+        }
+
+        /**
+         * 没有打开的代理、不在 {@link #withConnection(Supplier)} 或事务中时，将物理连接归还连接池。
+         */
+        private void releaseIfIdle() {
+            if (openHandles == 0 && holdDepth == 0 && transactionDepth == 0) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (physical == null) {
+                return;
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // 记录日志，方便调试
+            } finally {
+                physical = null;
+            }
+        }
+    }
+
+    /**
+     * 作用域内 DAO 使用的连接代理，每次 {@link #getConnection()} 返回一个新的代理。
+     */
+    private static final class ScopedConnectionHandler implements InvocationHandler {
+        private final Scope scope;
+        private boolean closed;
+
+        private ScopedConnectionHandler(Scope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean inTransaction = scope.transactionDepth > 0;
+            switch (method.getName()) {
+                case "close" -> {
+                    if (closed) {
+                        return null;
+                    }
+                    closed = true;
+                    scope.openHandles--;
+                    try {
+                        if (!inTransaction && scope.openHandles == 0 && scope.physical != null
+                                && !scope.physical.getAutoCommit()) {
+                            // 与连接归还连接池时一致：丢弃未提交的工作
+                            scope.physical.rollback();
+                            scope.physical.setAutoCommit(true);
+                        }
+                    } finally {
+                        scope.releaseIfIdle();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || scope.physical.isClosed();
+                }
+                case "setAutoCommit", "commit" -> {
+                    if (inTransaction) {
+                        return null;
+                    }
+                }
+                case "rollback" -> {
+                    if (inTransaction && args == null) {
+                        scope.rollbackOnly = true;
+                        return null;
+                    }
+                }
+                default -> {
+                }
+            }
+            if (closed && method.getDeclaringClass() != Object.class) {
+                throw new SQLException("连接已关闭");
+            }
+            try {
+                return method.invoke(scope.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * 获取 DAO 使用的数据库连接。
+     * <p>
+     * 当前线程有活动作用域时，返回共享物理连接的代理（作用域当前没有连接时从连接池借出）；
+     * 否则直接从连接池借出一个连接。两种情况下调用方都应在使用完毕后关闭返回的连接。
+     *
+     * @return 数据库连接。
+     * @throws SQLException 如果从连接池获取连接失败。
+     */
+    public static Connection getConnection() throws SQLException {
+        Scope scope = CURRENT.get();
+        return scope != null ? scope.open() : DatabaseConfig.getConnection();
+    }
+
+    /**
+     * 让一组 DAO 调用共享一个数据库连接。
+     * <p>
+     * 连接在第一次访问数据库时借出，在最外层的 {@code withConnection} 返回时归还；
+     * 嵌套调用以及其中的 {@link #inTransaction(Supplier)} 都使用同一个连接。
+     *
+     * @param work 要执行的操作。
+     * @param <T>  操作的返回值类型。
+     * @return 操作的返回值。
+     */
+    public static <T> T withConnection(Supplier<T> work) {
+        boolean owner = begin();
+        Scope scope = CURRENT.get();
+        scope.holdDepth++;
+        try {
+            return work.get();
+        } finally {
+            scope.holdDepth--;
+            if (owner) {
+                end();
+            } else {
+                scope.releaseIfIdle();
+            }
+        }
+    }
+
+    /**
+     * 在当前线程开始一个作用域。
+     *
+     * @return 如果开始了新的作用域则返回 {@code true}，调用方随后必须调用 {@link #end()}；
+     *         如果当前线程已有活动作用域则返回 {@code false}。
+     */
+    private static boolean begin() {
+        if (CURRENT.get() != null) {
+            return false;
+        }
+        CURRENT.set(new Scope());
+        return true;
+    }
+
+    /**
+     * 结束当前线程的作用域，并将仍被持有的连接归还连接池。
+     */
+    private static void end() {
+        Scope scope = CURRENT.get();
+        CURRENT.remove();
+        if (scope != null) {
+            scope.release();
+        }
+    }
+
+    /**
+     * 在一个事务中执行一组操作。
+     * <p>
+     * 操作正常返回时提交事务；抛出异常或其中的 DAO 调用了 {@code rollback} 时回滚事务。
+     * 在另一个事务中调用时加入外层事务，由最外层决定提交或回滚。
+     * 当前线程没有活动作用域时，为本次调用临时开始一个作用域。
+     *
+     * @param work 要执行的操作。
+     * @param <T>  操作的返回值类型。
+     * @return 操作的返回值。
+     * @throws RuntimeException 如果操作抛出异常，或在开始、提交、回滚事务时发生 {@link SQLException}。
+     */
+    public static <T> T inTransaction(Supplier<T> work) {
+        boolean owner = begin();
+        Scope scope = CURRENT.get();
+        try {
+            if (scope.transactionDepth == 0) {
+                startTransaction(scope);
+            }
+            scope.transactionDepth++;
+
+            T result;
+            try {
+                result = work.get();
+            } catch (RuntimeException | Error e) {
+                scope.rollbackOnly = true;
+                try {
+                    finishTransaction(scope);
+                } catch (RuntimeException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            }
+            finishTransaction(scope);
+            return result;
+        } finally {
+            if (owner) {
+                end();
+            }
+        }
+    }
+
+    private static void startTransaction(Scope scope) {
+        try {
+            scope.acquire().setAutoCommit(false);
+            scope.rollbackOnly = false;
+        } catch (SQLException e) {
+            throw new RuntimeException("开始事务失败", e);
+        }
+    }
+
+    private static void finishTransaction(Scope scope) {
+        if (--scope.transactionDepth > 0) {
+            return;
+        }
+        try {
+            if (scope.rollbackOnly) {
+                scope.physical.rollback();
+            } else {
+                scope.physical.commit();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("提交事务失败", e);
+        } finally {
+            scope.rollbackOnly = false;
+            try {
+                scope.physical.setAutoCommit(true);
+            } catch (SQLException e) {
+                // 记录日志，方便调试
+            }
+            scope.releaseIfIdle();
+        }
+    }
+
+    private UnitOfWork() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
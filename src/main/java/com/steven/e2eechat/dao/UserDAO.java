@@ -1,12 +1,14 @@
 package com.steven.e2eechat.dao;
 
-import com.steven.e2eechat.config.DatabaseConfig;
 import com.steven.e2eechat.dto.db.UserSaltDTO;
 import com.steven.e2eechat.model.UserProfile;
 import com.steven.e2eechat.model.UserVault;
 
 import java.sql.*;
 import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -15,6 +17,7 @@ import java.util.UUID;
  * <p>
  * 它提供了用于检查用户名可用性、注册用户、获取用户凭据、验证登录、管理用户保险库和获取用户资料的方法。
  * 所有数据库交互都通过存储过程进行，以提高安全性和数据访问的一致性。
+ * 连接通过 {@link UnitOfWork#getConnection()} 获取，同一工作单元内的多次调用共享一个连接。
  */
 public class UserDAO {
     /**
@@ -27,7 +30,7 @@ public class UserDAO {
     public boolean checkUsernameAvailable(String username) {
         String sql = "SELECT check_username_available(?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -56,7 +59,7 @@ public class UserDAO {
                                        byte[] passwordSalt, byte[] vaultMasterKey) {
         String sql = "SELECT register_user(?, ?, ?, ?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -91,7 +94,7 @@ public class UserDAO {
     public Optional<UserSaltDTO> getUserSalt(String username) {
         String sql = "SELECT * FROM get_user_salt(?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -120,7 +123,7 @@ public class UserDAO {
     public boolean verifyLogin(UUID userId, byte[] passwordHash) {
         String sql = "SELECT verify_login(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -150,7 +153,7 @@ public class UserDAO {
                                byte[] encryptedPrivateKey, byte[] publicKey) {
         String sql = "SELECT create_vault(?, ?, ?, ?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection()) {
+        try (Connection conn = UnitOfWork.getConnection()) {
             conn.setAutoCommit(false);
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setObject(1, userId);
@@ -188,7 +191,7 @@ public class UserDAO {
     public Optional<UserVault> getVault(UUID userId) {
         String sql = "SELECT * FROM get_vault(?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -218,30 +221,90 @@ public class UserDAO {
      * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
      */
     public Optional<UserProfile> getUserProfile(UUID userId) {
-        String sql = "SELECT * FROM get_user_profile(?)";
+        String sql = DirectSql.isEnabled() ? DirectSql.USER_PROFILE : "SELECT * FROM get_user_profile(?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = DirectSql.prepare(conn, sql)) {
 
             stmt.setObject(1, userId);
             ResultSet rs = stmt.executeQuery();
 
-            if (rs.next()) {
-                UserProfile profile = new UserProfile();
-                profile.setUserId(userId);
-                profile.setUsername(rs.getString("username"));
-                profile.setDisplayName(rs.getString("display_name"));
-                profile.setPublicKey(rs.getBytes("public_key"));
-                profile.setLastOnline(rs.getObject("last_online", OffsetDateTime.class));
-                profile.setRegisteredAt(rs.getObject("registered_at", OffsetDateTime.class));
-                return Optional.of(profile);
+            return mapUserProfile(userId, rs);
+        } catch (SQLException e) {
+            throw new RuntimeException("获取用户资料失败", e);
+        }
+    }
+
+    /**
+     * 在一次数据库往返中获取多个用户的用户资料。
+     * <p>
+     * 每个用户对应一次 {@code get_user_profile} 调用，所有调用通过 {@link QueryBatch} 一起发送；
+     * 直接 SQL 模式下以一条 {@code user_id = ANY(?)} 查询读取。
+     *
+     * @param userIds 要获取资料的用户的 UUID。
+     * @return 用户ID到用户资料的映射，不存在的用户不包含在内；{@code userIds} 为空时不访问数据库。
+     * @throws RuntimeException 如果在执行数据库查询时发生 {@link SQLException}。
+     */
+    public Map<UUID, UserProfile> getUserProfiles(Collection<UUID> userIds) {
+        if (DirectSql.isEnabled()) {
+            return getUserProfilesDirect(userIds);
+        }
+        String sql = "SELECT * FROM get_user_profile(?)";
+
+        QueryBatch batch = new QueryBatch();
+        Map<UUID, QueryBatch.Result<Optional<UserProfile>>> results = new LinkedHashMap<>();
+        for (UUID userId : userIds) {
+            if (!results.containsKey(userId)) {
+                results.put(userId, batch.add(sql, rs -> mapUserProfile(userId, rs), userId));
             }
-            return Optional.empty();
+        }
+        batch.execute();
+
+        Map<UUID, UserProfile> profiles = new LinkedHashMap<>();
+        results.forEach((userId, result) -> result.get().ifPresent(profile -> profiles.put(userId, profile)));
+        return profiles;
+    }
+
+    private Map<UUID, UserProfile> getUserProfilesDirect(Collection<UUID> userIds) {
+        Map<UUID, UserProfile> profiles = new LinkedHashMap<>();
+        if (userIds.isEmpty()) {
+            return profiles;
+        }
+
+        try (Connection conn = UnitOfWork.getConnection();
+             PreparedStatement stmt = DirectSql.prepare(conn, DirectSql.USER_PROFILES)) {
+
+            stmt.setArray(1, conn.createArrayOf("uuid", userIds.toArray()));
+            ResultSet rs = stmt.executeQuery();
+
+            Optional<UserProfile> profile;
+            while ((profile = mapUserProfile(null, rs)).isPresent()) {
+                profiles.put(profile.get().getUserId(), profile.get());
+            }
+            return profiles;
         } catch (SQLException e) {
             throw new RuntimeException("获取用户资料失败", e);
         }
     }
 
+    /**
+     * 读取结果集的下一行并映射为用户资料，没有更多行时返回空的 {@link Optional}。
+     * {@code userId} 为 {@code null} 时从结果集的 {@code user_id} 列读取。
+     */
+    private static Optional<UserProfile> mapUserProfile(UUID userId, ResultSet rs) throws SQLException {
+        if (rs.next()) {
+            UserProfile profile = new UserProfile();
+            profile.setUserId(userId != null ? userId : (UUID) rs.getObject("user_id"));
+            profile.setUsername(rs.getString("username"));
+            profile.setDisplayName(rs.getString("display_name"));
+            profile.setPublicKey(rs.getBytes("public_key"));
+            profile.setLastOnline(rs.getObject("last_online", OffsetDateTime.class));
+            profile.setRegisteredAt(rs.getObject("registered_at", OffsetDateTime.class));
+            return Optional.of(profile);
+        }
+        return Optional.empty();
+    }
+
     /**
      * 更新用户的最后在线时间。
      *
@@ -252,7 +315,7 @@ public class UserDAO {
     public void updateLastOnline(UUID userId, OffsetDateTime timestamp) {
         String sql = "SELECT update_last_online(?, ?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setObject(1, userId);
@@ -273,7 +336,7 @@ public class UserDAO {
     public Optional<UUID> getUserUuidByUsername(String username) {
         String sql = "SELECT get_user_uuid_by_username(?)";
 
-        try (Connection conn = DatabaseConfig.getConnection();
+        try (Connection conn = UnitOfWork.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, username);
@@ -0,0 +1,130 @@
+package com.steven.e2eechat.dto.db;
+
+import com.steven.e2eechat.model.ChatMessage;
+import com.steven.e2eechat.model.ChatSession;
+import com.steven.e2eechat.model.UserProfile;
+
+import java.util.List;
+
+/**
+ * {@code ChatBootstrapDTO} 数据传输对象，用于封装打开聊天页面所需的全部数据。
+ * <p>
+ * 该对象对应于 `open_chat` 和 `get_messages_around` 两个存储过程的返回值：会话信息、对方用户资料、
+ * 消息窗口的锚点，以及锚点前后的消息。两个存储过程在一次数据库往返中执行。
+ */
+public class ChatBootstrapDTO {
+    /**
+     * 会话信息。
+     */
+    private ChatSession session;
+
+    /**
+     * 对方用户的资料。
+     */
+    private UserProfile peer;
+
+    /**
+     * 消息窗口锚点的游标，会话中没有消息时为 {@code null}。
+     */
+    private Long anchorCursor;
+
+    /**
+     * 锚点消息在本次读取之前是否为当前用户的未读消息。
+     */
+    private boolean anchorUnread;
+
+    /**
+     * 锚点前后的消息，按游标升序排列。
+     */
+    private List<ChatMessage> messages;
+
+    /**
+     * 获取会话信息。
+     *
+     * @return 会话信息。
+     */
+    public ChatSession getSession() {
+        return session;
+    }
+
+    /**
+     * 设置会话信息。
+     *
+     * @param session 会话信息。
+     */
+    public void setSession(ChatSession session) {
+        this.session = session;
+    }
+
+    /**
+     * 获取对方用户的资料。
+     *
+     * @return 对方用户的资料。
+     */
+    public UserProfile getPeer() {
+        return peer;
+    }
+
+    /**
+     * 设置对方用户的资料。
+     *
+     * @param peer 对方用户的资料。
+     */
+    public void setPeer(UserProfile peer) {
+        this.peer = peer;
+    }
+
+    /**
+     * 获取消息窗口锚点的游标。
+     *
+     * @return 锚点游标，会话中没有消息时为 {@code null}。
+     */
+    public Long getAnchorCursor() {
+        return anchorCursor;
+    }
+
+    /**
+     * 设置消息窗口锚点的游标。
+     *
+     * @param anchorCursor 锚点游标。
+     */
+    public void setAnchorCursor(Long anchorCursor) {
+        this.anchorCursor = anchorCursor;
+    }
+
+    /**
+     * 获取锚点消息在本次读取之前是否为未读消息。
+     *
+     * @return 如果锚点是首条未读消息则返回 {@code true}。
+     */
+    public boolean isAnchorUnread() {
+        return anchorUnread;
+    }
+
+    /**
+     * 设置锚点消息在本次读取之前是否为未读消息。
+     *
+     * @param anchorUnread 锚点是否未读。
+     */
+    public void setAnchorUnread(boolean anchorUnread) {
+        this.anchorUnread = anchorUnread;
+    }
+
+    /**
+     * 获取锚点前后的消息。
+     *
+     * @return 按游标升序排列的消息列表。
+     */
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 设置锚点前后的消息。
+     *
+     * @param messages 按游标升序排列的消息列表。
+     */
+    public void setMessages(List<ChatMessage> messages) {
+        this.messages = messages;
+    }
+}
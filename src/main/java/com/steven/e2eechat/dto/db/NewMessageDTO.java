@@ -1,16 +1,20 @@
 package com.steven.e2eechat.dto.db;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 /**
  * {@code NewMessageDTO} 数据传输对象，用于在发送新消息时传递必要的参数。
  * <p>
  * 该对象封装了发送消息所需的会话 ID、消息加密的初始化向量 (IV)、加密后的消息内容以及消息是否为系统消息的标志。
+ * <p>
+ * IV 和密文以 {@link ByteBuffer} 保存（从 position 到 limit 的部分），
+ * 二进制请求可以直接引用池化的直接内存缓冲区，不必复制为 {@code byte[]}。
  */
 public class NewMessageDTO {
     private UUID sessionId;
-    private byte[] messageIv;
-    private byte[] messageContent;
+    private ByteBuffer messageIv;
+    private ByteBuffer messageContent;
     private boolean isSystem;
 
     /**
@@ -34,37 +38,55 @@ public class NewMessageDTO {
     /**
      * 获取消息加密的初始化向量 (IV)。
      *
-     * @return 消息加密的 IV 字节数组。
+     * @return 消息加密的 IV 缓冲区。
      */
-    public byte[] getMessageIv() {
+    public ByteBuffer getMessageIv() {
         return messageIv;
     }
 
+    /**
+     * 设置消息加密的初始化向量 (IV)。
+     *
+     * @param messageIv 消息加密的 IV 缓冲区。
+     */
+    public void setMessageIv(ByteBuffer messageIv) {
+        this.messageIv = messageIv;
+    }
+
     /**
      * 设置消息加密的初始化向量 (IV)。
      *
      * @param messageIv 消息加密的 IV 字节数组。
      */
     public void setMessageIv(byte[] messageIv) {
-        this.messageIv = messageIv;
+        this.messageIv = messageIv != null ? ByteBuffer.wrap(messageIv) : null;
     }
 
     /**
      * 获取加密后的消息内容。
      *
-     * @return 加密后的消息内容字节数组。
+     * @return 加密后的消息内容缓冲区。
      */
-    public byte[] getMessageContent() {
+    public ByteBuffer getMessageContent() {
         return messageContent;
     }
 
+    /**
+     * 设置加密后的消息内容。
+     *
+     * @param messageContent 加密后的消息内容缓冲区。
+     */
+    public void setMessageContent(ByteBuffer messageContent) {
+        this.messageContent = messageContent;
+    }
+
     /**
      * 设置加密后的消息内容。
      *
      * @param messageContent 加密后的消息内容字节数组。
      */
     public void setMessageContent(byte[] messageContent) {
-        this.messageContent = messageContent;
+        this.messageContent = messageContent != null ? ByteBuffer.wrap(messageContent) : null;
     }
 
     /**
@@ -0,0 +1,79 @@
+package com.steven.e2eechat.dto.db;
+
+/**
+ * {@code StoredSessionDTO} 数据传输对象，用于封装从 {@code http_sessions} 表中读取的持久化会话。
+ * <p>
+ * 该对象对应于 `load_http_session` 存储过程的返回值，包含会话属性的二进制编码、版本号以及最大不活动时间。
+ */
+public class StoredSessionDTO {
+    /**
+     * 会话属性的紧凑二进制编码。
+     */
+    private byte[] sessionData;
+
+    /**
+     * 会话数据版本号，每次保存时由数据库递增。
+     * <p>
+     * 用于判断本地缓存的会话属性是否已被其他节点更新。
+     */
+    private long version;
+
+    /**
+     * 会话的最大不活动时间（秒）。
+     */
+    private int maxInactiveInterval;
+
+    /**
+     * 获取会话属性的二进制编码。
+     *
+     * @return 会话属性字节数组。
+     */
+    public byte[] getSessionData() {
+        return sessionData;
+    }
+
+    /**
+     * 设置会话属性的二进制编码。
+     *
+     * @param sessionData 会话属性字节数组。
+     */
+    public void setSessionData(byte[] sessionData) {
+        this.sessionData = sessionData;
+    }
+
+    /**
+     * 获取会话数据版本号。
+     *
+     * @return 版本号。
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 设置会话数据版本号。
+     *
+     * @param version 版本号。
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * 获取会话的最大不活动时间。
+     *
+     * @return 最大不活动时间（秒）。
+     */
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    /**
+     * 设置会话的最大不活动时间。
+     *
+     * @param maxInactiveInterval 最大不活动时间（秒）。
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+}
@@ -0,0 +1,147 @@
+package com.steven.e2eechat.filter;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.service.AdmissionController;
+import com.steven.e2eechat.service.Bulkhead;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * {@code BulkheadFilter} 按请求类型将请求分配到不同的 {@link Bulkhead}，限制每类请求的并发数。
+ * <ul>
+ *     <li>{@link Bulkhead#AUTH}：{@code /account} 下的 POST 请求（登录、注册、检查用户名）和 {@code /vault} 下的请求。</li>
+ *     <li>{@link Bulkhead#WRITE}：发送消息和创建会话。</li>
+ *     <li>{@link Bulkhead#PRESENCE}：轮询会话列表和读取游标之后的新消息（包括长轮询）。</li>
+ *     <li>{@link Bulkhead#READ}：会话的其他 GET 请求，例如打开会话和读取历史消息。</li>
+ * </ul>
+ * 其他请求（页面、静态资源）不受限制。隔离舱已满时返回 503 并附带 {@code Retry-After}。
+ * <p>
+ * 进入隔离舱之前，先由 {@link AdmissionController} 根据连接池的饱和程度决定是否接受请求：
+ * 会话列表轮询最先被拒绝，其次是历史消息翻页和打开会话，发送消息总是被接受。
+ * 这样低优先级的请求在排队之前就被拒绝，不会在隔离舱或连接池中等待到超时。
+ * 许可在过滤器返回时归还：进入异步处理的请求（例如等待新消息的长轮询）在等待期间不占用线程，
+ * 其数据库访问由 {@link com.steven.e2eechat.dao.DaoExecutor} 的线程数限制，因此不再占用隔离舱的并发数。
+ * 隔离舱配置了连接子池时，请求线程上的 DAO 调用从该子池借出连接。
+ * <p>
+ * 配置项（`db.properties`）：{@code bulkhead.enabled}、{@code bulkhead.retryAfterSeconds}，
+ * 以及 {@link Bulkhead} 和 {@link AdmissionController} 的各项配置。
+ */
+@WebFilter(filterName = "bulkheadFilter", asyncSupported = true, urlPatterns = {"/*"})
+public class BulkheadFilter extends HttpFilter {
+    private boolean enabled;
+    private String retryAfterSeconds;
+    private AdmissionController admissionController;
+
+    /**
+     * 读取配置。
+     *
+     * @param config 过滤器配置。
+     * @throws ServletException 如果初始化失败。
+     */
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        super.init(config);
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("bulkhead.enabled", "true"));
+        this.retryAfterSeconds = DatabaseConfig.getProperty("bulkhead.retryAfterSeconds", "1");
+        this.admissionController = AdmissionController.getInstance();
+    }
+
+    /**
+     * 在请求所属的隔离舱内处理请求，隔离舱已满时拒绝请求。
+     *
+     * @param request  客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param chain    过滤器链。
+     * @throws IOException      如果在处理请求的 I/O 过程中发生错误。
+     * @throws ServletException 如果后续处理过程中发生 Servlet 异常。
+     */
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        AdmissionController.Priority priority = priority(request);
+        int level = admissionController.admit(priority);
+        if (level > 0) {
+            response.setHeader("Retry-After", String.valueOf(admissionController.retryAfterSeconds(level)));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy");
+            return;
+        }
+
+        String name = enabled ? classify(request) : null;
+        if (name == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Bulkhead bulkhead = Bulkhead.get(name);
+        if (!bulkhead.tryEnter()) {
+            response.setHeader("Retry-After", retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy");
+            return;
+        }
+
+        String previousRoute = DatabaseConfig.routeConnections(bulkhead.hasOwnPool() ? name : null);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            DatabaseConfig.routeConnections(previousRoute);
+            bulkhead.leave();
+        }
+    }
+
+    /**
+     * 判断请求所属的隔离舱。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 隔离舱名称，不受限制的请求返回 {@code null}。
+     */
+    static String classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean post = "POST".equals(request.getMethod());
+
+        if (path.startsWith("/account/")) {
+            return post ? Bulkhead.AUTH : null;
+        }
+        if (path.startsWith("/vault")) {
+            return Bulkhead.AUTH;
+        }
+        if (!path.startsWith("/sessions/")) {
+            return null;
+        }
+        if (post) {
+            return Bulkhead.WRITE;
+        }
+        if (path.equals("/sessions/list")
+                || (path.endsWith("/messages") && "after".equals(request.getParameter("direction")))) {
+            return Bulkhead.PRESENCE;
+        }
+        return path.equals("/sessions/") ? null : Bulkhead.READ;
+    }
+
+    /**
+     * 判断请求在连接池饱和时的优先级。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 会话列表轮询为 {@link AdmissionController.Priority#LIST_POLL}，历史消息翻页和打开会话为
+     *         {@link AdmissionController.Priority#HISTORY}，其他请求为 {@link AdmissionController.Priority#CRITICAL}。
+     */
+    static AdmissionController.Priority priority(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return AdmissionController.Priority.CRITICAL;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals("/sessions/list")) {
+            return AdmissionController.Priority.LIST_POLL;
+        }
+        if (path.startsWith("/sessions/") && (path.endsWith("/open")
+                || (path.endsWith("/messages") && !"after".equals(request.getParameter("direction"))))) {
+            return AdmissionController.Priority.HISTORY;
+        }
+        return AdmissionController.Priority.CRITICAL;
+    }
+}
@@ -0,0 +1,98 @@
+package com.steven.e2eechat.filter;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * {@code CompressionFilter} 为文本类响应协商 gzip 压缩。
+ * <p>
+ * 会话列表 HTML、聊天页面和 JSON 消息分页在移动网络下每 3 秒轮询一次，压缩能显著降低流量。
+ * 过滤器只处理客户端声明支持 gzip 的 GET 请求，并跳过以下响应：
+ * <ul>
+ *     <li>小于 {@code compression.minSize} 字节的响应体，压缩收益不足以抵消开销。</li>
+ *     <li>非文本类型（图片、字体、二进制消息等），这些内容已经压缩或本身是密文。</li>
+ *     <li>已设置 {@code Content-Encoding} 的响应。</li>
+ * </ul>
+ * 静态资源由 {@code AssetsController} 发送启动时预压缩的版本，不经过本过滤器。
+ * {@link Deflater} 实例从 {@link DeflaterPool} 中复用，而不是每个响应新建一个。
+ * <p>
+ * 配置项（`db.properties`）：{@code compression.enabled}、{@code compression.minSize}、
+ * {@code compression.level}、{@code compression.poolSize}。
+ */
+@WebFilter(filterName = "compressionFilter", asyncSupported = true, urlPatterns = {"/*"})
+public class CompressionFilter extends HttpFilter {
+    private boolean enabled;
+    private int minSize;
+    private DeflaterPool deflaterPool;
+
+    /**
+     * 读取压缩配置并创建 {@link DeflaterPool}。
+     *
+     * @param config 过滤器配置。
+     * @throws ServletException 如果初始化失败。
+     */
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        super.init(config);
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("compression.enabled", "true"));
+        this.minSize = Integer.parseInt(DatabaseConfig.getProperty("compression.minSize", "1024"));
+        int level = Integer.parseInt(DatabaseConfig.getProperty("compression.level",
+                String.valueOf(Deflater.DEFAULT_COMPRESSION)));
+        int poolSize = Integer.parseInt(DatabaseConfig.getProperty("compression.poolSize", "32"));
+        this.deflaterPool = new DeflaterPool(poolSize, level);
+    }
+
+    /**
+     * 对符合条件的请求包装响应，并在请求处理完成后结束压缩输出；请求处理抛出异常时也会结束输出。
+     * <p>
+     * 仅处理 GET 请求：POST 的响应体都很小，而且发送消息的请求会进入异步处理，
+     * 在过滤器返回后才写出响应。
+     *
+     * @param request  客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param chain    过滤器链。
+     * @throws IOException      如果在处理请求的 I/O 过程中发生错误。
+     * @throws ServletException 如果后续处理过程中发生 Servlet 异常。
+     */
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!enabled || !"GET".equals(request.getMethod()) || !GzipSupport.acceptsGzip(request)
+                || request.getServletPath().startsWith("/assets")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(response, deflaterPool, minSize);
+        boolean completed = false;
+        try {
+            chain.doFilter(request, wrapper);
+            completed = true;
+        } finally {
+            // 后续处理抛出异常时同样要归还 Deflater，并结束已经开始的 gzip 输出
+            if (completed) {
+                wrapper.finish();
+            } else {
+                wrapper.abort();
+            }
+        }
+    }
+
+    /**
+     * 释放 {@link DeflaterPool} 中的原生内存。
+     */
+    @Override
+    public void destroy() {
+        if (deflaterPool != null) {
+            deflaterPool.close();
+        }
+    }
+}
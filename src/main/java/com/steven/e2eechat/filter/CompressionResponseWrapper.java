@@ -0,0 +1,343 @@
+package com.steven.e2eechat.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@code CompressionResponseWrapper} 在响应体达到阈值后将其以 gzip 编码输出。
+ * <p>
+ * 响应体的前 {@code minSize} 字节先缓存在内存中：如果响应在此之前结束，则按原样输出并补上
+ * {@code Content-Length}；否则根据 {@code Content-Type} 决定是否压缩。
+ * 已设置 {@code Content-Encoding} 的响应、错误页和重定向不会被压缩。
+ */
+class CompressionResponseWrapper extends HttpServletResponseWrapper {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final DeflaterPool deflaterPool;
+    private final int minSize;
+    private CompressingOutputStream stream;
+    private PrintWriter writer;
+    private boolean bypass;
+    private long contentLength = -1;
+
+    /**
+     * 创建响应包装器。
+     *
+     * @param response     原始响应。
+     * @param deflaterPool {@link Deflater} 池。
+     * @param minSize      启用压缩的最小响应体大小（字节）。
+     */
+    CompressionResponseWrapper(HttpServletResponse response, DeflaterPool deflaterPool, int minSize) {
+        super(response);
+        this.deflaterPool = deflaterPool;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (stream == null) {
+            stream = new CompressingOutputStream();
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            stream = new CompressingOutputStream();
+            writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (bypass || stream == null || stream.mode == Mode.RAW) {
+            super.setContentLengthLong(len);
+        } else {
+            // 是否压缩尚未确定，先记录下来，决定按原样输出时再设置
+            contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (interceptHeader(name, value)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (interceptHeader(name, value)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        bypass = true;
+        discardBuffer();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        bypass = true;
+        discardBuffer();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        bypass = true;
+        discardBuffer();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        discardBuffer();
+        super.resetBuffer();
+    }
+
+    @Override
+    public void reset() {
+        discardBuffer();
+        contentLength = -1;
+        super.reset();
+    }
+
+    /**
+     * 结束响应体输出：决定尚未确定的压缩方式、写出缓存的数据并写入 gzip 尾部。
+     *
+     * @throws IOException 如果写入响应时发生 I/O 错误。
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.close();
+        } else if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * 请求处理抛出异常时结束响应体输出。
+     * <p>
+     * 已经开始 gzip 输出时写入尾部并归还 {@link Deflater}，客户端收到的是被截断但格式完整的 gzip 流；
+     * 尚未决定压缩方式时丢弃缓存的数据，响应还没有提交，容器仍然可以返回错误页。
+     * 客户端可能已经断开连接，写入时的 I/O 错误被忽略。
+     */
+    void abort() {
+        if (stream == null || stream.mode == Mode.UNDECIDED) {
+            discardBuffer();
+            return;
+        }
+        try {
+            finish();
+        } catch (IOException e) {
+            // 客户端已断开连接，Deflater 已在 close() 中归还
+        }
+    }
+
+    private void discardBuffer() {
+        if (stream != null && stream.mode == Mode.UNDECIDED) {
+            stream.buffer.reset();
+        }
+    }
+
+    private boolean interceptHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            try {
+                setContentLengthLong(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                return true;
+            }
+            return false;
+        }
+        if ("Content-Encoding".equalsIgnoreCase(name)) {
+            // 响应已经编码（例如预压缩的静态资源），不再重复压缩
+            bypass = true;
+        }
+        return true;
+    }
+
+    private enum Mode {
+        UNDECIDED, RAW, GZIP
+    }
+
+    /**
+     * 先缓存、再决定按原样或 gzip 输出的响应输出流。
+     */
+    private class CompressingOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(minSize);
+        private Mode mode = Mode.UNDECIDED;
+        private ServletOutputStream target;
+        private Deflater deflater;
+        private CRC32 crc;
+        private byte[] deflateBuffer;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (mode == Mode.UNDECIDED) {
+                if (buffer.size() + len < minSize) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                decide(true);
+            }
+            writeDecided(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (mode == Mode.UNDECIDED) {
+                decide(buffer.size() >= minSize);
+            }
+            if (mode == Mode.GZIP) {
+                deflate(Deflater.SYNC_FLUSH);
+            }
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (mode == Mode.UNDECIDED) {
+                if (!bypass && contentLength < 0 && buffer.size() < minSize) {
+                    CompressionResponseWrapper.super.setContentLengthLong(buffer.size());
+                }
+                decide(buffer.size() >= minSize);
+            }
+            closed = true;
+            if (mode == Mode.GZIP) {
+                try {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+                        target.write(deflateBuffer, 0, count);
+                    }
+                    writeIntLE((int) crc.getValue());
+                    writeIntLE((int) deflater.getBytesRead());
+                } finally {
+                    deflaterPool.release(deflater);
+                    deflater = null;
+                }
+            }
+            target.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return target == null || target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("Non-blocking writes are not supported by the compression filter");
+        }
+
+        private void decide(boolean largeEnough) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            String contentType = response.getContentType();
+            boolean compressible = !bypass && GzipSupport.isCompressible(contentType);
+            if (compressible) {
+                response.addHeader("Vary", "Accept-Encoding");
+            }
+
+            target = response.getOutputStream();
+            if (compressible && largeEnough && !response.isCommitted()) {
+                mode = Mode.GZIP;
+                response.setHeader("Content-Encoding", "gzip");
+                deflater = deflaterPool.acquire();
+                crc = new CRC32();
+                deflateBuffer = new byte[8192];
+                target.write(GZIP_HEADER);
+            } else {
+                mode = Mode.RAW;
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+            }
+
+            if (buffer.size() > 0) {
+                byte[] buffered = buffer.toByteArray();
+                buffer.reset();
+                writeDecided(buffered, 0, buffered.length);
+            }
+        }
+
+        private void writeDecided(byte[] b, int off, int len) throws IOException {
+            if (mode == Mode.RAW) {
+                target.write(b, off, len);
+                return;
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        private void deflate(int flushMode) throws IOException {
+            int count;
+            do {
+                count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, flushMode);
+                if (count > 0) {
+                    target.write(deflateBuffer, 0, count);
+                }
+            } while (count == deflateBuffer.length);
+        }
+
+        private void writeIntLE(int value) throws IOException {
+            target.write(value & 0xFF);
+            target.write((value >>> 8) & 0xFF);
+            target.write((value >>> 16) & 0xFF);
+            target.write((value >>> 24) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.steven.e2eechat.filter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * {@code DeflaterPool} 复用 {@link Deflater} 实例。
+ * <p>
+ * 每个 {@link Deflater} 持有一段原生内存，频繁创建和依赖 GC 回收会带来明显开销。
+ * 池中的实例使用 raw deflate（{@code nowrap=true}），由调用方自行写入 gzip 头和尾。
+ * 超出容量的实例会被立即 {@link Deflater#end()} 释放。
+ */
+class DeflaterPool {
+    private final Queue<Deflater> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final int level;
+
+    /**
+     * 创建一个 {@link Deflater} 池。
+     *
+     * @param capacity 池中最多保留的实例数。
+     * @param level    压缩级别（0-9）。
+     */
+    DeflaterPool(int capacity, int level) {
+        this.capacity = capacity;
+        this.level = level;
+    }
+
+    /**
+     * 从池中借用一个 {@link Deflater}，池为空时创建新实例。
+     *
+     * @return 已重置的 {@link Deflater}。
+     */
+    Deflater acquire() {
+        Deflater deflater = pool.poll();
+        if (deflater != null) {
+            size.decrementAndGet();
+            return deflater;
+        }
+        return new Deflater(level, true);
+    }
+
+    /**
+     * 将 {@link Deflater} 重置后归还到池中。
+     *
+     * @param deflater 要归还的实例。
+     */
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (size.incrementAndGet() <= capacity) {
+            pool.offer(deflater);
+        } else {
+            size.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * 释放池中所有实例的原生内存。
+     */
+    void close() {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            size.decrementAndGet();
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.steven.e2eechat.filter;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * {@code GzipSupport} 提供 gzip 压缩的协商规则，由 {@link CompressionFilter} 和静态资源的预压缩共用，
+ * 使动态响应和静态资源对同一种内容类型做出相同的判断。
+ */
+public final class GzipSupport {
+    private GzipSupport() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+
+    /**
+     * 检查客户端是否通过 {@code Accept-Encoding} 声明支持 gzip。
+     *
+     * @param request 客户端发送的 {@link HttpServletRequest} 对象。
+     * @return 如果客户端支持 gzip 则返回 {@code true}。
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    /**
+     * 检查内容类型是否值得压缩。图片、字体和二进制消息等已经压缩或本身是密文，不在此列。
+     *
+     * @param contentType 响应的 {@code Content-Type}，可以为 null。
+     * @return 如果是文本类内容则返回 {@code true}。
+     */
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/xml")
+                || contentType.startsWith("image/svg+xml");
+    }
+}
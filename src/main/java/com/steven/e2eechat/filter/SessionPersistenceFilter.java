@@ -0,0 +1,96 @@
+package com.steven.e2eechat.filter;
+
+import com.steven.e2eechat.service.HttpSessionStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code SessionPersistenceFilter} 在请求前后同步容器会话与 {@link HttpSessionStore}。
+ * <p>
+ * 请求到达时，如果客户端携带的 JSESSIONID 在本节点不存在（例如节点重启或请求被路由到其他节点），
+ * 则从数据库恢复会话属性；如果会话已存在，则在近端缓存过期后同步其他节点写入的较新版本。
+ * 请求处理完成后，将会话属性写回数据库。
+ * <p>
+ * 仅在 {@code session.store=jdbc} 时生效，静态资源请求直接放行。
+ */
+@WebFilter(filterName = "sessionPersistenceFilter", asyncSupported = true, urlPatterns = {"/*"})
+public class SessionPersistenceFilter extends HttpFilter {
+    private static final Logger logger = Logger.getLogger(SessionPersistenceFilter.class.getName());
+    private static final String SESSION_COOKIE_NAME = "JSESSIONID";
+
+    private final HttpSessionStore sessionStore = HttpSessionStore.getInstance();
+
+    /**
+     * 恢复或同步会话属性后继续处理请求，并在处理完成后保存会话。
+     * <p>
+     * 会话存储的任何数据库异常都只记录日志，不影响请求本身的处理。
+     *
+     * @param request  客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param chain    过滤器链。
+     * @throws IOException      如果在处理请求的 I/O 过程中发生错误。
+     * @throws ServletException 如果后续处理过程中发生 Servlet 异常。
+     */
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!sessionStore.isEnabled() || request.getServletPath().startsWith("/assets")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            loadSession(request, response);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "恢复持久化会话失败", e);
+        }
+
+        chain.doFilter(request, response);
+
+        try {
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                sessionStore.save(session);
+            }
+        } catch (IllegalStateException e) {
+            // 会话已在请求处理中失效，无需保存
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "保存持久化会话失败", e);
+        }
+    }
+
+    private void loadSession(HttpServletRequest request, HttpServletResponse response) {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            sessionStore.refresh(session);
+            return;
+        }
+
+        String requestedSessionId = request.getRequestedSessionId();
+        if (requestedSessionId == null || !sessionStore.exists(requestedSessionId)) {
+            return;
+        }
+
+        session = request.getSession(true);
+        if (sessionStore.restoreInto(requestedSessionId, session)
+                && !requestedSessionId.equals(session.getId())) {
+            // 容器分配了新的会话ID，按原会话的有效期重新下发 Cookie，保持"信任设备"的持久登录
+            Cookie cookie = new Cookie(SESSION_COOKIE_NAME, session.getId());
+            String contextPath = request.getContextPath();
+            cookie.setPath(contextPath.isEmpty() ? "/" : contextPath);
+            cookie.setMaxAge(session.getMaxInactiveInterval());
+            cookie.setHttpOnly(true);
+            cookie.setAttribute("SameSite", "Strict");
+            response.addCookie(cookie);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.steven.e2eechat.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * {@code Base64BytesAdapter} 将 {@code byte[]} 序列化为标准 Base64 字符串。
+ * <p>
+ * Gson 默认把 {@code byte[]} 写成有符号整数数组，一个字节最多占 5 个字符；
+ * Base64 每 3 个字节只占 4 个字符，并且前端可以直接交给 {@code atob} 解码。
+ */
+public class Base64BytesAdapter extends TypeAdapter<byte[]> {
+
+    /**
+     * 将字节数组写为 Base64 字符串。如果值为 null，则写入 JSON null。
+     *
+     * @param out   JSON 输出流。
+     * @param value 要写入的字节数组。
+     * @throws IOException 如果写入过程中发生 I/O 错误。
+     */
+    @Override
+    public void write(JsonWriter out, byte[] value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(Base64.getEncoder().encodeToString(value));
+        }
+    }
+
+    /**
+     * 从 Base64 字符串读取字节数组。如果遇到 JSON null，则返回 null。
+     *
+     * @param in JSON 输入流。
+     * @return 解码后的字节数组，如果为 null 则返回 null。
+     * @throws IOException 如果读取过程中发生 I/O 错误。
+     * @throws IllegalArgumentException 如果字符串不是合法的 Base64 编码。
+     */
+    @Override
+    public byte[] read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return Base64.getDecoder().decode(in.nextString());
+    }
+}
@@ -0,0 +1,138 @@
+package com.steven.e2eechat.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.steven.e2eechat.model.ChatMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * {@code ChatMessageAdapter} 是 {@link ChatMessage} 的手写流式适配器，不使用反射。
+ * <p>
+ * 字段名与 Gson 反射序列化时保持一致，值为 {@code null} 的字段会被省略，因此输出与原有格式兼容。
+ * 时间戳通过 {@link OffsetDateTimeAdapter} 以定长 UTC 字符串写出。
+ * 消息密文和 IV 根据构造参数写为 Base64 字符串，或旧格式的有符号整数数组；读取时两种格式都接受。
+ */
+public class ChatMessageAdapter extends TypeAdapter<ChatMessage> {
+    private final boolean base64Bytes;
+
+    /**
+     * 创建适配器。
+     *
+     * @param base64Bytes 为 {@code true} 时将 {@code byte[]} 字段写为 Base64 字符串，否则写为整数数组。
+     */
+    public ChatMessageAdapter(boolean base64Bytes) {
+        this.base64Bytes = base64Bytes;
+    }
+
+    /**
+     * 将 {@link ChatMessage} 写入 JSON 输出流。如果值为 null，则写入 JSON null。
+     *
+     * @param out     JSON 输出流。
+     * @param message 要写入的消息。
+     * @throws IOException 如果写入过程中发生 I/O 错误。
+     */
+    @Override
+    public void write(JsonWriter out, ChatMessage message) throws IOException {
+        if (message == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeUuid(out.name("messageId"), message.getMessageId());
+        writeUuid(out.name("sessionId"), message.getSessionId());
+        out.name("cursor").value(message.getCursor());
+        writeUuid(out.name("senderId"), message.getSenderId());
+        writeUuid(out.name("receiverId"), message.getReceiverId());
+        out.name("isSystem").value(message.isSystem());
+        out.name("isRead").value(message.isRead());
+        writeBytes(out.name("messageIv"), message.getMessageIv());
+        writeBytes(out.name("messageContent"), message.getMessageContent());
+        out.name("sentAt");
+        if (message.getSentAt() == null) {
+            out.nullValue();
+        } else {
+            out.value(OffsetDateTimeAdapter.format(message.getSentAt()));
+        }
+        out.endObject();
+    }
+
+    /**
+     * 从 JSON 输入流读取 {@link ChatMessage}。未知字段会被跳过。
+     *
+     * @param in JSON 输入流。
+     * @return 读取到的消息，如果为 null 则返回 null。
+     * @throws IOException 如果读取过程中发生 I/O 错误或 JSON 格式不正确。
+     */
+    @Override
+    public ChatMessage read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ChatMessage message = new ChatMessage();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "messageId" -> message.setMessageId(UUID.fromString(in.nextString()));
+                case "sessionId" -> message.setSessionId(UUID.fromString(in.nextString()));
+                case "cursor" -> message.setCursor(in.nextLong());
+                case "senderId" -> message.setSenderId(UUID.fromString(in.nextString()));
+                case "receiverId" -> message.setReceiverId(UUID.fromString(in.nextString()));
+                case "isSystem" -> message.setSystem(in.nextBoolean());
+                case "isRead" -> message.setRead(in.nextBoolean());
+                case "messageIv" -> message.setMessageIv(readBytes(in));
+                case "messageContent" -> message.setMessageContent(readBytes(in));
+                case "sentAt" -> message.setSentAt(OffsetDateTimeAdapter.parse(in.nextString()));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return message;
+    }
+
+    private void writeBytes(JsonWriter out, byte[] value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (base64Bytes) {
+            out.value(Base64.getEncoder().encodeToString(value));
+        } else {
+            out.beginArray();
+            for (byte b : value) {
+                out.value(b);
+            }
+            out.endArray();
+        }
+    }
+
+    private static byte[] readBytes(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return Base64.getDecoder().decode(in.nextString());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.beginArray();
+        while (in.hasNext()) {
+            bytes.write(in.nextInt());
+        }
+        in.endArray();
+        return bytes.toByteArray();
+    }
+
+    static void writeUuid(JsonWriter out, UUID value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.toString());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.steven.e2eechat.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.steven.e2eechat.model.ChatSession;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * {@code ChatSessionAdapter} 是 {@link ChatSession} 的手写流式适配器，不使用反射。
+ * <p>
+ * {@link java.util.Optional} 字段在值存在时写出其内容，为空时省略该字段，读取时缺失的字段保持为空。
+ */
+public class ChatSessionAdapter extends TypeAdapter<ChatSession> {
+
+    /**
+     * 将 {@link ChatSession} 写入 JSON 输出流。如果值为 null，则写入 JSON null。
+     *
+     * @param out     JSON 输出流。
+     * @param session 要写入的会话。
+     * @throws IOException 如果写入过程中发生 I/O 错误。
+     */
+    @Override
+    public void write(JsonWriter out, ChatSession session) throws IOException {
+        if (session == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        ChatMessageAdapter.writeUuid(out.name("sessionId"), session.getSessionId());
+        ChatMessageAdapter.writeUuid(out.name("initiatorId"), session.getInitiatorId());
+        ChatMessageAdapter.writeUuid(out.name("participantId"), session.getParticipantId());
+        out.name("createdAt");
+        if (session.getCreatedAt() == null) {
+            out.nullValue();
+        } else {
+            out.value(OffsetDateTimeAdapter.format(session.getCreatedAt()));
+        }
+        out.name("messageCounter").value(session.getMessageCounter());
+        if (session.getLastMessageId().isPresent()) {
+            out.name("lastMessageId").value(session.getLastMessageId().get().toString());
+        }
+        if (session.getLastMessageAt().isPresent()) {
+            out.name("lastMessageAt").value(OffsetDateTimeAdapter.format(session.getLastMessageAt().get()));
+        }
+        out.endObject();
+    }
+
+    /**
+     * 从 JSON 输入流读取 {@link ChatSession}。未知字段会被跳过。
+     *
+     * @param in JSON 输入流。
+     * @return 读取到的会话，如果为 null 则返回 null。
+     * @throws IOException 如果读取过程中发生 I/O 错误或 JSON 格式不正确。
+     */
+    @Override
+    public ChatSession read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ChatSession session = new ChatSession();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "sessionId" -> session.setSessionId(UUID.fromString(in.nextString()));
+                case "initiatorId" -> session.setInitiatorId(UUID.fromString(in.nextString()));
+                case "participantId" -> session.setParticipantId(UUID.fromString(in.nextString()));
+                case "createdAt" -> session.setCreatedAt(OffsetDateTimeAdapter.parse(in.nextString()));
+                case "messageCounter" -> session.setMessageCounter(in.nextLong());
+                case "lastMessageId" -> session.setLastMessageId(UUID.fromString(in.nextString()));
+                case "lastMessageAt" -> session.setLastMessageAt(OffsetDateTimeAdapter.parse(in.nextString()));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return session;
+    }
+}
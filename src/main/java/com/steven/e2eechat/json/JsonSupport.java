@@ -0,0 +1,50 @@
+package com.steven.e2eechat.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.steven.e2eechat.model.ChatMessage;
+import com.steven.e2eechat.model.ChatSession;
+
+import java.time.OffsetDateTime;
+
+/**
+ * {@code JsonSupport} 提供全应用共享的 {@link Gson} 实例。
+ * <p>
+ * {@link Gson} 是线程安全的，且创建时需要构建适配器缓存，因此不应在每个控制器中各自创建。
+ * 模型类 {@link ChatMessage} 和 {@link ChatSession} 使用手写的流式适配器，序列化时不经过反射。
+ */
+public final class JsonSupport {
+    private static final Gson GSON = builder(false).create();
+    private static final Gson BASE64_GSON = builder(true)
+            .registerTypeAdapter(byte[].class, new Base64BytesAdapter())
+            .create();
+
+    /**
+     * 获取默认的 {@link Gson} 实例，{@code byte[]} 字段写为有符号整数数组。
+     *
+     * @return 共享的 {@link Gson} 实例。
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * 获取将 {@code byte[]} 字段写为 Base64 字符串的 {@link Gson} 实例。
+     *
+     * @return 共享的 {@link Gson} 实例。
+     */
+    public static Gson base64Gson() {
+        return BASE64_GSON;
+    }
+
+    private static GsonBuilder builder(boolean base64Bytes) {
+        return new GsonBuilder()
+                .registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeAdapter())
+                .registerTypeAdapter(ChatMessage.class, new ChatMessageAdapter(base64Bytes))
+                .registerTypeAdapter(ChatSession.class, new ChatSessionAdapter());
+    }
+
+    private JsonSupport() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
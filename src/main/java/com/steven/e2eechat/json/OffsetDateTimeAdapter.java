@@ -0,0 +1,142 @@
+package com.steven.e2eechat.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * {@code OffsetDateTimeAdapter} 将 {@link OffsetDateTime} 序列化为定长的 UTC ISO-8601 字符串。
+ * <p>
+ * 输出格式固定为 {@code yyyy-MM-ddTHH:mm:ss.SSSSSSZ}（微秒精度，与 PostgreSQL 的 {@code timestamptz} 一致），
+ * 直接按字段写入字符数组，不经过 {@link java.time.format.DateTimeFormatter}。
+ * 读取时优先按同一定长格式解析，其他合法的 ISO-8601 字符串退回到 {@link OffsetDateTime#parse(CharSequence)}。
+ */
+public class OffsetDateTimeAdapter extends TypeAdapter<OffsetDateTime> {
+    private static final int FORMATTED_LENGTH = 27;
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * 将 {@link OffsetDateTime} 对象写入 JSON 输出流。如果值为 null，则写入 JSON null。
+     *
+     * @param out   JSON 输出流。
+     * @param value 要写入的 {@link OffsetDateTime} 对象。
+     * @throws IOException 如果写入过程中发生 I/O 错误。
+     */
+    @Override
+    public void write(JsonWriter out, OffsetDateTime value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(format(value));
+        }
+    }
+
+    /**
+     * 从 JSON 输入流中读取 {@link OffsetDateTime} 对象。如果遇到 JSON null，则返回 null。
+     *
+     * @param in JSON 输入流。
+     * @return 从输入流中读取的 {@link OffsetDateTime} 对象，如果为 null 则返回 null。
+     * @throws IOException 如果读取过程中发生 I/O 错误或 JSON 格式不正确。
+     */
+    @Override
+    public OffsetDateTime read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return parse(in.nextString());
+    }
+
+    /**
+     * 将时间戳格式化为定长的 UTC 字符串。
+     *
+     * @param value 时间戳。
+     * @return 形如 {@code 2024-12-29T08:30:00.123456Z} 的字符串。
+     */
+    public static String format(OffsetDateTime value) {
+        Instant instant = value.toInstant();
+        long epochSecond = instant.getEpochSecond();
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return value.withOffsetSameInstant(ZoneOffset.UTC).toString();
+        }
+
+        char[] chars = new char[FORMATTED_LENGTH];
+        writeDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, date.getDayOfMonth(), 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, secondOfDay % 60, 2);
+        chars[19] = '.';
+        writeDigits(chars, 20, instant.getNano() / 1000, 6);
+        chars[26] = 'Z';
+        return new String(chars);
+    }
+
+    /**
+     * 解析 ISO-8601 格式的时间戳。
+     *
+     * @param text 时间戳字符串。
+     * @return 解析得到的 {@link OffsetDateTime}；定长格式解析为 UTC 偏移。
+     * @throws java.time.format.DateTimeParseException 如果字符串不是合法的 ISO-8601 时间戳。
+     */
+    public static OffsetDateTime parse(String text) {
+        if (text.length() == FORMATTED_LENGTH && text.charAt(4) == '-' && text.charAt(7) == '-'
+                && text.charAt(10) == 'T' && text.charAt(13) == ':' && text.charAt(16) == ':'
+                && text.charAt(19) == '.' && text.charAt(26) == 'Z') {
+            int year = readDigits(text, 0, 4);
+            int month = readDigits(text, 5, 2);
+            int day = readDigits(text, 8, 2);
+            int hour = readDigits(text, 11, 2);
+            int minute = readDigits(text, 14, 2);
+            int second = readDigits(text, 17, 2);
+            int micros = readDigits(text, 20, 6);
+            if ((year | month | day | hour | minute | second | micros) >= 0
+                    && month >= 1 && month <= 12 && day >= 1 && day <= 31
+                    && hour < 24 && minute < 60 && second < 60) {
+                long epochSecond = LocalDate.of(year, month, day).toEpochDay() * SECONDS_PER_DAY
+                        + hour * 3600L + minute * 60L + second;
+                return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, micros * 1000L), ZoneOffset.UTC);
+            }
+        }
+        return OffsetDateTime.parse(text);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * 读取定宽的十进制数字，遇到非数字字符时返回 -1。
+     */
+    private static int readDigits(String text, int offset, int width) {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
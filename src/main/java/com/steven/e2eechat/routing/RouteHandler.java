@@ -0,0 +1,25 @@
+package com.steven.e2eechat.routing;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * {@code RouteHandler} 是注册到 {@link Router} 的请求处理器。
+ */
+@FunctionalInterface
+public interface RouteHandler {
+    /**
+     * 处理匹配到的请求。
+     *
+     * @param request  客户端发送的 {@link HttpServletRequest} 对象。
+     * @param response 服务器发送的 {@link HttpServletResponse} 对象。
+     * @param match    路由匹配结果，包含解析好的路径参数。
+     * @throws ServletException 如果在处理请求时发生 Servlet 异常。
+     * @throws IOException      如果在处理请求的 I/O 过程中发生错误。
+     */
+    void handle(HttpServletRequest request, HttpServletResponse response, Router.Match<RouteHandler> match)
+            throws ServletException, IOException;
+}
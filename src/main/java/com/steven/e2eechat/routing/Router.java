@@ -0,0 +1,255 @@
+package com.steven.e2eechat.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@code Router} 将 Servlet 的 {@code pathInfo} 分派到预先注册的处理器。
+ * <p>
+ * 路由模板在构建时编译为类型化的路径段：
+ * <ul>
+ *     <li>字面量段，例如 {@code /list}、{@code /messages}，按字符比较，不截取子串。</li>
+ *     <li>{@code {uuid}} 段，通过 {@link UuidParser} 直接从原路径中解析，解析结果按顺序作为路由参数。</li>
+ *     <li>{@code *} 段，匹配任意非空路径段，用于为格式错误的请求注册专门的处理器。</li>
+ * </ul>
+ * 请求路径只扫描一次以确定各段的边界，随后在同一 HTTP 方法、相同段数的路由中按注册顺序查找第一个匹配项。
+ * 路径 {@code null} 和 {@code /} 都视为零段的根路径。
+ *
+ * @param <H> 处理器类型，通常是控制器中定义的函数式接口。
+ */
+public final class Router<H> {
+    private static final int MAX_SEGMENTS = 8;
+    private static final UUID[] NO_PARAMETERS = new UUID[0];
+
+    /**
+     * 每个 HTTP 方法对应一张按段数索引的路由表。
+     */
+    private final Map<String, List<Route<H>>[]> tables;
+
+    /**
+     * 路由匹配结果。
+     *
+     * @param handler    匹配到的处理器。
+     * @param parameters 按顺序排列的 {@code {uuid}} 参数。
+     * @param <H>        处理器类型。
+     */
+    public record Match<H>(H handler, UUID[] parameters) {
+        /**
+         * 获取第 {@code index} 个 UUID 参数。
+         *
+         * @param index 参数序号，从 0 开始。
+         * @return UUID 参数。
+         */
+        public UUID uuid(int index) {
+            return parameters[index];
+        }
+    }
+
+    private enum SegmentType {
+        LITERAL, UUID_PARAMETER, WILDCARD
+    }
+
+    private record Segment(SegmentType type, String literal) {
+    }
+
+    private record Route<H>(Segment[] segments, int parameterCount, H handler) {
+    }
+
+    private Router(Map<String, List<Route<H>>[]> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * 创建路由构建器。
+     *
+     * @param <H> 处理器类型。
+     * @return 新的 {@link Builder}。
+     */
+    public static <H> Builder<H> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 查找与请求方法和路径匹配的路由。
+     *
+     * @param method   HTTP 方法，例如 {@code GET}。
+     * @param pathInfo 请求的 {@code pathInfo}，可以为 {@code null}。
+     * @return 匹配结果；没有匹配的路由时返回 {@code null}。
+     */
+    public Match<H> match(String method, String pathInfo) {
+        List<Route<H>>[] table = tables.get(method);
+        if (table == null) {
+            return null;
+        }
+
+        String path = pathInfo == null ? "" : pathInfo;
+        // 记录每个路径段的起止位置：starts[i] 为段首字符，ends[i] 为段尾后一个位置
+        int[] starts = new int[MAX_SEGMENTS];
+        int[] ends = new int[MAX_SEGMENTS];
+        int count = 0;
+        int length = path.length();
+        int position = 0;
+        while (position < length) {
+            if (path.charAt(position) != '/') {
+                return null;
+            }
+            int start = position + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end == start) {
+                // 只允许根路径 "/"，其他空路径段（例如 "//" 或结尾的 "/"）不匹配
+                if (end == length && count == 0) {
+                    break;
+                }
+                return null;
+            }
+            if (count == MAX_SEGMENTS) {
+                return null;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            position = end;
+        }
+
+        if (count >= table.length || table[count] == null) {
+            return null;
+        }
+        for (Route<H> route : table[count]) {
+            UUID[] parameters = matchRoute(route, path, starts, ends);
+            if (parameters != null) {
+                return new Match<>(route.handler(), parameters);
+            }
+        }
+        return null;
+    }
+
+    private UUID[] matchRoute(Route<H> route, String path, int[] starts, int[] ends) {
+        Segment[] segments = route.segments();
+        UUID[] parameters = route.parameterCount() == 0 ? NO_PARAMETERS : new UUID[route.parameterCount()];
+        int parameterIndex = 0;
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+            int start = starts[i];
+            int segmentLength = ends[i] - start;
+            switch (segment.type()) {
+                case LITERAL -> {
+                    String literal = segment.literal();
+                    if (segmentLength != literal.length() || !path.regionMatches(start, literal, 0, segmentLength)) {
+                        return null;
+                    }
+                }
+                case UUID_PARAMETER -> {
+                    UUID value = UuidParser.parse(path, start, ends[i]);
+                    if (value == null) {
+                        return null;
+                    }
+                    parameters[parameterIndex++] = value;
+                }
+                case WILDCARD -> {
+                    // 任意非空路径段，边界扫描时已保证非空
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * {@link Router} 的构建器，按注册顺序记录路由。
+     *
+     * @param <H> 处理器类型。
+     */
+    public static final class Builder<H> {
+        private final Map<String, List<Route<H>>> routes = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 注册 GET 路由。
+         *
+         * @param template 路由模板，例如 {@code /{uuid}/messages}。
+         * @param handler  处理器。
+         * @return 当前构建器。
+         */
+        public Builder<H> get(String template, H handler) {
+            return route("GET", template, handler);
+        }
+
+        /**
+         * 注册 POST 路由。
+         *
+         * @param template 路由模板，例如 {@code /{uuid}/messages}。
+         * @param handler  处理器。
+         * @return 当前构建器。
+         */
+        public Builder<H> post(String template, H handler) {
+            return route("POST", template, handler);
+        }
+
+        /**
+         * 注册指定 HTTP 方法的路由。
+         *
+         * @param method   HTTP 方法。
+         * @param template 路由模板，必须以 {@code /} 开头；{@code /} 表示根路径。
+         * @param handler  处理器。
+         * @return 当前构建器。
+         * @throws IllegalArgumentException 如果路由模板格式不正确。
+         */
+        public Builder<H> route(String method, String template, H handler) {
+            if (!template.startsWith("/")) {
+                throw new IllegalArgumentException("路由模板必须以 / 开头: " + template);
+            }
+            List<Segment> segments = new ArrayList<>();
+            int parameterCount = 0;
+            if (!template.equals("/")) {
+                for (String part : template.substring(1).split("/", -1)) {
+                    if (part.isEmpty()) {
+                        throw new IllegalArgumentException("路由模板包含空路径段: " + template);
+                    }
+                    if (part.equals("{uuid}")) {
+                        segments.add(new Segment(SegmentType.UUID_PARAMETER, null));
+                        parameterCount++;
+                    } else if (part.equals("*")) {
+                        segments.add(new Segment(SegmentType.WILDCARD, null));
+                    } else {
+                        segments.add(new Segment(SegmentType.LITERAL, part));
+                    }
+                }
+            }
+            if (segments.size() > MAX_SEGMENTS) {
+                throw new IllegalArgumentException("路由模板路径段过多: " + template);
+            }
+            routes.computeIfAbsent(method, m -> new ArrayList<>())
+                    .add(new Route<>(segments.toArray(new Segment[0]), parameterCount, handler));
+            return this;
+        }
+
+        /**
+         * 构建不可变的 {@link Router}。
+         *
+         * @return 新的 {@link Router}。
+         */
+        @SuppressWarnings("unchecked")
+        public Router<H> build() {
+            Map<String, List<Route<H>>[]> tables = new HashMap<>();
+            for (Map.Entry<String, List<Route<H>>> entry : routes.entrySet()) {
+                List<Route<H>>[] table = (List<Route<H>>[]) new List<?>[MAX_SEGMENTS + 1];
+                for (Route<H> route : entry.getValue()) {
+                    int count = route.segments().length;
+                    if (table[count] == null) {
+                        table[count] = new ArrayList<>();
+                    }
+                    table[count].add(route);
+                }
+                tables.put(entry.getKey(), table);
+            }
+            return new Router<>(Map.copyOf(tables));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.steven.e2eechat.routing;
+
+import java.util.UUID;
+
+/**
+ * {@code UuidParser} 直接从路径字符串的指定区间解析 UUID。
+ * <p>
+ * 与先用正则表达式校验、再截取子串调用 {@link UUID#fromString(String)} 相比，
+ * 这里一次遍历同时完成格式校验和数值解析，除了结果 {@link UUID} 外不分配任何对象。
+ * 只接受标准的 8-4-4-4-12 十六进制格式，大小写均可。
+ */
+public final class UuidParser {
+    private static final int UUID_LENGTH = 36;
+
+    /**
+     * 解析区间 {@code [start, end)} 内的 UUID。
+     *
+     * @param text  包含 UUID 的字符序列。
+     * @param start 起始位置（包含）。
+     * @param end   结束位置（不包含）。
+     * @return 解析得到的 {@link UUID}，格式不正确时返回 {@code null}。
+     */
+    public static UUID parse(CharSequence text, int start, int end) {
+        if (end - start != UUID_LENGTH) {
+            return null;
+        }
+        long mostSigBits = 0;
+        long leastSigBits = 0;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = text.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int digit = hexValue(c);
+            if (digit < 0) {
+                return null;
+            }
+            if (i < 18) {
+                mostSigBits = (mostSigBits << 4) | digit;
+            } else {
+                leastSigBits = (leastSigBits << 4) | digit;
+            }
+        }
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * 解析完整字符串形式的 UUID。
+     *
+     * @param text UUID 字符串，可以为 {@code null}。
+     * @return 解析得到的 {@link UUID}，格式不正确时返回 {@code null}。
+     */
+    public static UUID parse(String text) {
+        return text == null ? null : parse(text, 0, text.length());
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private UuidParser() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
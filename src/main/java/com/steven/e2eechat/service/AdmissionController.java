@@ -0,0 +1,139 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code AdmissionController} 在连接池饱和时提前拒绝低优先级的请求，让连接留给发送消息等重要请求。
+ * <p>
+ * 连接池饱和后，请求会在 {@code getConnection()} 上一直排队，直到 {@code db.connectionTimeout} 超时后
+ * 才由 DAO 抛出异常，所有请求的延迟一起陡增。本类根据 {@link DatabaseConfig#getThreadsAwaitingConnection()}
+ * 和 {@link DatabaseConfig#getRecentConnectionWaitMillis()} 计算当前的负载等级：
+ * <ul>
+ *     <li>等级 1：等待线程数或等待时间超过 {@code admission.pollQueueDepth}、{@code admission.pollWaitMillis}，
+ *     拒绝会话列表的轮询（{@link Priority#LIST_POLL}）。</li>
+ *     <li>等级 2：超过 {@code admission.historyQueueDepth}、{@code admission.historyWaitMillis}，
+ *     同时拒绝历史消息的翻页和打开会话（{@link Priority#HISTORY}）。</li>
+ * </ul>
+ * 发送消息、登录和读取新消息（{@link Priority#CRITICAL}）总是被接受。被拒绝的请求由调用方返回 503，
+ * 客户端在 {@link #retryAfterSeconds(int)} 秒后重试。各优先级被拒绝的次数由 {@link StatsReporter} 定期写入日志。
+ * <p>
+ * 配置项（`db.properties`）：{@code admission.enabled}、{@code admission.retryAfterSeconds}，以及上述阈值。
+ */
+public class AdmissionController {
+    private static final AdmissionController INSTANCE = new AdmissionController();
+
+    private final boolean enabled;
+    private final int pollQueueDepth;
+    private final double pollWaitMillis;
+    private final int historyQueueDepth;
+    private final double historyWaitMillis;
+    private final int retryAfterSeconds;
+    private final Map<Priority, LongAdder> shed = new ConcurrentHashMap<>();
+
+    /**
+     * 请求的优先级，{@code shedLevel} 为开始拒绝该类请求的负载等级。
+     */
+    public enum Priority {
+        /**
+         * 发送消息、登录、读取新消息等，从不拒绝。
+         */
+        CRITICAL(Integer.MAX_VALUE),
+        /**
+         * 翻阅历史消息和打开会话。
+         */
+        HISTORY(2),
+        /**
+         * 会话列表的轮询，最先被拒绝。
+         */
+        LIST_POLL(1);
+
+        private final int shedLevel;
+
+        Priority(int shedLevel) {
+            this.shedLevel = shedLevel;
+        }
+    }
+
+    private AdmissionController() {
+        String poolSize = DatabaseConfig.getProperty("db.poolSize", "10");
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("admission.enabled", "true"));
+        this.pollQueueDepth = Integer.parseInt(DatabaseConfig.getProperty("admission.pollQueueDepth", poolSize));
+        this.pollWaitMillis = Double.parseDouble(DatabaseConfig.getProperty("admission.pollWaitMillis", "200"));
+        this.historyQueueDepth = Integer.parseInt(DatabaseConfig.getProperty("admission.historyQueueDepth",
+                String.valueOf(Integer.parseInt(poolSize) * 4)));
+        this.historyWaitMillis = Double.parseDouble(DatabaseConfig.getProperty("admission.historyWaitMillis", "1000"));
+        this.retryAfterSeconds = Integer.parseInt(DatabaseConfig.getProperty("admission.retryAfterSeconds", "2"));
+    }
+
+    /**
+     * 获取 {@code AdmissionController} 的单例实例。
+     *
+     * @return {@code AdmissionController} 实例。
+     */
+    public static AdmissionController getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 计算当前的负载等级。
+     *
+     * @return 0 表示正常，1 表示开始拒绝会话列表轮询，2 表示同时拒绝历史消息翻页；未启用时总是返回 0。
+     */
+    public int loadLevel() {
+        if (!enabled) {
+            return 0;
+        }
+        int waiting = DatabaseConfig.getThreadsAwaitingConnection();
+        double waitMillis = DatabaseConfig.getRecentConnectionWaitMillis();
+        if (waiting >= historyQueueDepth || waitMillis >= historyWaitMillis) {
+            return 2;
+        }
+        if (waiting >= pollQueueDepth || waitMillis >= pollWaitMillis) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 判断是否接受一个请求。
+     *
+     * @param priority 请求的优先级。
+     * @return 如果接受则返回 0；否则返回当前负载等级，用于 {@link #retryAfterSeconds(int)}。
+     */
+    public int admit(Priority priority) {
+        if (priority == Priority.CRITICAL) {
+            return 0;
+        }
+        int level = loadLevel();
+        if (level < priority.shedLevel) {
+            return 0;
+        }
+        shed.computeIfAbsent(priority, p -> new LongAdder()).increment();
+        return level;
+    }
+
+    /**
+     * 计算被拒绝的请求建议的重试间隔，负载越高间隔越长。
+     *
+     * @param level {@link #admit(Priority)} 返回的负载等级。
+     * @return 重试间隔（秒）。
+     */
+    public int retryAfterSeconds(int level) {
+        return retryAfterSeconds * level;
+    }
+
+    /**
+     * 获取启动以来各优先级被拒绝的请求数。
+     *
+     * @param priority 请求的优先级。
+     * @return 被拒绝的请求数。
+     */
+    public long shedCount(Priority priority) {
+        LongAdder count = shed.get(priority);
+        return count != null ? count.sum() : 0;
+    }
+}
@@ -0,0 +1,356 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.filter.GzipSupport;
+import jakarta.servlet.ServletContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code AssetIndex} 在启动时为 `assets` 目录建立静态资源索引。
+ * <p>
+ * 每个文件在索引中记录其 MIME 类型、大小、最后修改时间和基于 SHA-256 的强 ETag。
+ * 不超过 {@code assets.maxCachedSize} 字节的文件内容常驻内存，文本类文件还会预先计算一份 gzip 版本，
+ * 这样 {@code AssetsController} 处理请求时既不需要访问文件系统，也不需要实时压缩。
+ * <p>
+ * 索引同时作为运行时资源清单：每个文件还可以通过在文件名中嵌入内容哈希的版本化路径访问，
+ * 例如 {@code css/dist/chat.css} 对应 {@code css/dist/chat.3f2a1b9c0d4e.css}。
+ * 文件内容变化后版本化路径随之变化，因此版本化路径可以被浏览器永久缓存。
+ * <p>
+ * 开发模式（{@code assets.devMode=true}）下会监听目录变化，并在文件修改后重建索引。
+ */
+public class AssetIndex {
+    private static final Logger logger = Logger.getLogger(AssetIndex.class.getName());
+
+    private static final int MIN_GZIP_SIZE = 256;
+    private static final int VERSION_HASH_LENGTH = 12;
+    private static final long WATCH_DEBOUNCE_MILLIS = 200;
+
+    private static final AssetIndex INSTANCE = new AssetIndex();
+
+    private final long maxCachedSize;
+    private final boolean devMode;
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of());
+    private Path root;
+    private ServletContext servletContext;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * 静态资源索引条目。
+     *
+     * @param file          文件在磁盘上的路径。
+     * @param versionedPath 在文件名中嵌入内容哈希的相对路径。
+     * @param contentType   MIME 类型，未知时为 {@code null}。
+     * @param length        文件大小（字节）。
+     * @param lastModified  最后修改时间（毫秒）。
+     * @param hash          文件内容 SHA-256 的十六进制前缀。
+     * @param content       常驻内存的文件内容，文件超过缓存上限时为 {@code null}。
+     * @param gzipContent   预压缩的 gzip 内容，不可压缩或压缩收益不足时为 {@code null}。
+     */
+    public record Asset(Path file, String versionedPath, String contentType, long length, long lastModified,
+                        String hash, byte[] content, byte[] gzipContent) {
+        /**
+         * 原始内容的强 ETag。
+         *
+         * @return 带引号的 ETag。
+         */
+        public String etag() {
+            return "\"" + hash + "\"";
+        }
+
+        /**
+         * gzip 内容的强 ETag。
+         * <p>
+         * 不同编码的表示必须使用不同的强 ETag。
+         *
+         * @return 带引号的 ETag。
+         */
+        public String gzipEtag() {
+            return "\"" + hash + "-gz\"";
+        }
+    }
+
+    /**
+     * 某一时刻的完整索引，重建时整体替换。
+     *
+     * @param byPath          以相对路径为键的资源。
+     * @param byVersionedPath 以版本化相对路径为键的资源。
+     */
+    private record Snapshot(Map<String, Asset> byPath, Map<String, Asset> byVersionedPath) {
+    }
+
+    private AssetIndex() {
+        this.maxCachedSize = Long.parseLong(DatabaseConfig.getProperty("assets.maxCachedSize", "262144"));
+        this.devMode = Boolean.parseBoolean(DatabaseConfig.getProperty("assets.devMode", "false"));
+    }
+
+    /**
+     * 获取 {@code AssetIndex} 的单例实例。
+     *
+     * @return {@code AssetIndex} 实例。
+     */
+    public static AssetIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 扫描 `assets` 目录建立索引，开发模式下同时启动目录监听。
+     *
+     * @param servletContext 用于解析 Web 应用目录和 MIME 类型的 {@link ServletContext}。
+     */
+    public synchronized void start(ServletContext servletContext) {
+        String realPath = servletContext.getRealPath("/assets");
+        if (realPath == null) {
+            logger.warning("无法解析 assets 目录的真实路径，静态资源索引为空");
+            return;
+        }
+        this.servletContext = servletContext;
+        this.root = Path.of(realPath).toAbsolutePath().normalize();
+        rebuild();
+
+        if (devMode) {
+            startWatcher();
+        }
+    }
+
+    /**
+     * 停止目录监听。
+     */
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "关闭静态资源目录监听失败", e);
+            }
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+    }
+
+    /**
+     * 根据请求路径查找静态资源。
+     * <p>
+     * 只有索引中存在的路径才会被返回，因此不会访问 `assets` 目录之外的文件。
+     *
+     * @param path 相对于 `/assets` 的路径，例如 {@code /css/dist/chat.css}。
+     * @return 对应的 {@link Asset}，不存在时返回 {@code null}。
+     */
+    public Asset lookup(String path) {
+        if (path == null) {
+            return null;
+        }
+        return snapshot.byPath().get(stripLeadingSlash(path));
+    }
+
+    /**
+     * 根据版本化路径查找静态资源。
+     *
+     * @param path 相对于 `/assets` 的版本化路径，例如 {@code /css/dist/chat.3f2a1b9c0d4e.css}。
+     * @return 对应的 {@link Asset}，不存在或哈希与当前内容不一致时返回 {@code null}。
+     */
+    public Asset lookupVersioned(String path) {
+        if (path == null) {
+            return null;
+        }
+        return snapshot.byVersionedPath().get(stripLeadingSlash(path));
+    }
+
+    /**
+     * 将资源的逻辑路径解析为版本化 URL。
+     * <p>
+     * 资源不在索引中时原样返回逻辑路径，页面仍然可以通过不带哈希的地址加载资源。
+     *
+     * @param path 相对于 `/assets` 的逻辑路径，例如 {@code css/dist/chat.css}。
+     * @return 以 {@code /assets/} 开头、不含上下文路径的 URL。
+     */
+    public String resolve(String path) {
+        String key = stripLeadingSlash(path);
+        Asset asset = snapshot.byPath().get(key);
+        return "/assets/" + (asset != null ? asset.versionedPath() : key);
+    }
+
+    /**
+     * 获取当前索引中的全部资源。
+     *
+     * @return 以相对路径为键的不可变映射。
+     */
+    public Map<String, Asset> getAssets() {
+        return snapshot.byPath();
+    }
+
+    private synchronized void rebuild() {
+        Map<String, Asset> index = new HashMap<>();
+        Map<String, Asset> versioned = new HashMap<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                try {
+                    String key = root.relativize(file).toString().replace('\\', '/');
+                    Asset asset = load(file, key);
+                    index.put(key, asset);
+                    versioned.put(asset.versionedPath(), asset);
+                } catch (IOException e) {
+                    // 记录日志，方便调试
+                    logger.log(Level.WARNING, "读取静态资源失败: " + file, e);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "扫描 assets 目录失败", e);
+            return;
+        }
+        this.snapshot = new Snapshot(Map.copyOf(index), Map.copyOf(versioned));
+        logger.info("静态资源索引已建立，共 " + index.size() + " 个文件");
+    }
+
+    private Asset load(Path file, String key) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String contentType = servletContext.getMimeType(file.getFileName().toString());
+        long length = attributes.size();
+
+        byte[] content = null;
+        byte[] gzipContent = null;
+        String hash;
+        if (length <= maxCachedSize) {
+            content = Files.readAllBytes(file);
+            hash = hash(content);
+            if (GzipSupport.isCompressible(contentType) && content.length >= MIN_GZIP_SIZE) {
+                byte[] compressed = gzip(content);
+                // 压缩收益不足 10% 时不保留 gzip 版本
+                if (compressed.length < content.length * 0.9) {
+                    gzipContent = compressed;
+                }
+            }
+        } else {
+            hash = hash(file);
+        }
+
+        return new Asset(file, versionedPath(key, hash), contentType, length, attributes.lastModifiedTime().toMillis(), hash,
+                content, gzipContent);
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerDirectories(watchService);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "启动静态资源目录监听失败", e);
+            return;
+        }
+
+        WatchService service = watchService;
+        watchThread = new Thread(() -> watch(service), "asset-index-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("静态资源开发模式已启用，正在监听 " + root);
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                // 编辑器保存文件时通常会产生多个事件，稍作等待后合并处理
+                Thread.sleep(WATCH_DEBOUNCE_MILLIS);
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while ((key = service.poll()) != null);
+
+                registerDirectories(service);
+                rebuild();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 监听已停止
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "静态资源目录监听异常终止", e);
+        }
+    }
+
+    private void registerDirectories(WatchService service) throws IOException {
+        try (Stream<Path> directories = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    private static String versionedPath(String key, String hash) {
+        String version = hash.substring(0, VERSION_HASH_LENGTH);
+        int slash = key.lastIndexOf('/');
+        int dot = key.lastIndexOf('.');
+        if (dot <= slash + 1) {
+            // 没有扩展名（或是以点开头的隐藏文件），直接追加哈希
+            return key + "." + version;
+        }
+        return key.substring(0, dot) + "." + version + key.substring(dot);
+    }
+
+    private static String stripLeadingSlash(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        return HexFormat.of().formatHex(sha256().digest(content), 0, 16);
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code Bulkhead} 限制一类请求的并发数，使不同类型的请求互不影响。
+ * <p>
+ * 所有请求共享同一个 Tomcat 线程池和同一个连接池时，注册高峰（密码哈希和 {@code register_user}）
+ * 或大量翻阅历史消息的请求会占满线程和连接，使发送消息的请求一起变慢。
+ * 每个隔离舱有自己的并发上限和等待队列：并发数达到上限时，请求最多排队等待 {@code queueTimeoutMillis} 毫秒，
+ * 队列已满或等待超时则被拒绝。隔离舱还可以拥有独立的连接子池（{@code poolSize} 大于 0 时），
+ * 其中的请求不再从主连接池借出连接，其他请求占满主连接池时也不受影响。
+ * <p>
+ * 配置项（`db.properties`）：{@code bulkhead.<名称>.maxConcurrent}、{@code bulkhead.<名称>.maxQueue}、
+ * {@code bulkhead.<名称>.queueTimeoutMillis}、{@code bulkhead.<名称>.poolSize}。未配置时使用 {@link #defaultsFor(String)}
+ * 中按隔离舱给出的默认值，连接子池默认不启用。各隔离舱的 {@link #metrics()} 由 {@link StatsReporter} 定期写入日志。
+ */
+public class Bulkhead {
+    /**
+     * 登录、注册和保险库操作。
+     */
+    public static final String AUTH = "auth";
+    /**
+     * 发送消息和创建会话。
+     */
+    public static final String WRITE = "write";
+    /**
+     * 打开会话、读取历史消息。
+     */
+    public static final String READ = "read";
+    /**
+     * 轮询会话列表和新消息。
+     */
+    public static final String PRESENCE = "presence";
+
+    private static final Map<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    /**
+     * 隔离舱的默认限制。
+     *
+     * @param maxConcurrent      最大并发数。
+     * @param maxQueue           最大排队数。
+     * @param queueTimeoutMillis 最长排队时间（毫秒）。
+     */
+    private record Limits(int maxConcurrent, int maxQueue, long queueTimeoutMillis) {
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueTimeoutMillis;
+    private final boolean ownPool;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 隔离舱的统计快照。
+     *
+     * @param active   正在执行的请求数。
+     * @param queued   正在排队的请求数。
+     * @param rejected 启动以来被拒绝的请求数。
+     */
+    public record Metrics(int active, int queued, long rejected) {
+    }
+
+    private Bulkhead(String name, int maxConcurrent, int maxQueue, long queueTimeoutMillis, int poolSize) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.ownPool = poolSize > 0;
+        if (ownPool) {
+            DatabaseConfig.registerSubPool(name, poolSize);
+        }
+    }
+
+    /**
+     * 获取指定名称的隔离舱，首次获取时从配置创建。
+     *
+     * @param name 隔离舱名称，例如 {@link #AUTH}。
+     * @return 隔离舱实例。
+     */
+    public static Bulkhead get(String name) {
+        return BULKHEADS.computeIfAbsent(name, Bulkhead::fromConfig);
+    }
+
+    /**
+     * 获取已经创建的所有隔离舱。
+     *
+     * @return 隔离舱集合。
+     */
+    public static Collection<Bulkhead> all() {
+        return BULKHEADS.values();
+    }
+
+    private static Bulkhead fromConfig(String name) {
+        String prefix = "bulkhead." + name + ".";
+        Limits defaults = defaultsFor(name);
+        return new Bulkhead(name,
+                Integer.parseInt(DatabaseConfig.getProperty(prefix + "maxConcurrent",
+                        String.valueOf(defaults.maxConcurrent()))),
+                Integer.parseInt(DatabaseConfig.getProperty(prefix + "maxQueue",
+                        String.valueOf(defaults.maxQueue()))),
+                Long.parseLong(DatabaseConfig.getProperty(prefix + "queueTimeoutMillis",
+                        String.valueOf(defaults.queueTimeoutMillis()))),
+                Integer.parseInt(DatabaseConfig.getProperty(prefix + "poolSize", "0")));
+    }
+
+    /**
+     * 各隔离舱的默认限制：登录注册的密码哈希代价高，并发数最小、允许较长的排队；
+     * 发送消息排队时间短，尽快拒绝；轮询请求数量最多但每次都很短（长轮询的等待不占用并发数）。
+     */
+    private static Limits defaultsFor(String name) {
+        return switch (name) {
+            case AUTH -> new Limits(8, 32, 5000);
+            case WRITE -> new Limits(32, 128, 500);
+            case PRESENCE -> new Limits(64, 256, 1000);
+            default -> new Limits(32, 64, 2000);
+        };
+    }
+
+    /**
+     * 尝试进入隔离舱。并发数已满时排队等待，队列已满或等待超时则返回 {@code false}。
+     * 返回 {@code true} 后，调用方必须在请求处理完成时调用一次 {@link #leave()}。
+     *
+     * @return 如果获得了执行许可则返回 {@code true}。
+     */
+    public boolean tryEnter() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 离开隔离舱，归还执行许可。
+     */
+    public void leave() {
+        permits.release();
+    }
+
+    /**
+     * 获取名称。
+     *
+     * @return 隔离舱名称。
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 检查隔离舱是否拥有独立的连接子池。
+     *
+     * @return 如果配置了 {@code poolSize} 则返回 {@code true}。
+     */
+    public boolean hasOwnPool() {
+        return ownPool;
+    }
+
+    /**
+     * 获取统计快照。
+     *
+     * @return 当前的执行数、排队数和累计拒绝数。
+     */
+    public Metrics metrics() {
+        return new Metrics(maxConcurrent - permits.availablePermits(), queued.get(), rejected.sum());
+    }
+}
@@ -0,0 +1,449 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.dao.HttpSessionDAO;
+import com.steven.e2eechat.dto.db.StoredSessionDTO;
+import com.steven.e2eechat.model.UserProfile;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code HttpSessionStore} 负责将 {@link HttpSession} 中的少量属性持久化到 PostgreSQL 的 {@code http_sessions} 表。
+ * <p>
+ * 应用只在会话中保存 {@code user}、{@code messageLevel}、{@code messageContent} 和 {@code shouldRedirect}
+ * 四个属性，因此这里使用定长字段加长度前缀的紧凑二进制格式，而不是 Java 序列化。
+ * 每个节点维护一个短 TTL 的本地近端缓存，缓存有效期内的请求不会访问数据库；
+ * 过期的会话记录由后台任务分批清理。
+ * <p>
+ * 用户在某个节点注销后，其他节点上的容器会话仍然保存着 {@code user}。其他节点在同步时发现
+ * 曾经持久化过的记录已被删除，就使本地会话失效；注销或被发现删除的会话ID会被记住，
+ * 在其有效期内不会再被写回数据库，注销因此在所有节点上生效。
+ * <p>
+ * 该功能通过 `db.properties` 中的 {@code session.store=jdbc} 启用，默认关闭。
+ */
+public class HttpSessionStore {
+    private static final Logger logger = Logger.getLogger(HttpSessionStore.class.getName());
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FLAG_USER = 1;
+    private static final int FLAG_MESSAGE_LEVEL = 1 << 1;
+    private static final int FLAG_MESSAGE_CONTENT = 1 << 2;
+    private static final int FLAG_SHOULD_REDIRECT = 1 << 3;
+    private static final int FLAG_SHOULD_REDIRECT_VALUE = 1 << 4;
+
+    private static final int FLAG_PUBLIC_KEY = 1;
+    private static final int FLAG_LAST_ONLINE = 1 << 1;
+    private static final int FLAG_REGISTERED_AT = 1 << 2;
+
+    /**
+     * 容器会话上的标记属性，表示该会话已经持久化过。该属性不会被编码到数据库中。
+     */
+    private static final String PERSISTED_ATTRIBUTE = HttpSessionStore.class.getName() + ".persisted";
+    /**
+     * 已删除会话ID的默认保留时间（秒），用于会话没有设置最大不活动时间的情况。
+     */
+    private static final long DEFAULT_TOMBSTONE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private static final HttpSessionStore INSTANCE = new HttpSessionStore();
+
+    private final HttpSessionDAO httpSessionDAO;
+    private final boolean enabled;
+    private final long nearCacheTtlNanos;
+    private final long touchIntervalNanos;
+    private final int purgeBatchSize;
+    private final long purgeIntervalSeconds;
+    private final Map<String, CachedSession> nearCache = new ConcurrentHashMap<>();
+    /**
+     * 已删除的会话ID到保留截止时间（{@link System#nanoTime()}）的映射。
+     */
+    private final Map<String, Long> deletedSessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService purgeExecutor;
+
+    /**
+     * 近端缓存条目。
+     *
+     * @param version             最近一次读取或保存的版本号。
+     * @param data                会话属性的二进制编码。
+     * @param maxInactiveInterval 最大不活动时间（秒）。
+     * @param fetchedAt           最近一次与数据库同步的时间（{@link System#nanoTime()}）。
+     * @param savedAt             最近一次写入数据库的时间（{@link System#nanoTime()}）。
+     */
+    private record CachedSession(long version, byte[] data, int maxInactiveInterval, long fetchedAt, long savedAt) {
+    }
+
+    private HttpSessionStore() {
+        this.httpSessionDAO = new HttpSessionDAO();
+        this.enabled = "jdbc".equalsIgnoreCase(DatabaseConfig.getProperty("session.store", "local"));
+        this.nearCacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(DatabaseConfig.getProperty("session.nearCacheTtl", "5000")));
+        this.touchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(DatabaseConfig.getProperty("session.touchInterval", "60000")));
+        this.purgeBatchSize = Integer.parseInt(DatabaseConfig.getProperty("session.purgeBatchSize", "500"));
+        this.purgeIntervalSeconds = Long.parseLong(DatabaseConfig.getProperty("session.purgeInterval", "300"));
+    }
+
+    /**
+     * 获取会话存储的单例实例。
+     *
+     * @return {@link HttpSessionStore} 实例。
+     */
+    public static HttpSessionStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 检查是否启用了数据库会话存储。
+     *
+     * @return 如果 {@code session.store} 配置为 {@code jdbc}，则返回 {@code true}；否则返回 {@code false}。
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 检查指定的会话 ID 是否存在有效的持久化记录。
+     *
+     * @param sessionId 容器会话 ID。
+     * @return 如果存在未过期的持久化会话，则返回 {@code true}；否则返回 {@code false}。
+     */
+    public boolean exists(String sessionId) {
+        return lookup(sessionId).isPresent();
+    }
+
+    /**
+     * 将持久化会话恢复到一个新创建的容器会话中。
+     * <p>
+     * 如果容器为新会话分配了不同的 ID，则同时把数据库记录和近端缓存迁移到新 ID 下。
+     *
+     * @param storedSessionId 持久化记录的会话 ID（通常是客户端携带的 JSESSIONID）。
+     * @param target          需要恢复属性的容器会话。
+     * @return 如果成功恢复，则返回 {@code true}；否则返回 {@code false}。
+     */
+    public boolean restoreInto(String storedSessionId, HttpSession target) {
+        Optional<CachedSession> cached = lookup(storedSessionId);
+        if (cached.isEmpty()) {
+            return false;
+        }
+        CachedSession entry = cached.get();
+        applyAttributes(target, entry.data());
+        target.setMaxInactiveInterval(entry.maxInactiveInterval());
+        target.setAttribute(PERSISTED_ATTRIBUTE, Boolean.TRUE);
+
+        if (!storedSessionId.equals(target.getId())) {
+            if (httpSessionDAO.renameSession(storedSessionId, target.getId())) {
+                nearCache.remove(storedSessionId);
+                nearCache.put(target.getId(), entry);
+            } else {
+                nearCache.remove(storedSessionId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在近端缓存过期后，将其他节点保存的较新版本同步到当前容器会话中。
+     * <p>
+     * 如果该会话曾经持久化过，而数据库中的记录已经不存在（在其他节点注销，或已过期被清理），
+     * 则使当前容器会话失效，并记住该会话ID，之后不再写回。
+     *
+     * @param session 当前请求的容器会话。
+     */
+    public void refresh(HttpSession session) {
+        String sessionId = session.getId();
+        CachedSession current = nearCache.get(sessionId);
+        if (current != null && System.nanoTime() - current.fetchedAt() < nearCacheTtlNanos) {
+            return;
+        }
+        Optional<CachedSession> latest = lookup(sessionId);
+        if (latest.isEmpty()) {
+            if (current != null || session.getAttribute(PERSISTED_ATTRIBUTE) != null) {
+                markDeleted(sessionId, session.getMaxInactiveInterval());
+                session.invalidate();
+            }
+            return;
+        }
+        if (current == null || latest.get().version() != current.version()) {
+            applyAttributes(session, latest.get().data());
+        }
+    }
+
+    /**
+     * 将容器会话的当前属性写回数据库。
+     * <p>
+     * 只有已登录的会话才会被持久化；曾经持久化过的会话不再包含 {@code user} 时删除其记录。
+     * 如果编码后的数据与近端缓存一致且距离上次写入未超过 {@code session.touchInterval}，
+     * 则跳过写入，只在需要延长过期时间时才访问数据库。
+     *
+     * @param session 当前请求的容器会话。
+     */
+    public void save(HttpSession session) {
+        String sessionId = session.getId();
+        CachedSession current = nearCache.get(sessionId);
+
+        if (!(session.getAttribute("user") instanceof UserProfile)) {
+            // 近端缓存条目可能已被清理任务淘汰，因此同时依据容器会话上的标记判断是否需要删除记录
+            if (current != null || session.getAttribute(PERSISTED_ATTRIBUTE) != null) {
+                nearCache.remove(sessionId);
+                httpSessionDAO.deleteSession(sessionId);
+                session.removeAttribute(PERSISTED_ATTRIBUTE);
+            }
+            return;
+        }
+        if (deletedSessions.containsKey(sessionId)) {
+            // 该会话已被注销，不再恢复其持久化记录
+            return;
+        }
+
+        byte[] data = encode(session);
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        long now = System.nanoTime();
+        if (current != null
+                && current.maxInactiveInterval() == maxInactiveInterval
+                && now - current.savedAt() < touchIntervalNanos
+                && Arrays.equals(current.data(), data)) {
+            return;
+        }
+
+        long version = httpSessionDAO.saveSession(sessionId, data, maxInactiveInterval);
+        nearCache.put(sessionId, new CachedSession(version, data, maxInactiveInterval, now, now));
+        session.setAttribute(PERSISTED_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    /**
+     * 删除持久化会话，通常在用户注销时调用。
+     * <p>
+     * 该会话ID在其有效期内不会再被写回数据库。
+     *
+     * @param sessionId           容器会话 ID。
+     * @param maxInactiveInterval 会话的最大不活动时间（秒），决定记住该会话ID的时间。
+     */
+    public void delete(String sessionId, int maxInactiveInterval) {
+        markDeleted(sessionId, maxInactiveInterval);
+        nearCache.remove(sessionId);
+        httpSessionDAO.deleteSession(sessionId);
+    }
+
+    private void markDeleted(String sessionId, int maxInactiveInterval) {
+        long seconds = maxInactiveInterval > 0 ? maxInactiveInterval : DEFAULT_TOMBSTONE_SECONDS;
+        deletedSessions.put(sessionId, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    /**
+     * 启动过期会话的后台清理任务。
+     * <p>
+     * 每个周期内分批删除过期记录，直到某一批删除数量不足 {@code session.purgeBatchSize}，
+     * 同时淘汰长时间未使用的近端缓存条目和超过保留时间的已删除会话ID。
+     */
+    public synchronized void start() {
+        if (!enabled || purgeExecutor != null) {
+            return;
+        }
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "http-session-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(this::purgeExpired,
+                purgeIntervalSeconds, purgeIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止后台清理任务。
+     */
+    public synchronized void stop() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+            purgeExecutor = null;
+        }
+        nearCache.clear();
+        deletedSessions.clear();
+    }
+
+    private void purgeExpired() {
+        try {
+            int total = 0;
+            int deleted;
+            do {
+                deleted = httpSessionDAO.purgeExpiredSessions(purgeBatchSize);
+                total += deleted;
+            } while (deleted >= purgeBatchSize && !Thread.currentThread().isInterrupted());
+            if (total > 0) {
+                logger.info("清理过期会话: " + total);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "清理过期会话失败", e);
+        }
+
+        long now = System.nanoTime();
+        nearCache.values().removeIf(entry -> now - entry.fetchedAt() > touchIntervalNanos);
+        deletedSessions.values().removeIf(until -> now - until > 0);
+    }
+
+    private Optional<CachedSession> lookup(String sessionId) {
+        long now = System.nanoTime();
+        CachedSession current = nearCache.get(sessionId);
+        if (current != null && now - current.fetchedAt() < nearCacheTtlNanos) {
+            return Optional.of(current);
+        }
+
+        Optional<StoredSessionDTO> stored = httpSessionDAO.loadSession(sessionId);
+        if (stored.isEmpty()) {
+            nearCache.remove(sessionId);
+            return Optional.empty();
+        }
+        StoredSessionDTO dto = stored.get();
+        CachedSession entry = new CachedSession(dto.getVersion(), dto.getSessionData(),
+                dto.getMaxInactiveInterval(), now, current != null ? current.savedAt() : now);
+        nearCache.put(sessionId, entry);
+        return Optional.of(entry);
+    }
+
+    /**
+     * 将会话属性编码为紧凑的二进制格式。
+     * <p>
+     * 格式：版本号（1 字节）、属性标志位（1 字节），随后按顺序写入存在的属性。
+     * 时间戳编码为纪元秒、纳秒和时区偏移秒，字符串使用 UTF-8 并带长度前缀。
+     */
+    private static byte[] encode(HttpSession session) {
+        UserProfile user = (UserProfile) session.getAttribute("user");
+        String messageLevel = (String) session.getAttribute("messageLevel");
+        String messageContent = (String) session.getAttribute("messageContent");
+        Boolean shouldRedirect = (Boolean) session.getAttribute("shouldRedirect");
+
+        int flags = 0;
+        if (user != null) flags |= FLAG_USER;
+        if (messageLevel != null) flags |= FLAG_MESSAGE_LEVEL;
+        if (messageContent != null) flags |= FLAG_MESSAGE_CONTENT;
+        if (shouldRedirect != null) {
+            flags |= FLAG_SHOULD_REDIRECT;
+            if (shouldRedirect) flags |= FLAG_SHOULD_REDIRECT_VALUE;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(flags);
+            if (user != null) {
+                writeUser(out, user);
+            }
+            if (messageLevel != null) {
+                writeString(out, messageLevel);
+            }
+            if (messageContent != null) {
+                writeString(out, messageContent);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void applyAttributes(HttpSession session, byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                logger.warning("不支持的会话数据版本: " + version);
+                return;
+            }
+            int flags = in.readUnsignedByte();
+            setOrRemove(session, "user", (flags & FLAG_USER) != 0 ? readUser(in) : null);
+            setOrRemove(session, "messageLevel", (flags & FLAG_MESSAGE_LEVEL) != 0 ? readString(in) : null);
+            setOrRemove(session, "messageContent", (flags & FLAG_MESSAGE_CONTENT) != 0 ? readString(in) : null);
+            setOrRemove(session, "shouldRedirect", (flags & FLAG_SHOULD_REDIRECT) != 0
+                    ? (flags & FLAG_SHOULD_REDIRECT_VALUE) != 0 : null);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "解码会话数据失败", e);
+        }
+    }
+
+    private static void setOrRemove(HttpSession session, String name, Object value) {
+        if (value != null) {
+            session.setAttribute(name, value);
+        } else {
+            session.removeAttribute(name);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, UserProfile user) throws IOException {
+        int flags = 0;
+        if (user.getPublicKey() != null) flags |= FLAG_PUBLIC_KEY;
+        if (user.getLastOnline() != null) flags |= FLAG_LAST_ONLINE;
+        if (user.getRegisteredAt() != null) flags |= FLAG_REGISTERED_AT;
+
+        out.writeByte(flags);
+        out.writeLong(user.getUserId().getMostSignificantBits());
+        out.writeLong(user.getUserId().getLeastSignificantBits());
+        writeString(out, user.getUsername());
+        writeString(out, user.getDisplayName());
+        if (user.getPublicKey() != null) {
+            out.writeShort(user.getPublicKey().length);
+            out.write(user.getPublicKey());
+        }
+        if (user.getLastOnline() != null) {
+            writeTimestamp(out, user.getLastOnline());
+        }
+        if (user.getRegisteredAt() != null) {
+            writeTimestamp(out, user.getRegisteredAt());
+        }
+    }
+
+    private static UserProfile readUser(DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        UserProfile user = new UserProfile();
+        user.setUserId(new UUID(in.readLong(), in.readLong()));
+        user.setUsername(readString(in));
+        user.setDisplayName(readString(in));
+        if ((flags & FLAG_PUBLIC_KEY) != 0) {
+            byte[] publicKey = new byte[in.readUnsignedShort()];
+            in.readFully(publicKey);
+            user.setPublicKey(publicKey);
+        }
+        if ((flags & FLAG_LAST_ONLINE) != 0) {
+            user.setLastOnline(readTimestamp(in));
+        }
+        if ((flags & FLAG_REGISTERED_AT) != 0) {
+            user.setRegisteredAt(readTimestamp(in));
+        }
+        return user;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeTimestamp(DataOutputStream out, OffsetDateTime value) throws IOException {
+        out.writeLong(value.toEpochSecond());
+        out.writeInt(value.getNano());
+        out.writeInt(value.getOffset().getTotalSeconds());
+    }
+
+    private static OffsetDateTime readTimestamp(DataInputStream in) throws IOException {
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds(in.readInt());
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), offset);
+    }
+}
@@ -0,0 +1,86 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code MessageNotifier} 在会话有新消息时唤醒等待该会话的长轮询请求。
+ * <p>
+ * 每个等待者对应一个 {@link CompletableFuture}，按会话登记；本节点向会话发送消息后完成该会话的全部 future，
+ * 等待者随即重新读取消息。超时的等待者自行注销，不在会话上留下记录。
+ * 等待者应在读取消息之前调用 {@link #await(UUID, long)}，这样读取与开始等待之间发送的消息不会被错过。
+ * <p>
+ * 通知只在本节点内传递。多个应用服务器共享数据库时，其他节点发送的消息要等到长轮询超时后才被读取，
+ * 与轮询的行为相同。有等待者的会话数超过 {@code longPoll.maxSessions} 时唤醒全部等待者并清空，
+ * 避免长期无人发言的会话占用内存。
+ */
+public class MessageNotifier {
+    private static final MessageNotifier INSTANCE = new MessageNotifier();
+
+    private final int maxSessions;
+    private final Map<UUID, Set<CompletableFuture<Void>>> waiting = new ConcurrentHashMap<>();
+
+    private MessageNotifier() {
+        this.maxSessions = Integer.parseInt(DatabaseConfig.getProperty("longPoll.maxSessions", "100000"));
+    }
+
+    /**
+     * 获取 {@code MessageNotifier} 的单例实例。
+     *
+     * @return {@code MessageNotifier} 实例。
+     */
+    public static MessageNotifier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始等待会话的下一条消息。
+     *
+     * @param sessionId     会话ID。
+     * @param timeoutMillis 最长等待时间（毫秒）。
+     * @return 在本节点向该会话发送下一条消息后，或等待超时后完成的 {@link CompletionStage}。
+     */
+    public CompletionStage<Void> await(UUID sessionId, long timeoutMillis) {
+        if (waiting.size() >= maxSessions && !waiting.containsKey(sessionId)) {
+            wakeAll();
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiting.compute(sessionId, (id, waiters) -> {
+            Set<CompletableFuture<Void>> set = waiters != null ? waiters : ConcurrentHashMap.newKeySet();
+            set.add(future);
+            return set;
+        });
+        future.whenComplete((ignored, error) -> waiting.computeIfPresent(sessionId, (id, waiters) -> {
+            waiters.remove(future);
+            return waiters.isEmpty() ? null : waiters;
+        }));
+        return future.completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 通知会话有新消息，唤醒所有等待该会话的请求。
+     *
+     * @param sessionId 会话ID。
+     */
+    public void messageSent(UUID sessionId) {
+        Set<CompletableFuture<Void>> waiters = waiting.remove(sessionId);
+        if (waiters != null) {
+            for (CompletableFuture<Void> future : waiters) {
+                future.complete(null);
+            }
+        }
+    }
+
+    private void wakeAll() {
+        for (UUID sessionId : waiting.keySet()) {
+            messageSent(sessionId);
+        }
+    }
+}
@@ -1,52 +1,90 @@
 package com.steven.e2eechat.service;
 
+import com.steven.e2eechat.dao.DaoExecutor;
 import com.steven.e2eechat.dao.SessionDAO;
 import com.steven.e2eechat.dto.db.NewMessageDTO;
 import com.steven.e2eechat.model.ChatMessage;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * {@code MessageService} 负责处理消息相关的业务逻辑，例如获取消息列表、获取特定消息以及发送新消息。
  * <p>
  * 该服务依赖于 {@link SessionDAO} 来进行数据库操作。
+ * "游标之后"的消息请求优先由 {@link MessageTailCache} 在内存中响应，未命中时才查询数据库；
+ * 发送的消息和读取到的会话最新消息会写入该缓存，发送消息同时会更新双方在 {@link RecentSessionsCache} 中的会话列表。
+ * 缓存未命中时，同一用户对同一会话、相同游标和数量的并发请求经由 {@link SingleFlight} 合并为一次数据库查询。
+ * 长轮询请求通过 {@link #waitForMessagesAfter(UUID, UUID, long, Integer, long)} 异步等待新消息，
+ * 由 {@link MessageNotifier} 在发送消息后唤醒。
  */
 public class MessageService {
+    /**
+     * 合并"游标之后"消息的并发查询。消息的已读状态按用户标记，因此键中包含用户ID。
+     */
+    private static final SingleFlight<MessagesAfterKey, List<ChatMessage>> MESSAGES_AFTER_FLIGHT =
+            new SingleFlight<>("messagesAfter");
+
     private final SessionDAO sessionDAO;
+    private final MessageTailCache tailCache;
+    private final RecentSessionsCache recentSessionsCache;
+    private final MessageNotifier notifier;
     private static final int DEFAULT_PAGE_SIZE = 50;
+    /**
+     * 单次请求允许返回的最大消息数量，超出时按此值截断。
+     */
+    private static final int MAX_PAGE_SIZE = 100;
     private static final long DEFAULT_CURSOR = -1L;
 
+    private record MessagesAfterKey(UUID userId, UUID sessionId, long cursor, int limit) {
+    }
+
     public MessageService() {
         this.sessionDAO = new SessionDAO();
+        this.tailCache = MessageTailCache.getInstance();
+        this.recentSessionsCache = RecentSessionsCache.getInstance();
+        this.notifier = MessageNotifier.getInstance();
     }
 
     /**
      * 获取指定游标之前的消息列表。
      * <p>
      * 如果提供了游标，则返回该游标之前的消息。如果游标为 null 或 -1，则从最新的消息开始获取。
-     * 可以指定返回的消息数量限制，如果 limit 为 null 或小于 1，则使用默认值 {@link #DEFAULT_PAGE_SIZE}。
+     * 可以指定返回的消息数量限制，如果 limit 为 null 或小于 1，则使用默认值 {@link #DEFAULT_PAGE_SIZE}，
+     * 大于 {@link #MAX_PAGE_SIZE} 时按最大值截断。
      *
      * @param userId    用户ID，不能为空。
      * @param sessionId 会话ID，不能为空。
      * @param cursor    消息游标，用于分页，可以为 null 或 -1。
      * @param limit     返回的消息数量限制，可以为 null。
-     * @return 消息列表，如果 {@code userId} 或 {@code sessionId} 为 null，或者发生任何异常，则返回空列表。
+     * @return 包含消息列表的 {@link Optional}；如果 {@code userId} 或 {@code sessionId} 为 null，或者查询失败，
+     *         则返回空的 {@link Optional}，调用方可以据此区分没有消息和查询失败。
      */
-    public List<ChatMessage> getMessagesBefore(UUID userId, UUID sessionId, Long cursor, Integer limit) {
+    public Optional<List<ChatMessage>> getMessagesBefore(UUID userId, UUID sessionId, Long cursor, Integer limit) {
         if (userId == null || sessionId == null) {
-            return Collections.emptyList();
+            return Optional.empty();
         }
 
         try {
             long actualCursor = cursor != null ? cursor : DEFAULT_CURSOR;
-            int actualLimit = limit != null && limit > 0 ? limit : DEFAULT_PAGE_SIZE;
-            return sessionDAO.getMessagesBefore(userId, sessionId, actualCursor, actualLimit);
+            int actualLimit = pageSize(limit);
+            List<ChatMessage> messages = sessionDAO.getMessagesBefore(userId, sessionId, actualCursor, actualLimit);
+            if (actualCursor == DEFAULT_CURSOR) {
+                // 从最新消息开始读取时，结果以会话最新消息结尾，可以填充尾部缓存
+                List<ChatMessage> ascending = new ArrayList<>(messages);
+                Collections.reverse(ascending);
+                tailCache.fill(sessionId, ascending);
+            }
+            return Optional.of(messages);
         } catch (Exception e) {
             // 记录日志，方便调试
-            return Collections.emptyList();
+            return Optional.empty();
         }
     }
 
@@ -54,29 +92,60 @@ public class MessageService {
      * 获取指定游标之后的消息列表。
      * <p>
      * 如果提供了游标，则返回该游标之后的消息。如果游标为 null 或 -1，则从最早的消息开始获取。
-     * 可以指定返回的消息数量限制，如果 limit 为 null 或小于 1，则使用默认值 {@link #DEFAULT_PAGE_SIZE}。
+     * 可以指定返回的消息数量限制，如果 limit 为 null 或小于 1，则使用默认值 {@link #DEFAULT_PAGE_SIZE}，
+     * 大于 {@link #MAX_PAGE_SIZE} 时按最大值截断。
      *
      * @param userId    用户ID，不能为空。
      * @param sessionId 会话ID，不能为空。
      * @param cursor    消息游标，用于分页，可以为 null 或 -1。
      * @param limit     返回的消息数量限制，可以为 null。
-     * @return 消息列表，如果 {@code userId} 或 {@code sessionId} 为 null，或者发生任何异常，则返回空列表。
+     * @return 包含消息列表的 {@link Optional}，列表可能被并发的其他请求共享，不可修改；
+     *         如果 {@code userId} 或 {@code sessionId} 为 null，或者查询失败，则返回空的 {@link Optional}。
      */
-    public List<ChatMessage> getMessagesAfter(UUID userId, UUID sessionId, Long cursor, Integer limit) {
+    public Optional<List<ChatMessage>> getMessagesAfter(UUID userId, UUID sessionId, Long cursor, Integer limit) {
         if (userId == null || sessionId == null) {
-            return Collections.emptyList();
+            return Optional.empty();
         }
 
         try {
-            long actualCursor = cursor != null ? cursor : DEFAULT_CURSOR;
-            int actualLimit = limit != null && limit > 0 ? limit : DEFAULT_PAGE_SIZE;
-            return sessionDAO.getMessagesAfter(userId, sessionId, actualCursor, actualLimit);
+            return Optional.of(readMessagesAfter(userId, sessionId, cursor, limit));
         } catch (Exception e) {
             // 记录日志，方便调试
-            return Collections.emptyList();
+            return Optional.empty();
         }
     }
 
+    /**
+     * 异步等待指定游标之后的新消息（长轮询）。
+     * <p>
+     * 先读取一次游标之后的消息，如果已有比游标更新的消息则立即返回；否则等待本节点向该会话发送新消息，
+     * 或等待 {@code timeoutMillis} 毫秒后再读取一次并返回其结果。等待期间不占用任何线程，
+     * 数据库读取通过 {@link DaoExecutor} 执行。与 {@link #getMessagesAfter(UUID, UUID, Long, Integer)} 相同，
+     * 返回的消息包含游标所指的消息本身。
+     *
+     * @param userId        用户ID，不能为空。
+     * @param sessionId     会话ID，不能为空。
+     * @param cursor        消息游标，客户端已有的最后一条消息。
+     * @param limit         返回的消息数量限制，可以为 null。
+     * @param timeoutMillis 没有新消息时的最长等待时间（毫秒）。
+     * @return 消息列表，如果参数为 null 则为空列表；读取消息失败时以异常结束，调用方应返回错误状态而不是空列表。
+     */
+    public CompletionStage<List<ChatMessage>> waitForMessagesAfter(UUID userId, UUID sessionId, long cursor,
+                                                                  Integer limit, long timeoutMillis) {
+        if (userId == null || sessionId == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        // 在第一次读取之前开始等待，读取期间发送的消息同样会唤醒本请求
+        CompletionStage<Void> wakeUp = notifier.await(sessionId, timeoutMillis);
+        return readAfterAsync(userId, sessionId, cursor, limit).thenCompose(messages -> {
+            if (hasNewerThan(messages, cursor)) {
+                return CompletableFuture.completedFuture(messages);
+            }
+            return wakeUp.thenCompose(ignored -> readAfterAsync(userId, sessionId, cursor, limit));
+        });
+    }
+
     /**
      * 获取指定的消息。
      *
@@ -103,10 +172,90 @@ public class MessageService {
             return false;
         }
         try {
-            return sessionDAO.sendMessage(userId, newMessage);
+            Optional<ChatMessage> sent = sessionDAO.sendMessage(userId, newMessage);
+            if (sent.isPresent() && tailCache.isEnabled()) {
+                // 请求中的 IV 和密文可能引用池化缓冲区，缓存需要保存自己的副本
+                ChatMessage message = sent.get();
+                message.setMessageIv(toByteArray(newMessage.getMessageIv()));
+                message.setMessageContent(toByteArray(newMessage.getMessageContent()));
+                tailCache.append(newMessage.getSessionId(), message);
+            }
+            sent.ifPresent(message -> {
+                SessionMembershipIndex.getInstance().record(message.getSessionId(), message.getSenderId(),
+                        message.getReceiverId());
+                recentSessionsCache.messageSent(message);
+                notifier.messageSent(message.getSessionId());
+            });
+            return sent.isPresent();
         } catch (Exception e) {
             // 记录日志，方便调试
             return false;
         }
     }
+
+    /**
+     * 从数据库读取游标之后的消息，合并相同的并发查询。返回的列表不可修改，可能被多个请求共享。
+     */
+    private List<ChatMessage> loadMessagesAfter(UUID userId, UUID sessionId, long cursor, int limit) {
+        return MESSAGES_AFTER_FLIGHT.execute(new MessagesAfterKey(userId, sessionId, cursor, limit), () -> {
+            List<ChatMessage> messages = sessionDAO.getMessagesAfter(userId, sessionId, cursor, limit);
+            if (messages.size() < limit) {
+                // 返回数量不足上限，说明已经读到会话最新消息
+                tailCache.fill(sessionId, messages);
+            }
+            return List.copyOf(messages);
+        });
+    }
+
+    /**
+     * 读取游标之后的消息，先查尾部缓存，未命中时查询数据库。查询失败时抛出异常。
+     */
+    private List<ChatMessage> readMessagesAfter(UUID userId, UUID sessionId, Long cursor, Integer limit) {
+        long actualCursor = cursor != null ? cursor : DEFAULT_CURSOR;
+        int actualLimit = pageSize(limit);
+        List<ChatMessage> cached = readTail(userId, sessionId, actualCursor, actualLimit);
+        if (cached != null) {
+            return cached;
+        }
+        return loadMessagesAfter(userId, sessionId, actualCursor, actualLimit);
+    }
+
+    /**
+     * 在 {@link DaoExecutor} 中读取游标之后的消息，查询失败时返回的阶段以异常结束。
+     */
+    private CompletionStage<List<ChatMessage>> readAfterAsync(UUID userId, UUID sessionId, long cursor,
+                                                             Integer limit) {
+        return DaoExecutor.submit(() -> readMessagesAfter(userId, sessionId, cursor, limit));
+    }
+
+    private static boolean hasNewerThan(List<ChatMessage> messages, long cursor) {
+        return !messages.isEmpty() && messages.get(messages.size() - 1).getCursor() > cursor;
+    }
+
+    /**
+     * 从尾部缓存读取消息，命中时按间隔刷新用户的最后在线时间。
+     */
+    private List<ChatMessage> readTail(UUID userId, UUID sessionId, long cursor, int limit) {
+        List<ChatMessage> cached = tailCache.read(userId, sessionId, cursor, limit);
+        if (cached != null) {
+            PresenceRefresher.getInstance().touch(userId);
+        }
+        return cached;
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 计算实际使用的消息数量限制。
+     */
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit < 1) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
 }
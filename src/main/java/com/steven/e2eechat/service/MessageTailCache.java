@@ -0,0 +1,329 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.model.ChatMessage;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@code MessageTailCache} 在内存中缓存每个活跃会话最近的若干条消息，用于响应"游标之后"的轮询。
+ * <p>
+ * 聊天页面每隔几秒以最后一条消息的游标请求新消息，绝大多数请求的游标都落在会话的最后几条消息之内。
+ * 每个会话的尾部消息保存在一个定长的环形缓冲区中，游标连续，且最后一条始终是该会话的最新消息，
+ * 因此只要请求的游标落在缓冲的窗口内，就可以直接在内存中得出与数据库完全相同的结果。
+ * <p>
+ * 缓存在两种情况下填充：
+ * <ul>
+ *     <li>通过本服务器发送消息后，将新消息追加到窗口末尾；与窗口不连续时以新消息重新开始窗口。</li>
+ *     <li>从数据库读取到以最新消息结尾的消息列表后，用其替换窗口（窗口中已有更新的消息时忽略）。</li>
+ * </ul>
+ * 以下情况视为未命中，由调用方回退到数据库：请求者不是会话参与者、游标不在窗口内，
+ * 或结果中包含发给请求者的未读消息（需要由存储过程标记为已读）。
+ * <p>
+ * 会话按最近访问顺序排列，缓存的密文和 IV 总字节数超过 {@code tailCache.maxBytes} 时淘汰最久未访问的会话。
+ * 缓存假设所有消息都经由本服务器写入，只适用于单个应用服务器，因此默认关闭，需要以 {@code tailCache.enabled=true} 显式启用。
+ * 启用了数据库会话存储（{@code session.store=jdbc}，即多个应用服务器共享会话）时，缓存总是关闭。
+ */
+public class MessageTailCache {
+    private static final MessageTailCache INSTANCE = new MessageTailCache();
+
+    /**
+     * 每条消息除密文和 IV 之外的估算开销（字节），用于统计缓存占用。
+     */
+    private static final int MESSAGE_OVERHEAD = 64;
+
+    private static final int FLAG_SYSTEM = 1;
+    private static final int FLAG_READ = 1 << 1;
+    /**
+     * 发送者为 {@link Tail} 记录的第一个参与者；否则为第二个参与者。
+     */
+    private static final int FLAG_FROM_FIRST = 1 << 2;
+
+    private final boolean enabled;
+    private final int messagesPerSession;
+    private final long maxBytes;
+
+    /**
+     * 按访问顺序排列的会话尾部缓存，所有访问都在 {@code this} 上同步。
+     */
+    private final LinkedHashMap<UUID, Tail> tails = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private MessageTailCache() {
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("tailCache.enabled", "false"))
+                && !HttpSessionStore.getInstance().isEnabled();
+        this.messagesPerSession = Integer.parseInt(DatabaseConfig.getProperty("tailCache.messagesPerSession", "64"));
+        this.maxBytes = Long.parseLong(DatabaseConfig.getProperty("tailCache.maxBytes", "67108864"));
+    }
+
+    /**
+     * 获取 {@code MessageTailCache} 的单例实例。
+     *
+     * @return {@code MessageTailCache} 实例。
+     */
+    public static MessageTailCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 检查缓存是否启用。
+     *
+     * @return 如果 {@code tailCache.enabled=true} 且未启用数据库会话存储，则返回 {@code true}。
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 从缓存中读取指定游标及之后的消息，语义与存储过程 {@code get_messages_after} 相同。
+     *
+     * @param userId    请求者的用户ID。
+     * @param sessionId 会话ID。
+     * @param cursor    起始游标（包含）。
+     * @param limit     返回的消息数量上限。
+     * @return 按游标升序排列的消息列表；未命中时返回 {@code null}。
+     */
+    public synchronized List<ChatMessage> read(UUID userId, UUID sessionId, long cursor, int limit) {
+        if (!enabled || cursor < 0) {
+            return null;
+        }
+        Tail tail = tails.get(sessionId);
+        if (tail == null || !tail.isParticipant(userId)) {
+            return null;
+        }
+        if (cursor < tail.firstCursor || cursor > tail.lastCursor() + 1) {
+            return null;
+        }
+
+        int from = (int) (cursor - tail.firstCursor);
+        int to = (int) Math.min(tail.size, (long) from + limit);
+        boolean fromFirst = tail.isFirst(userId);
+        for (int i = from; i < to; i++) {
+            int flags = tail.flags[tail.slot(i)];
+            boolean sentByUser = ((flags & FLAG_FROM_FIRST) != 0) == fromFirst;
+            if (!sentByUser && (flags & FLAG_READ) == 0) {
+                return null;
+            }
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            messages.add(tail.toMessage(i));
+        }
+        return messages;
+    }
+
+    /**
+     * 将刚刚发送的消息追加到会话窗口末尾。
+     * <p>
+     * 消息必须包含游标、发送者、接收者、发送时间、IV 和密文。游标不大于窗口中最后一条消息时忽略；
+     * 与窗口不连续时丢弃旧窗口，以该消息重新开始。
+     *
+     * @param sessionId 会话ID。
+     * @param message   新消息。缓存直接引用其中的字节数组，调用方之后不能再修改它们。
+     */
+    public synchronized void append(UUID sessionId, ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        Tail tail = tails.get(sessionId);
+        if (tail != null && message.getCursor() <= tail.lastCursor()) {
+            return;
+        }
+        if (tail == null || message.getCursor() != tail.lastCursor() + 1
+                || !tail.isParticipant(message.getSenderId())) {
+            replace(sessionId, new Tail(message.getSenderId(), message.getReceiverId(), messagesPerSession,
+                    message.getCursor()));
+            tail = tails.get(sessionId);
+        }
+        totalBytes += tail.add(message);
+        evict(sessionId);
+    }
+
+    /**
+     * 用从数据库读取的消息替换会话窗口。
+     * <p>
+     * 调用方必须保证 {@code messages} 按游标升序排列、游标连续，且最后一条是读取时会话的最新消息。
+     * 如果窗口中已经有更新的消息（例如读取期间有新消息发送），则忽略本次填充。
+     *
+     * @param sessionId 会话ID。
+     * @param messages  以最新消息结尾的消息列表。缓存直接引用其中的字节数组。
+     */
+    public synchronized void fill(UUID sessionId, List<ChatMessage> messages) {
+        if (!enabled || messages.isEmpty()) {
+            return;
+        }
+        ChatMessage last = messages.get(messages.size() - 1);
+        Tail existing = tails.get(sessionId);
+        if (existing != null && existing.lastCursor() > last.getCursor()) {
+            return;
+        }
+
+        int start = Math.max(0, messages.size() - messagesPerSession);
+        ChatMessage first = messages.get(start);
+        Tail tail = new Tail(first.getSenderId(), first.getReceiverId(), messagesPerSession, first.getCursor());
+        for (int i = start; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            if (message.getCursor() != tail.lastCursor() + 1 || !tail.isParticipant(message.getSenderId())) {
+                // 列表不连续，不能作为窗口使用
+                return;
+            }
+            tail.add(message);
+        }
+        replace(sessionId, tail);
+        evict(sessionId);
+    }
+
+    /**
+     * 获取缓存占用的估算字节数。
+     *
+     * @return 所有会话窗口的估算字节数。
+     */
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private void replace(UUID sessionId, Tail tail) {
+        Tail previous = tails.put(sessionId, tail);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += tail.bytes;
+    }
+
+    /**
+     * 淘汰最久未访问的会话，直到总字节数不超过上限。刚刚写入的会话最后才会被淘汰。
+     */
+    private void evict(UUID current) {
+        Iterator<Map.Entry<UUID, Tail>> iterator = tails.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<UUID, Tail> eldest = iterator.next();
+            if (eldest.getKey().equals(current) && tails.size() > 1) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 单个会话的尾部消息窗口，以并列数组保存的环形缓冲区。
+     * <p>
+     * 窗口中第 {@code i} 条消息的游标为 {@code firstCursor + i}，保存在 {@link #slot(int)} 位置。
+     * 会话参与者只保存一次，每条消息以一个标志位记录发送者是哪一方。
+     */
+    private static final class Tail {
+        private final long firstMsb;
+        private final long firstLsb;
+        private final long secondMsb;
+        private final long secondLsb;
+
+        private final long[] idMsb;
+        private final long[] idLsb;
+        private final long[] sentAtMicros;
+        private final byte[] flags;
+        private final byte[][] ivs;
+        private final byte[][] contents;
+
+        private long firstCursor;
+        private int head;
+        private int size;
+        private long bytes;
+
+        private Tail(UUID first, UUID second, int capacity, long firstCursor) {
+            this.firstMsb = first.getMostSignificantBits();
+            this.firstLsb = first.getLeastSignificantBits();
+            this.secondMsb = second.getMostSignificantBits();
+            this.secondLsb = second.getLeastSignificantBits();
+            this.idMsb = new long[capacity];
+            this.idLsb = new long[capacity];
+            this.sentAtMicros = new long[capacity];
+            this.flags = new byte[capacity];
+            this.ivs = new byte[capacity][];
+            this.contents = new byte[capacity][];
+            this.firstCursor = firstCursor;
+        }
+
+        private long lastCursor() {
+            return firstCursor + size - 1;
+        }
+
+        private int slot(int index) {
+            return (head + index) % flags.length;
+        }
+
+        private boolean isFirst(UUID userId) {
+            return userId.getMostSignificantBits() == firstMsb && userId.getLeastSignificantBits() == firstLsb;
+        }
+
+        private boolean isParticipant(UUID userId) {
+            return userId != null && (isFirst(userId)
+                    || (userId.getMostSignificantBits() == secondMsb && userId.getLeastSignificantBits() == secondLsb));
+        }
+
+        /**
+         * 将游标为 {@code lastCursor() + 1} 的消息写入窗口，窗口已满时覆盖最旧的消息。
+         *
+         * @return 缓存占用的字节数变化。
+         */
+        private long add(ChatMessage message) {
+            long delta = 0;
+            if (size == flags.length) {
+                delta -= messageBytes(head);
+                head = (head + 1) % flags.length;
+                firstCursor++;
+                size--;
+            }
+            int slot = slot(size);
+            UUID messageId = message.getMessageId();
+            idMsb[slot] = messageId.getMostSignificantBits();
+            idLsb[slot] = messageId.getLeastSignificantBits();
+            Instant sentAt = message.getSentAt().toInstant();
+            sentAtMicros[slot] = ChronoUnit.MICROS.between(Instant.EPOCH, sentAt);
+            flags[slot] = (byte) ((message.isSystem() ? FLAG_SYSTEM : 0)
+                    | (message.isRead() ? FLAG_READ : 0)
+                    | (isFirst(message.getSenderId()) ? FLAG_FROM_FIRST : 0));
+            ivs[slot] = message.getMessageIv();
+            contents[slot] = message.getMessageContent();
+            size++;
+            delta += messageBytes(slot);
+            bytes += delta;
+            return delta;
+        }
+
+        private long messageBytes(int slot) {
+            return MESSAGE_OVERHEAD + ivs[slot].length + contents[slot].length;
+        }
+
+        private ChatMessage toMessage(int index) {
+            int slot = slot(index);
+            UUID first = new UUID(firstMsb, firstLsb);
+            UUID second = new UUID(secondMsb, secondLsb);
+            boolean fromFirst = (flags[slot] & FLAG_FROM_FIRST) != 0;
+
+            ChatMessage message = new ChatMessage();
+            message.setMessageId(new UUID(idMsb[slot], idLsb[slot]));
+            message.setCursor(firstCursor + index);
+            message.setSenderId(fromFirst ? first : second);
+            message.setReceiverId(fromFirst ? second : first);
+            message.setSystem((flags[slot] & FLAG_SYSTEM) != 0);
+            message.setRead((flags[slot] & FLAG_READ) != 0);
+            message.setMessageIv(ivs[slot]);
+            message.setMessageContent(contents[slot]);
+            long micros = sentAtMicros[slot];
+            message.setSentAt(OffsetDateTime.ofInstant(
+                    Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L),
+                    ZoneOffset.UTC));
+            return message;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.dao.UserDAO;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code PresenceRefresher} 在请求由内存缓存响应时，按间隔刷新用户的最后在线时间。
+ * <p>
+ * 读取会话列表和消息的存储过程每次都会刷新最后在线时间，会话列表以一分钟为界判断对方是否在线。
+ * 请求改由缓存响应后不再经过这些存储过程，因此由本类代为调用 {@code update_last_online}，
+ * 同一用户每 {@link #REFRESH_INTERVAL} 毫秒最多刷新一次，足以保持在线状态的显示。
+ * <p>
+ * 记录的用户数达到 {@link #MAX_TRACKED_USERS} 时，淘汰上次刷新已超过间隔的记录（这些用户下次活动时本来就会刷新）；
+ * 淘汰后仍然已满时不再记录新用户，这些用户每次活动都会刷新。淘汰每秒最多执行一次。
+ */
+public class PresenceRefresher {
+    private static final PresenceRefresher INSTANCE = new PresenceRefresher();
+
+    /**
+     * 同一用户两次刷新最后在线时间的最小间隔（毫秒）。
+     */
+    private static final long REFRESH_INTERVAL = 30_000L;
+    private static final int MAX_TRACKED_USERS = 10_000;
+    /**
+     * 两次淘汰之间的最小间隔（毫秒）。
+     */
+    private static final long EVICT_INTERVAL = 1_000L;
+
+    private final UserDAO userDAO = new UserDAO();
+    private final Map<UUID, Long> lastRefreshed = new ConcurrentHashMap<>();
+    private volatile long lastEvicted;
+
+    private PresenceRefresher() {
+    }
+
+    /**
+     * 获取 {@code PresenceRefresher} 的单例实例。
+     *
+     * @return {@code PresenceRefresher} 实例。
+     */
+    public static PresenceRefresher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录用户的一次活动，距离上次刷新超过间隔时更新其最后在线时间。
+     *
+     * @param userId 用户ID。
+     */
+    public void touch(UUID userId) {
+        long now = System.currentTimeMillis();
+        Long last = lastRefreshed.get(userId);
+        if (last != null && now - last < REFRESH_INTERVAL) {
+            return;
+        }
+        if (last != null || hasRoom(now)) {
+            lastRefreshed.put(userId, now);
+        }
+        try {
+            userDAO.updateLastOnline(userId, null);
+        } catch (Exception e) {
+            // 记录日志，方便调试
+        }
+    }
+
+    private boolean hasRoom(long now) {
+        if (lastRefreshed.size() < MAX_TRACKED_USERS) {
+            return true;
+        }
+        if (now - lastEvicted >= EVICT_INTERVAL) {
+            lastEvicted = now;
+            lastRefreshed.values().removeIf(refreshed -> now - refreshed >= REFRESH_INTERVAL);
+        }
+        return lastRefreshed.size() < MAX_TRACKED_USERS;
+    }
+}
@@ -0,0 +1,168 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.model.ChatMessage;
+import com.steven.e2eechat.model.ChatSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code RecentSessionsCache} 缓存每个用户的最近会话列表，使会话列表的轮询不必每次都查询数据库。
+ * <p>
+ * 用户的会话列表只在两种情况下发生变化：其中某个会话有新消息，或者为该用户创建了新会话。
+ * 发送消息后调用 {@link #messageSent(ChatMessage)}，在双方缓存的列表中就地更新该会话并移到列表最前；
+ * 获取或创建会话后调用 {@link #invalidate(UUID)} 使双方的列表失效，下次请求时重新加载。
+ * <p>
+ * 加载列表的过程中如果发生了上述变化，加载结果不会写入缓存：每次变化都从全局计数器取得新的版本号，
+ * {@link #put(UUID, long, List)} 只在加载开始后没有发生变化时才保存结果。
+ * 缓存的列表及其中的 {@link ChatSession} 对象在多个请求之间共享，调用方不能修改它们。
+ * 最多缓存 {@code sessionListCache.maxUsers} 个用户，超过时淘汰最久没有轮询或收发消息的用户；
+ * 淘汰会丢失该用户的版本号，但正在加载列表的用户刚刚访问过缓存，不会先于其他用户被淘汰。
+ * <p>
+ * 缓存假设所有消息和会话都经由本服务器写入，只适用于单个应用服务器，因此默认关闭，
+ * 需要以 {@code sessionListCache.enabled=true} 显式启用。启用了数据库会话存储（{@code session.store=jdbc}）时，缓存总是关闭。
+ */
+public class RecentSessionsCache {
+    private static final RecentSessionsCache INSTANCE = new RecentSessionsCache();
+
+    private final boolean enabled;
+    private final AtomicLong versions = new AtomicLong();
+    private final UserLruMap<Entry> entries;
+
+    /**
+     * 用户的缓存条目。
+     *
+     * @param version  最近一次写入或失效时的版本号。
+     * @param sessions 缓存的会话列表；条目已失效时为 {@code null}。
+     */
+    private record Entry(long version, List<ChatSession> sessions) {
+    }
+
+    private RecentSessionsCache() {
+        this.enabled = Boolean.parseBoolean(DatabaseConfig.getProperty("sessionListCache.enabled", "false"))
+                && !HttpSessionStore.getInstance().isEnabled();
+        this.entries = new UserLruMap<>(Integer.parseInt(
+                DatabaseConfig.getProperty("sessionListCache.maxUsers", "10000")));
+    }
+
+    /**
+     * 获取 {@code RecentSessionsCache} 的单例实例。
+     *
+     * @return {@code RecentSessionsCache} 实例。
+     */
+    public static RecentSessionsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取缓存的会话列表。
+     *
+     * @param userId 用户ID。
+     * @return 缓存的不可变会话列表；未缓存、已失效或缓存未启用时返回 {@code null}。
+     */
+    public List<ChatSession> get(UUID userId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(userId);
+        return entry != null ? entry.sessions() : null;
+    }
+
+    /**
+     * 在从数据库加载会话列表之前调用，获取当前版本号。
+     *
+     * @return 传给 {@link #put(UUID, long, List)} 的版本号。
+     */
+    public long beginLoad() {
+        return versions.get();
+    }
+
+    /**
+     * 保存从数据库加载的会话列表。如果加载开始后该用户的列表发生过变化，则丢弃本次结果。
+     *
+     * @param userId   用户ID。
+     * @param version  加载开始前 {@link #beginLoad()} 返回的版本号。
+     * @param sessions 加载得到的会话列表。
+     */
+    public void put(UUID userId, long version, List<ChatSession> sessions) {
+        if (!enabled) {
+            return;
+        }
+        Entry loaded = new Entry(version, List.copyOf(sessions));
+        entries.compute(userId, (id, current) ->
+                current == null || current.version() <= version ? loaded : current);
+    }
+
+    /**
+     * 使用户的会话列表失效。
+     *
+     * @param userId 用户ID。
+     */
+    public void invalidate(UUID userId) {
+        if (enabled) {
+            entries.put(userId, new Entry(versions.incrementAndGet(), null));
+        }
+    }
+
+    /**
+     * 消息发送成功后，更新发送者和接收者缓存的会话列表。
+     * <p>
+     * 如果列表中包含该会话，则以新消息的游标、ID 和时间更新该会话并移到列表最前；否则使列表失效。
+     *
+     * @param message 新消息，必须包含会话ID、游标、发送者、接收者、消息ID和发送时间。
+     */
+    public void messageSent(ChatMessage message) {
+        if (!enabled) {
+            return;
+        }
+        patch(message.getSenderId(), message);
+        patch(message.getReceiverId(), message);
+    }
+
+    private void patch(UUID userId, ChatMessage message) {
+        long version = versions.incrementAndGet();
+        // 没有缓存列表时也要记录版本号，防止正在进行的加载写入发送前的旧列表
+        entries.compute(userId, (id, current) -> {
+            List<ChatSession> sessions = current != null && current.sessions() != null
+                    ? moveToFront(current.sessions(), message)
+                    : null;
+            return new Entry(version, sessions);
+        });
+    }
+
+    /**
+     * 返回更新了指定会话最后消息、并将其移到最前的新列表；列表中没有该会话时返回 {@code null}。
+     */
+    private static List<ChatSession> moveToFront(List<ChatSession> sessions, ChatMessage message) {
+        for (int i = 0; i < sessions.size(); i++) {
+            ChatSession session = sessions.get(i);
+            if (session.getSessionId().equals(message.getSessionId())) {
+                if (session.getMessageCounter() >= message.getCursor()) {
+                    // 并发发送时较新的消息已经先更新了列表
+                    return sessions;
+                }
+                ChatSession updated = new ChatSession();
+                updated.setSessionId(session.getSessionId());
+                updated.setInitiatorId(session.getInitiatorId());
+                updated.setParticipantId(session.getParticipantId());
+                updated.setCreatedAt(session.getCreatedAt());
+                updated.setMessageCounter(message.getCursor());
+                updated.setLastMessageId(message.getMessageId());
+                updated.setLastMessageAt(message.getSentAt());
+
+                List<ChatSession> result = new ArrayList<>(sessions.size());
+                result.add(updated);
+                for (int j = 0; j < sessions.size(); j++) {
+                    if (j != i) {
+                        result.add(sessions.get(j));
+                    }
+                }
+                return List.copyOf(result);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,183 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@code SessionMembershipIndex} 在内存中记录每个会话的两个参与者，用于在不访问数据库的情况下判断用户是否属于会话。
+ * <p>
+ * 会话一旦由 {@code get_or_create_session} 创建，其参与者就不会再改变，因此索引中的条目永不过期。
+ * 索引以开放寻址的哈希表保存在一个 {@code long[]} 中，每个条目占 6 个 {@code long}：
+ * 会话ID的高低 64 位，以及两个参与者ID的高低 64 位，不为每个会话创建任何对象。
+ * 查询使用 {@link StampedLock} 的乐观读，不阻塞并发的查询。
+ * <p>
+ * 条目数达到 {@code membership.maxSessions} 时清空整个索引，之后按需从数据库重新填充。
+ */
+public class SessionMembershipIndex {
+    private static final SessionMembershipIndex INSTANCE = new SessionMembershipIndex();
+
+    private static final int STRIDE = 6;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * 成员关系的查询结果。
+     */
+    public enum Membership {
+        /**
+         * 用户是会话的参与者。
+         */
+        MEMBER,
+        /**
+         * 会话已知，但用户不是参与者。
+         */
+        NOT_MEMBER,
+        /**
+         * 索引中没有该会话，需要查询数据库。
+         */
+        UNKNOWN
+    }
+
+    private final int maxSessions;
+    private final StampedLock lock = new StampedLock();
+    private long[] table = new long[INITIAL_CAPACITY * STRIDE];
+    private int size;
+
+    private SessionMembershipIndex() {
+        this.maxSessions = Integer.parseInt(DatabaseConfig.getProperty("membership.maxSessions", "200000"));
+    }
+
+    /**
+     * 获取 {@code SessionMembershipIndex} 的单例实例。
+     *
+     * @return {@code SessionMembershipIndex} 实例。
+     */
+    public static SessionMembershipIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 查询用户是否属于会话。
+     *
+     * @param userId    用户ID。
+     * @param sessionId 会话ID。
+     * @return 查询结果；索引中没有该会话时返回 {@link Membership#UNKNOWN}。
+     */
+    public Membership check(UUID userId, UUID sessionId) {
+        long msb = sessionId.getMostSignificantBits();
+        long lsb = sessionId.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            return Membership.UNKNOWN;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        Membership result = lookup(table, msb, lsb, userId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = lookup(table, msb, lsb, userId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 记录会话的两个参与者。会话已存在时不做任何修改。
+     *
+     * @param sessionId     会话ID。
+     * @param initiatorId   会话发起者ID。
+     * @param participantId 会话参与者ID。
+     */
+    public void record(UUID sessionId, UUID initiatorId, UUID participantId) {
+        long msb = sessionId.getMostSignificantBits();
+        long lsb = sessionId.getLeastSignificantBits();
+        if ((msb == 0 && lsb == 0) || initiatorId == null || participantId == null) {
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (size >= maxSessions) {
+                table = new long[INITIAL_CAPACITY * STRIDE];
+                size = 0;
+            } else if ((size + 1) * 2 > table.length / STRIDE) {
+                resize();
+            }
+            if (insert(table, msb, lsb, initiatorId.getMostSignificantBits(), initiatorId.getLeastSignificantBits(),
+                    participantId.getMostSignificantBits(), participantId.getLeastSignificantBits())) {
+                size++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static Membership lookup(long[] table, long msb, long lsb, UUID userId) {
+        int mask = table.length / STRIDE - 1;
+        int slot = hash(msb, lsb) & mask;
+        // 乐观读期间表可能被替换，最多探测 capacity 次，避免在不一致的数据上无限循环
+        for (int probes = 0; probes <= mask; probes++) {
+            int base = slot * STRIDE;
+            long keyMsb = table[base];
+            long keyLsb = table[base + 1];
+            if (keyMsb == 0 && keyLsb == 0) {
+                return Membership.UNKNOWN;
+            }
+            if (keyMsb == msb && keyLsb == lsb) {
+                long userMsb = userId.getMostSignificantBits();
+                long userLsb = userId.getLeastSignificantBits();
+                boolean member = (table[base + 2] == userMsb && table[base + 3] == userLsb)
+                        || (table[base + 4] == userMsb && table[base + 5] == userLsb);
+                return member ? Membership.MEMBER : Membership.NOT_MEMBER;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return Membership.UNKNOWN;
+    }
+
+    /**
+     * 插入条目，条目已存在时返回 {@code false}。调用方必须持有写锁并保证表中有空位。
+     */
+    private static boolean insert(long[] table, long msb, long lsb, long firstMsb, long firstLsb,
+                                  long secondMsb, long secondLsb) {
+        int mask = table.length / STRIDE - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int base = slot * STRIDE;
+            if (table[base] == msb && table[base + 1] == lsb) {
+                return false;
+            }
+            if (table[base] == 0 && table[base + 1] == 0) {
+                table[base + 2] = firstMsb;
+                table[base + 3] = firstLsb;
+                table[base + 4] = secondMsb;
+                table[base + 5] = secondLsb;
+                table[base + 1] = lsb;
+                table[base] = msb;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long[] old = table;
+        long[] resized = new long[old.length * 2];
+        for (int base = 0; base < old.length; base += STRIDE) {
+            if (old[base] != 0 || old[base + 1] != 0) {
+                insert(resized, old[base], old[base + 1], old[base + 2], old[base + 3], old[base + 4], old[base + 5]);
+            }
+        }
+        table = resized;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+}
@@ -0,0 +1,103 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@code SessionRowCache} 缓存会话列表中每一行渲染后的 HTML 片段。
+ * <p>
+ * 会话列表每 3 秒刷新一次，但绝大多数行在两次刷新之间没有任何变化。
+ * 每个片段以 {@link RowKey} 标识其渲染所依赖的全部数据，键不变时直接复用上次渲染的结果，
+ * 只有发生变化的行才会重新执行 `list.jsp` 中的时间换算和格式化。
+ * <p>
+ * 缓存按查看者分区：每个用户每个会话只保留最近一次渲染的片段，
+ * 每个用户最多保留 {@code rowCache.maxRowsPerUser} 个会话，最多缓存 {@code rowCache.maxUsers} 个用户。
+ * 两者都按最近访问淘汰：超过会话数时淘汰该用户最久未渲染的行，超过用户数时淘汰最久没有刷新会话列表的用户，
+ * 这些用户多半已经离开页面。
+ * 用户注销时调用 {@link #evict(UUID)} 清除该用户的全部片段。
+ */
+public class SessionRowCache {
+    private static final SessionRowCache INSTANCE = new SessionRowCache();
+
+    private final int maxRowsPerUser;
+    private final UserLruMap<Map<UUID, CachedRow>> rowsByViewer;
+
+    /**
+     * 会话行片段的缓存键，包含渲染结果所依赖的全部数据。
+     *
+     * @param sessionId        会话 ID。
+     * @param lastMessageId    最后一条消息的 ID，没有消息时为 {@code null}。
+     * @param lastOnlineBucket 对方最后上线时间所在的分钟（纪元分钟），对方当前在线时为 {@link Long#MIN_VALUE}。
+     * @param epochDay         渲染时的当前日期（纪元日），用于"今天"和"更早"两种时间格式的切换。
+     */
+    public record RowKey(UUID sessionId, UUID lastMessageId, long lastOnlineBucket, long epochDay) {
+    }
+
+    private record CachedRow(RowKey key, String html) {
+    }
+
+    private SessionRowCache() {
+        this.maxRowsPerUser = Integer.parseInt(DatabaseConfig.getProperty("rowCache.maxRowsPerUser", "200"));
+        this.rowsByViewer = new UserLruMap<>(Integer.parseInt(
+                DatabaseConfig.getProperty("rowCache.maxUsers", "10000")));
+    }
+
+    /**
+     * 获取 {@code SessionRowCache} 的单例实例。
+     *
+     * @return {@code SessionRowCache} 实例。
+     */
+    public static SessionRowCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取缓存的会话行片段。
+     *
+     * @param viewerId 查看会话列表的用户 ID。
+     * @param key      当前数据对应的缓存键。
+     * @return 缓存的 HTML 片段；没有缓存或缓存已过期时返回 {@code null}。
+     */
+    public String get(UUID viewerId, RowKey key) {
+        Map<UUID, CachedRow> rows = rowsByViewer.get(viewerId);
+        if (rows == null) {
+            return null;
+        }
+        CachedRow row = rows.get(key.sessionId());
+        return row != null && row.key().equals(key) ? row.html() : null;
+    }
+
+    /**
+     * 保存会话行片段，替换该会话之前的片段。
+     *
+     * @param viewerId 查看会话列表的用户 ID。
+     * @param key      渲染所依据数据的缓存键。
+     * @param html     渲染后的 HTML 片段。
+     */
+    public void put(UUID viewerId, RowKey key, String html) {
+        Map<UUID, CachedRow> rows = rowsByViewer.computeIfAbsent(viewerId, id -> newRowMap());
+        rows.put(key.sessionId(), new CachedRow(key, html));
+    }
+
+    /**
+     * 清除指定用户的全部会话行片段。
+     *
+     * @param viewerId 用户 ID。
+     */
+    public void evict(UUID viewerId) {
+        rowsByViewer.remove(viewerId);
+    }
+
+    private Map<UUID, CachedRow> newRowMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedRow> eldest) {
+                return size() > maxRowsPerUser;
+            }
+        });
+    }
+}
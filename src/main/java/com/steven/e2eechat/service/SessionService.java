@@ -1,6 +1,8 @@
 package com.steven.e2eechat.service;
 
 import com.steven.e2eechat.dao.SessionDAO;
+import com.steven.e2eechat.dto.db.ChatBootstrapDTO;
+import com.steven.e2eechat.model.ChatMessage;
 import com.steven.e2eechat.model.ChatSession;
 
 import java.util.List;
@@ -10,23 +12,54 @@ import java.util.UUID;
 /**
  * {@code SessionService} 负责处理会话相关的业务逻辑，例如获取用户的最近会话列表、获取未读消息数、创建会话等。
  * <p>
- * 该服务依赖于 {@link SessionDAO} 来进行数据库操作。
+ * 该服务依赖于 {@link SessionDAO} 来进行数据库操作，最近会话列表通过 {@link RecentSessionsCache} 缓存。
+ * 从数据库读取到的会话参与者会记录到 {@link SessionMembershipIndex}，供 {@link #isParticipant(UUID, UUID)} 使用。
+ * 缓存未命中时，同一用户并发的会话列表请求经由 {@link SingleFlight} 合并为一次数据库查询。
  */
 public class SessionService {
+    private static final SingleFlight<UUID, List<ChatSession>> RECENT_SESSIONS_FLIGHT =
+            new SingleFlight<>("recentSessions");
+
+    private static final int DEFAULT_WINDOW_BEFORE = 20;
+    private static final int DEFAULT_WINDOW_AFTER = 30;
+    /**
+     * 打开聊天时锚点前、后各自允许返回的最大消息数量。
+     */
+    private static final int MAX_WINDOW_SIZE = 100;
+
     private final SessionDAO sessionDAO;
+    private final RecentSessionsCache recentSessionsCache;
+    private final SessionMembershipIndex membershipIndex;
 
     public SessionService() {
         this.sessionDAO = new SessionDAO();
+        this.recentSessionsCache = RecentSessionsCache.getInstance();
+        this.membershipIndex = SessionMembershipIndex.getInstance();
     }
 
     /**
      * 获取用户的最近会话列表，并按照最后消息时间降序排序。
+     * <p>
+     * 优先返回缓存的列表，此时按间隔刷新用户的最后在线时间；返回的列表可能被多个请求共享，不可修改。
      *
      * @param userId 用户ID，不能为空。
      * @return 用户的最近会话列表。如果用户不存在或没有会话，则返回空列表。
      */
     public List<ChatSession> getRecentSessions(UUID userId) {
-        return sessionDAO.getRecentSessions(userId);
+        List<ChatSession> cached = recentSessionsCache.get(userId);
+        if (cached != null) {
+            PresenceRefresher.getInstance().touch(userId);
+            return cached;
+        }
+        return RECENT_SESSIONS_FLIGHT.execute(userId, () -> {
+            long version = recentSessionsCache.beginLoad();
+            List<ChatSession> sessions = List.copyOf(sessionDAO.getRecentSessions(userId));
+            for (ChatSession session : sessions) {
+                membershipIndex.record(session.getSessionId(), session.getInitiatorId(), session.getParticipantId());
+            }
+            recentSessionsCache.put(userId, version, sessions);
+            return sessions;
+        });
     }
 
     /**
@@ -73,7 +106,14 @@ public class SessionService {
      *         如果对方用户不存在，则返回空的 {@link Optional}。
      */
     public Optional<UUID> getOrCreateSession(UUID userId, UUID otherUserId) {
-        return sessionDAO.getOrCreateSession(userId, otherUserId);
+        Optional<UUID> sessionId = sessionDAO.getOrCreateSession(userId, otherUserId);
+        if (sessionId.isPresent()) {
+            membershipIndex.record(sessionId.get(), userId, otherUserId);
+            // 可能创建了新会话，双方的会话列表都需要重新加载
+            recentSessionsCache.invalidate(userId);
+            recentSessionsCache.invalidate(otherUserId);
+        }
+        return sessionId;
     }
 
     /**
@@ -88,10 +128,75 @@ public class SessionService {
             return Optional.empty();
         }
         try {
-            return sessionDAO.getSession(userId, sessionId);
+            Optional<ChatSession> session = sessionDAO.getSession(userId, sessionId);
+            session.ifPresent(s -> membershipIndex.record(s.getSessionId(), s.getInitiatorId(), s.getParticipantId()));
+            return session;
+        } catch (Exception e) {
+            // 记录日志，方便调试
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 获取打开聊天页面所需的全部数据，所有查询在一次数据库往返中完成。
+     * <p>
+     * 返回会话信息、对方用户资料，以及以锚点为中心的消息窗口：锚点优先为 {@code messageId} 指定的消息，
+     * 否则为首条未读消息，没有未读消息时为最后一条消息。窗口中的接收消息会被标记为已读。
+     * {@code before} 为 null 或小于 0 时使用默认值 {@link #DEFAULT_WINDOW_BEFORE}，{@code after} 为 null 或小于 1
+     * 时使用默认值 {@link #DEFAULT_WINDOW_AFTER}，两者都不超过 {@link #MAX_WINDOW_SIZE}。
+     * 窗口包含会话最新消息时，同时用于填充 {@link MessageTailCache}。
+     *
+     * @param userId    用户ID，不能为空。
+     * @param sessionId 会话ID，不能为空。
+     * @param messageId 作为锚点的消息ID，可以为 null。
+     * @param before    锚点之前最多返回的消息数量，可以为 null。
+     * @param after     从锚点开始最多返回的消息数量，可以为 null。
+     * @return 如果会话存在且用户有权限访问，则返回包含 {@link ChatBootstrapDTO} 的 {@link Optional}；否则返回空的 {@link Optional}。
+     */
+    public Optional<ChatBootstrapDTO> openChat(UUID userId, UUID sessionId, UUID messageId,
+                                               Integer before, Integer after) {
+        if (userId == null || sessionId == null) {
+            return Optional.empty();
+        }
+        try {
+            int actualBefore = before == null || before < 0 ? DEFAULT_WINDOW_BEFORE : Math.min(before, MAX_WINDOW_SIZE);
+            int actualAfter = after == null || after < 1 ? DEFAULT_WINDOW_AFTER : Math.min(after, MAX_WINDOW_SIZE);
+            Optional<ChatBootstrapDTO> bootstrap = sessionDAO.openChat(userId, sessionId, messageId,
+                    actualBefore, actualAfter);
+            bootstrap.ifPresent(chat -> {
+                ChatSession session = chat.getSession();
+                membershipIndex.record(session.getSessionId(), session.getInitiatorId(), session.getParticipantId());
+                List<ChatMessage> messages = chat.getMessages();
+                if (!messages.isEmpty()
+                        && messages.get(messages.size() - 1).getCursor() == session.getMessageCounter()) {
+                    MessageTailCache.getInstance().fill(sessionId, messages);
+                }
+            });
+            return bootstrap;
         } catch (Exception e) {
             // 记录日志，方便调试
             return Optional.empty();
         }
     }
+
+    /**
+     * 检查用户是否为会话的参与者。
+     * <p>
+     * 优先查询内存中的 {@link SessionMembershipIndex}；索引中没有该会话时通过 {@link #getSession(UUID, UUID)}
+     * 查询数据库，并将结果记录到索引中。
+     *
+     * @param userId    用户ID，不能为空。
+     * @param sessionId 会话ID，不能为空。
+     * @return 如果用户是会话的参与者，则返回 {@code true}；如果会话不存在、用户不是参与者或发生错误，则返回 {@code false}。
+     */
+    public boolean isParticipant(UUID userId, UUID sessionId) {
+        if (userId == null || sessionId == null) {
+            return false;
+        }
+        return switch (membershipIndex.check(userId, sessionId)) {
+            case MEMBER -> true;
+            case NOT_MEMBER -> false;
+            case UNKNOWN -> getSession(userId, sessionId).isPresent();
+        };
+    }
 }
@@ -0,0 +1,123 @@
+package com.steven.e2eechat.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * {@code SingleFlight} 合并相同键的并发读取：同一时刻对同一个键只执行一次加载，其余调用方等待并共享其结果。
+ * <p>
+ * 用户在多个标签页打开同一会话，或重启后缓存为空时，相同的数据库查询会在同一时刻到达。
+ * 第一个调用方执行加载，之后到达的调用方等待同一个 {@link CompletableFuture}，加载完成后结果分发给所有调用方；
+ * 加载抛出的异常同样分发给所有调用方。加载完成后键立即移除，不缓存结果。
+ * <p>
+ * 共享的结果会被多个请求同时使用，调用方不能修改它。
+ * 每个实例对应一类键（例如某个用户的会话列表），统计这一类键的加载次数和合并次数；不按单个键统计，
+ * 因为消息分页等键包含游标，数量没有上限。所有实例的统计由 {@link StatsReporter} 定期写入日志。
+ *
+ * @param <K> 键类型，必须正确实现 {@code equals} 和 {@code hashCode}。
+ * @param <V> 结果类型。
+ */
+public final class SingleFlight<K, V> {
+    private static final List<SingleFlight<?, ?>> INSTANCES = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * 合并统计。
+     *
+     * @param executions 实际执行加载的次数。
+     * @param coalesced  等待并共享了其他调用方加载结果的次数。
+     */
+    public record Metrics(long executions, long coalesced) {
+    }
+
+    /**
+     * 创建实例并登记到统计列表中。实例应保存在静态字段中，不要按请求创建。
+     *
+     * @param name 名称，表示这一类键，用于区分统计数据。
+     */
+    public SingleFlight(String name) {
+        this.name = name;
+        INSTANCES.add(this);
+    }
+
+    /**
+     * 获取所有已创建的实例。
+     *
+     * @return 按创建顺序排列的实例列表。
+     */
+    public static List<SingleFlight<?, ?>> instances() {
+        return INSTANCES;
+    }
+
+    /**
+     * 执行加载，或等待同一个键正在进行的加载并共享其结果。
+     *
+     * @param key    键。
+     * @param loader 加载函数。
+     * @return 加载结果。
+     * @throws RuntimeException 如果加载抛出异常；等待的调用方收到同一个异常。
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+
+        executions.increment();
+        try {
+            V value = loader.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * 获取名称。
+     *
+     * @return 创建时指定的名称。
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 获取启动以来的统计。
+     *
+     * @return 加载次数和合并次数。
+     */
+    public Metrics metrics() {
+        return new Metrics(executions.sum(), coalesced.sum());
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
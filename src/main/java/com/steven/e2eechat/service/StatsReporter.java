@@ -0,0 +1,116 @@
+package com.steven.e2eechat.service;
+
+import com.steven.e2eechat.config.DatabaseConfig;
+import com.steven.e2eechat.config.PinningMonitor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code StatsReporter} 定期将各组件启动以来的统计写入日志，用于在没有监控系统的部署中观察这些优化的实际效果。
+ * <p>
+ * 输出连接池的使用情况（{@link DatabaseConfig#getPoolStats()}）、启用诊断时虚拟线程被固定的次数，
+ * 各 {@link Bulkhead} 的执行数、排队数和拒绝数，{@link AdmissionController} 当前的负载等级和各优先级的拒绝数，
+ * 以及 {@link SingleFlight} 各实例的加载次数和合并次数。
+ * <p>
+ * 配置项（`db.properties`）：{@code stats.logIntervalSeconds}，默认 60 秒，0 表示不输出。
+ */
+public class StatsReporter {
+    private static final Logger logger = Logger.getLogger(StatsReporter.class.getName());
+
+    private static final StatsReporter INSTANCE = new StatsReporter();
+
+    private final long intervalSeconds;
+    private ScheduledExecutorService executor;
+
+    private StatsReporter() {
+        this.intervalSeconds = Long.parseLong(DatabaseConfig.getProperty("stats.logIntervalSeconds", "60"));
+    }
+
+    /**
+     * 获取 {@code StatsReporter} 的单例实例。
+     *
+     * @return {@code StatsReporter} 实例。
+     */
+    public static StatsReporter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 启动定期输出统计的后台任务。间隔为 0 时不执行任何操作。
+     */
+    public synchronized void start() {
+        if (intervalSeconds <= 0 || executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stats-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止后台任务。
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void report() {
+        try {
+            logger.info("连接池: " + DatabaseConfig.getPoolStats());
+            PinningMonitor pinningMonitor = PinningMonitor.getInstance();
+            if (pinningMonitor.isEnabled()) {
+                logger.info("虚拟线程固定次数: " + pinningMonitor.getPinnedEvents());
+            }
+            logger.info("隔离舱: " + bulkheadStats());
+            logger.info("负载削减: " + admissionStats());
+            logger.info("合并读取: " + singleFlightStats());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "输出运行统计失败", e);
+        }
+    }
+
+    private static String bulkheadStats() {
+        StringBuilder stats = new StringBuilder();
+        for (Bulkhead bulkhead : Bulkhead.all()) {
+            Bulkhead.Metrics metrics = bulkhead.metrics();
+            if (!stats.isEmpty()) {
+                stats.append("; ");
+            }
+            stats.append(bulkhead.name()).append(" 执行 ").append(metrics.active())
+                    .append("，排队 ").append(metrics.queued())
+                    .append("，拒绝 ").append(metrics.rejected());
+        }
+        return stats.isEmpty() ? "无" : stats.toString();
+    }
+
+    private static String admissionStats() {
+        AdmissionController admission = AdmissionController.getInstance();
+        return String.format("负载等级 %d，拒绝轮询 %d，拒绝历史 %d",
+                admission.loadLevel(),
+                admission.shedCount(AdmissionController.Priority.LIST_POLL),
+                admission.shedCount(AdmissionController.Priority.HISTORY));
+    }
+
+    private static String singleFlightStats() {
+        StringBuilder stats = new StringBuilder();
+        for (SingleFlight<?, ?> flight : SingleFlight.instances()) {
+            SingleFlight.Metrics metrics = flight.metrics();
+            if (!stats.isEmpty()) {
+                stats.append("; ");
+            }
+            stats.append(flight.name()).append(" 执行 ").append(metrics.executions())
+                    .append("，合并 ").append(metrics.coalesced());
+        }
+        return stats.isEmpty() ? "无" : stats.toString();
+    }
+}
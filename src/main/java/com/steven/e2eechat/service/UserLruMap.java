@@ -0,0 +1,54 @@
+package com.steven.e2eechat.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * {@code UserLruMap} 是按用户分区的内存缓存共用的有界映射，超过用户数上限时淘汰最久未访问的用户。
+ * <p>
+ * 内部是按访问顺序排列的 {@link LinkedHashMap}，每个操作都在同一把锁内完成；
+ * 锁内只做哈希查找和链表调整，缓存的值由调用方在锁外构造。
+ *
+ * @param <V> 每个用户缓存的值。
+ */
+class UserLruMap<V> {
+    private final Map<UUID, V> entries;
+
+    /**
+     * 创建映射。
+     *
+     * @param maxUsers 最多保留的用户数。
+     */
+    UserLruMap(int maxUsers) {
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, V> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+
+    V get(UUID userId) {
+        return entries.get(userId);
+    }
+
+    V computeIfAbsent(UUID userId, Function<UUID, V> mappingFunction) {
+        return entries.computeIfAbsent(userId, mappingFunction);
+    }
+
+    V compute(UUID userId, BiFunction<UUID, V, V> remappingFunction) {
+        return entries.compute(userId, remappingFunction);
+    }
+
+    void put(UUID userId, V value) {
+        entries.put(userId, value);
+    }
+
+    void remove(UUID userId) {
+        entries.remove(userId);
+    }
+}
@@ -1,5 +1,6 @@
 package com.steven.e2eechat.service;
 
+import com.steven.e2eechat.dao.UnitOfWork;
 import com.steven.e2eechat.dao.UserDAO;
 import com.steven.e2eechat.dto.db.UserSaltDTO;
 import com.steven.e2eechat.dto.service.CryptoResult;
@@ -7,6 +8,8 @@ import com.steven.e2eechat.dto.web.LoginRequest;
 import com.steven.e2eechat.dto.web.RegisterRequest;
 import com.steven.e2eechat.model.UserProfile;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -14,8 +17,12 @@ import java.util.UUID;
  * {@code UserService} 负责处理用户注册、登录、信息查询等与用户相关的业务逻辑。
  * <p>
  * 该服务依赖于 {@link UserDAO} 进行数据库操作，并使用 {@link CryptoService} 进行密码学相关的操作。
+ * 按ID查询用户资料的并发请求经由 {@link SingleFlight} 合并为一次数据库查询。
  */
 public class UserService {
+    private static final SingleFlight<UUID, Optional<UserProfile>> USER_PROFILE_FLIGHT =
+            new SingleFlight<>("userProfile");
+
     private final UserDAO userDAO;
     private final CryptoService cryptoService;
 
@@ -70,6 +77,7 @@ public class UserService {
      * <p>
      * 根据提供的注册请求，生成密码盐值和哈希值，并生成用于用户保险库的主密钥。
      * 然后将用户信息、密码哈希和盐值、保险库主密钥等信息注册到数据库中。
+     * 注册和读取新用户信息在同一个事务中执行，任一步失败时注册不会生效。
      *
      * @param request 包含用户名、显示名称和密码的注册请求对象。
      * @return 如果注册成功，则返回包含新用户信息 的 {@link Optional<UserProfile>}；否则返回空的 {@link Optional}。
@@ -81,27 +89,41 @@ public class UserService {
         // 生成保险库主密钥
         byte[] vaultMasterKey = cryptoService.generateSecureBytes(32);
 
-        // 注册用户
-        Optional<UUID> userId = userDAO.registerUser(
-                request.getUsername(),
-                request.getDisplayName(),
-                passwordResult.hash(),
-                passwordResult.random(),
-                vaultMasterKey
-        );
-
-        // 获取用户信息
-        return userId.flatMap(userDAO::getUserProfile);
+        // 注册用户并读取用户信息，两步在同一事务中完成
+        return UnitOfWork.inTransaction(() -> {
+            Optional<UUID> userId = userDAO.registerUser(
+                    request.getUsername(),
+                    request.getDisplayName(),
+                    passwordResult.hash(),
+                    passwordResult.random(),
+                    vaultMasterKey
+            );
+
+            // 获取用户信息
+            return userId.flatMap(userDAO::getUserProfile);
+        });
     }
 
     /**
      * 根据用户ID获取用户资料。
+     * <p>
+     * 返回的用户资料可能被并发的其他请求共享，调用方不能修改它。
      *
      * @param userId 要获取的用户ID。
      * @return 如果用户存在，则返回包含用户资料的 {@link Optional<UserProfile>}；否则返回空的 {@link Optional}。
      */
     public Optional<UserProfile> getUserById(UUID userId) {
-        return userDAO.getUserProfile(userId);
+        return USER_PROFILE_FLIGHT.execute(userId, () -> userDAO.getUserProfile(userId));
+    }
+
+    /**
+     * 根据多个用户ID获取用户资料，所有查询在一次数据库往返中完成。
+     *
+     * @param userIds 要获取的用户ID。
+     * @return 用户ID到用户资料的映射，不存在的用户不包含在内。
+     */
+    public Map<UUID, UserProfile> getUsersByIds(Collection<UUID> userIds) {
+        return userDAO.getUserProfiles(userIds);
     }
 
     /**
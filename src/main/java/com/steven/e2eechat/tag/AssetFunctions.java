@@ -0,0 +1,29 @@
+package com.steven.e2eechat.tag;
+
+import com.steven.e2eechat.service.AssetIndex;
+
+/**
+ * {@code AssetFunctions} 提供在 JSP 中生成静态资源 URL 的 EL 函数。
+ * <p>
+ * 在 `WEB-INF/tld/assets.tld` 中注册，使用方式：
+ * <pre>
+ * &lt;%@ taglib prefix="asset" uri="https://steven.com/e2eechat/assets" %&gt;
+ * &lt;link href="${pageContext.request.contextPath}${asset:url('css/dist/chat.css')}" rel="stylesheet"&gt;
+ * </pre>
+ */
+public final class AssetFunctions {
+
+    /**
+     * 将资源的逻辑路径解析为带内容哈希的版本化 URL。
+     *
+     * @param path 相对于 `/assets` 的逻辑路径，例如 {@code css/dist/chat.css}。
+     * @return 以 {@code /assets/} 开头、不含上下文路径的 URL。
+     */
+    public static String url(String path) {
+        return AssetIndex.getInstance().resolve(path);
+    }
+
+    private AssetFunctions() {
+        throw new UnsupportedOperationException("工具类不能实例化");
+    }
+}
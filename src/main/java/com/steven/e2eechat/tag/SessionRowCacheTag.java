@@ -0,0 +1,121 @@
+package com.steven.e2eechat.tag;
+
+import com.steven.e2eechat.model.ChatSession;
+import com.steven.e2eechat.model.UserProfile;
+import com.steven.e2eechat.service.SessionRowCache;
+import com.steven.e2eechat.service.SessionRowCache.RowKey;
+import jakarta.servlet.jsp.JspException;
+import jakarta.servlet.jsp.tagext.BodyTagSupport;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * {@code SessionRowCacheTag} 为会话列表中的一行提供片段缓存。
+ * <p>
+ * 标签根据会话 ID、最后一条消息 ID、对方最后上线时间所在的分钟和当前日期计算 {@link RowKey}。
+ * 命中 {@link SessionRowCache} 时直接输出缓存的片段并跳过标签体；否则执行标签体（其中可以包含脚本片段），
+ * 将输出保存到缓存后再写出。
+ * <p>
+ * 使用方式：
+ * <pre>
+ * &lt;fragment:sessionRow viewer="${user}" session="${chatSession}" otherUser="${otherUser}"&gt;
+ *     ...
+ * &lt;/fragment:sessionRow&gt;
+ * </pre>
+ */
+public class SessionRowCacheTag extends BodyTagSupport {
+    /**
+     * 会话列表显示时间使用的时区（东八区），与 `list.jsp` 保持一致。
+     */
+    private static final ZoneOffset DISPLAY_OFFSET = ZoneOffset.ofHours(8);
+
+    private UserProfile viewer;
+    private ChatSession session;
+    private UserProfile otherUser;
+    private RowKey key;
+
+    public void setViewer(UserProfile viewer) {
+        this.viewer = viewer;
+    }
+
+    public void setSession(ChatSession session) {
+        this.session = session;
+    }
+
+    public void setOtherUser(UserProfile otherUser) {
+        this.otherUser = otherUser;
+    }
+
+    /**
+     * 查找缓存的片段，命中时直接输出并跳过标签体。
+     *
+     * @return 命中缓存时返回 {@link #SKIP_BODY}，否则返回 {@link #EVAL_BODY_BUFFERED}。
+     * @throws JspException 如果写出片段时发生 I/O 错误。
+     */
+    @Override
+    public int doStartTag() throws JspException {
+        OffsetDateTime now = OffsetDateTime.now(DISPLAY_OFFSET);
+        key = new RowKey(
+                session.getSessionId(),
+                session.getLastMessageId().orElse(null),
+                lastOnlineBucket(otherUser.getLastOnline(), now),
+                now.toLocalDate().toEpochDay());
+
+        String html = SessionRowCache.getInstance().get(viewer.getUserId(), key);
+        if (html == null) {
+            return EVAL_BODY_BUFFERED;
+        }
+        try {
+            pageContext.getOut().write(html);
+        } catch (IOException e) {
+            throw new JspException("输出会话行片段失败", e);
+        }
+        return SKIP_BODY;
+    }
+
+    /**
+     * 将新渲染的标签体保存到缓存并写出。
+     *
+     * @return {@link #EVAL_PAGE}。
+     * @throws JspException 如果写出片段时发生 I/O 错误。
+     */
+    @Override
+    public int doEndTag() throws JspException {
+        try {
+            if (bodyContent != null) {
+                String html = bodyContent.getString();
+                SessionRowCache.getInstance().put(viewer.getUserId(), key, html);
+                bodyContent.getEnclosingWriter().write(html);
+            }
+        } catch (IOException e) {
+            throw new JspException("输出会话行片段失败", e);
+        }
+        return EVAL_PAGE;
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        viewer = null;
+        session = null;
+        otherUser = null;
+        key = null;
+    }
+
+    /**
+     * 计算最后上线时间所在的分钟。
+     * <p>
+     * "当前在线"的判断与 `list.jsp` 一致：距离最后上线不足一分钟。
+     */
+    private static long lastOnlineBucket(OffsetDateTime lastOnline, OffsetDateTime now) {
+        if (Duration.between(lastOnline, now).toMinutes() < 1) {
+            return Long.MIN_VALUE;
+        }
+        return lastOnline.toEpochSecond() / ChronoUnit.MINUTES.getDuration().getSeconds();
+    }
+}
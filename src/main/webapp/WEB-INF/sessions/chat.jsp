@@ -1,34 +1,14 @@
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
 <%@ page import="com.steven.e2eechat.model.UserProfile" %>
-<%@ page import="com.steven.e2eechat.model.ChatSession" %>
-<%@ page import="com.steven.e2eechat.service.UserService" %>
 <%@ page import="java.util.Base64" %>
-<%@ page import="java.util.UUID" %>
 <%@ taglib prefix="c" uri="jakarta.tags.core" %>
+<%@ taglib prefix="asset" uri="https://steven.com/e2eechat/assets" %>
 <%
-    ChatSession chatSession = (ChatSession) request.getAttribute("session");
     UserProfile currentUser = (UserProfile) request.getSession().getAttribute("user");
-    UserService userService = new UserService();
-
-    // 确定对方的userId
-    UUID otherUserId = chatSession.getInitiatorId().equals(currentUser.getUserId())
-            ? chatSession.getParticipantId()
-            : chatSession.getInitiatorId();
-
-    // 获取对方的用户资料
-    UserProfile otherUser = userService.getUserById(otherUserId).orElse(null);
-
-    if (otherUser == null || otherUser.getPublicKey() == null) {
-        session.setAttribute("messageLevel", "error");
-        session.setAttribute("messageContent", "对方的保险库尚未就绪，无法开始加密通信");
-        response.sendRedirect(request.getContextPath() + "/sessions");
-        return;
-    }
 
+    // 对方的用户资料由控制器与会话信息、首屏消息一起读取
+    UserProfile otherUser = (UserProfile) request.getAttribute("otherUser");
     String otherUserPublicKey = Base64.getEncoder().encodeToString(otherUser.getPublicKey());
-    
-    // 设置request属性以供JSTL使用
-    request.setAttribute("otherUser", otherUser);
 %>
 <!doctype html>
 <html lang="en">
@@ -36,7 +16,7 @@
     <meta charset="UTF-8"/>
     <meta name="viewport" content="width=device-width, initial-scale=1.0"/>
     <title>聊天 - E2EE Chat</title>
-    <link href="${pageContext.request.contextPath}/assets/css/dist/chat.css" rel="stylesheet">
+    <link href="${pageContext.request.contextPath}${asset:url('css/dist/chat.css')}" rel="stylesheet">
 </head>
 <body class="bg-gray-100">
 <div class="chat-dialog">
@@ -84,10 +64,16 @@
 <script>
     const PEER_PUBLIC_KEY = '<%= otherUserPublicKey %>';
     const CURRENT_USER_ID = '<%= currentUser.getUserId() %>';
+    // 首屏数据：会话信息、对方资料和以首条未读消息（或指定消息）为锚点的消息窗口
+    const INITIAL_CHAT = <%= request.getAttribute("bootstrapJson") %>;
     
     // 全局消息存储
     const messages = new Map();
     let lastCursor = -1;
+    // 长轮询：没有新消息时服务器最多等待的秒数
+    const LONG_POLL_SECONDS = 25;
+    // 长轮询失败后重试前等待的毫秒数
+    const POLL_RETRY_DELAY = 3000;
 
     function showError(message) {
         const errorSnackbar = document.getElementById('error-snackbar');
@@ -98,15 +84,28 @@
         }, 5000);
     }
 
-    document.addEventListener('DOMContentLoaded', function () {
+    document.addEventListener('DOMContentLoaded', async function () {
         if (!sessionStorage.getItem('privateKey')) {
             window.location.href = '${pageContext.request.contextPath}/vault';
+            return;
         }
         
-        // 页面加载时初始化共享密钥
-        initializeSharedKey();
+        // 页面加载时初始化共享密钥，之后显示首屏消息并开始长轮询
+        await initializeSharedKey();
+        await showChatWindow(INITIAL_CHAT);
+        const hashMessageId = messageIdFromHash();
+        if (hashMessageId) {
+            await jumpToMessage(hashMessageId);
+        }
+        pollNewMessages();
     });
 
+    // 长轮询新消息：服务器在有新消息或等待超时后返回，随即发起下一次请求；失败时稍后重试
+    async function pollNewMessages() {
+        const ok = await loadNewMessages(LONG_POLL_SECONDS);
+        setTimeout(pollNewMessages, ok ? 0 : POLL_RETRY_DELAY);
+    }
+
     // 初始化共享密钥
     let sharedKey = null;
     async function initializeSharedKey() {
@@ -176,19 +175,13 @@
         }
     }
 
-    // 辅助函数：将字节数组转换为Base64
-    function bytesToBase64(bytes) {
-        const binString = Array.from(bytes, (x) => String.fromCharCode(x & 0xFF)).join('');
-        return btoa(binString);
-    }
-
     // 辅助函数：将Base64转换为字节数组
     function base64ToBytes(base64) {
         const binString = atob(base64);
         return new Uint8Array(binString.split('').map(c => c.charCodeAt(0)));
     }
 
-    // 加密函数：接收明文，返回密文和IV的Base64编码
+    // 加密函数：接收明文，返回密文和IV的原始字节
     async function encrypt(plaintext) {
         try {
             // 生成随机IV
@@ -208,13 +201,9 @@
                 plaintextBytes
             );
             
-            // 将密文和IV转换为Base64
-            const ciphertextBase64 = bytesToBase64(new Uint8Array(ciphertext));
-            const ivBase64 = bytesToBase64(iv);
-            
             return {
-                ciphertext: ciphertextBase64,
-                iv: ivBase64
+                ciphertext: new Uint8Array(ciphertext),
+                iv: iv
             };
         } catch (error) {
             showError('加密失败：' + error.message);
@@ -222,12 +211,12 @@
         }
     }
 
-    // 解密函数：接收密文和IV的Base64编码，返回明文
-    async function decrypt(ciphertextBase64, ivBase64) {
+    // 解密函数：接收密文和IV（原始字节或Base64编码），返回明文
+    async function decrypt(ciphertextData, ivData) {
         try {
-            // 将Base64转换回 Uint8Array
-            const ciphertext = base64ToBytes(ciphertextBase64);
-            const iv = base64ToBytes(ivBase64);
+            // 如果是Base64字符串则转换为 Uint8Array
+            const ciphertext = typeof ciphertextData === 'string' ? base64ToBytes(ciphertextData) : ciphertextData;
+            const iv = typeof ivData === 'string' ? base64ToBytes(ivData) : ivData;
             
             // 解密
             const plaintextBytes = await crypto.subtle.decrypt(
@@ -248,26 +237,97 @@
         }
     }
 
+    // 二进制消息格式的媒体类型，格式定义见 MessageBinaryCodec
+    const BINARY_MEDIA_TYPE = 'application/octet-stream';
+
+    // 将发送消息请求编码为二进制格式
+    function encodeBinaryMessage(iv, ciphertext, isSystem) {
+        const body = new Uint8Array(3 + iv.length + 4 + ciphertext.length);
+        const view = new DataView(body.buffer);
+        let offset = 0;
+        view.setUint8(offset++, 1);
+        view.setUint8(offset++, isSystem ? 1 : 0);
+        view.setUint8(offset++, iv.length);
+        body.set(iv, offset);
+        offset += iv.length;
+        view.setUint32(offset, ciphertext.length);
+        offset += 4;
+        body.set(ciphertext, offset);
+        return body;
+    }
+
+    // 将16字节UUID转换为字符串
+    function bytesToUuid(bytes, offset) {
+        let hex = '';
+        for (let i = 0; i < 16; i++) {
+            hex += bytes[offset + i].toString(16).padStart(2, '0');
+        }
+        return hex.substring(0, 8) + '-' + hex.substring(8, 12) + '-' + hex.substring(12, 16) + '-'
+            + hex.substring(16, 20) + '-' + hex.substring(20);
+    }
+
+    // 解码二进制格式的消息列表
+    function decodeBinaryMessages(buffer) {
+        const bytes = new Uint8Array(buffer);
+        const view = new DataView(buffer);
+        let offset = 0;
+        const version = view.getUint8(offset++);
+        // 版本 1 带消息数量；版本 2 的消息一直排列到响应体结束
+        let count = Infinity;
+        if (version === 1) {
+            count = view.getUint32(offset);
+            offset += 4;
+        } else if (version !== 2) {
+            throw new Error('不支持的消息格式版本');
+        }
+        const result = [];
+        for (let i = 0; i < count && offset < bytes.length; i++) {
+            const messageId = bytesToUuid(bytes, offset);
+            offset += 16;
+            const cursor = Number(view.getBigInt64(offset));
+            offset += 8;
+            const senderId = bytesToUuid(bytes, offset);
+            offset += 16;
+            const receiverId = bytesToUuid(bytes, offset);
+            offset += 16;
+            const flags = view.getUint8(offset++);
+            const sentAtMicros = view.getBigInt64(offset);
+            offset += 8;
+            const ivLength = view.getUint8(offset++);
+            const messageIv = bytes.slice(offset, offset + ivLength);
+            offset += ivLength;
+            const contentLength = view.getUint32(offset);
+            offset += 4;
+            const messageContent = bytes.slice(offset, offset + contentLength);
+            offset += contentLength;
+            result.push({
+                messageId: messageId,
+                cursor: cursor,
+                senderId: senderId,
+                receiverId: receiverId,
+                isSystem: (flags & 1) !== 0,
+                isRead: (flags & 2) !== 0,
+                sentAt: new Date(Number(sentAtMicros / 1000n)).toISOString(),
+                messageIv: messageIv,
+                messageContent: messageContent
+            });
+        }
+        return result;
+    }
+
     // 发送消息
     async function sendMessage(content, isSystem = false) {
         try {
             // 加密消息内容
             const encrypted = await encrypt(content);
             
-            // 准备请求数据
-            const data = {
-                message_content: encrypted.ciphertext,
-                message_iv: encrypted.iv,
-                is_system: isSystem
-            };
-            
             // 发送POST请求
             const response = await fetch(window.location.pathname + '/messages', {
                 method: 'POST',
                 headers: {
-                    'Content-Type': 'application/json'
+                    'Content-Type': BINARY_MEDIA_TYPE
                 },
-                body: JSON.stringify(data)
+                body: encodeBinaryMessage(encrypted.iv, encrypted.ciphertext, isSystem)
             });
             
             if (!response.ok) {
@@ -283,21 +343,28 @@
         }
     }
 
-    // 获取新消息
-    async function loadNewMessages() {
+    // 获取新消息，wait 为没有新消息时服务器最多等待的秒数；成功时返回 true
+    async function loadNewMessages(wait) {
         try {
             // 构建URL
             const url = new URL(window.location.pathname + '/messages', window.location.origin);
             if (lastCursor >= 0) {
                 url.searchParams.append('cursor', lastCursor);
                 url.searchParams.append('direction', 'after');
+                if (wait) {
+                    url.searchParams.append('wait', wait);
+                }
             }
             url.searchParams.append('limit', '50');
             
             console.log('正在请求新消息，URL:', url.toString());
             
             // 发送GET请求
-            const response = await fetch(url);
+            const response = await fetch(url, {
+                headers: {
+                    'Accept': BINARY_MEDIA_TYPE
+                }
+            });
             if (response.redirected) {
                 console.log('请求被重定向，正在跳转到:', response.url);
                 window.location.href = response.url;
@@ -307,7 +374,7 @@
                 throw new Error('获取消息失败：' + response.statusText);
             }
             
-            const messages = await response.json();
+            const messages = decodeBinaryMessages(await response.arrayBuffer());
             console.log('成功获取 ' + messages.length + ' 条新消息');
             
             if (messages.length > 0) {
@@ -315,8 +382,8 @@
                 const newMessages = lastCursor >= 0 ? messages.slice(1) : messages;
                 
                 if (newMessages.length > 0) {
-                    // 更新最后一条消息的游标
-                    lastCursor = messages[messages.length - 1].cursor;
+                    // 更新最后一条消息的游标（发送消息后的读取可能与长轮询同时进行，游标只前进不后退）
+                    lastCursor = Math.max(lastCursor, messages[messages.length - 1].cursor);
                     console.log('更新lastCursor为:', lastCursor);
                     
                     // 解密并显示消息
@@ -329,15 +396,86 @@
             } else if (lastCursor >= 0) {
                 console.log('游标非空但返回空列表，可能出错了');
                 showError('获取消息失败，请刷新页面重试');
+                return false;
             } else {
                 console.log('没有新消息');
             }
+            return true;
         } catch (error) {
             console.error('获取消息失败:', error);
             showError('获取消息失败：' + error.message);
+            return false;
         }
     }
 
+    // 显示打开聊天时返回的消息窗口，并滚动到锚点消息
+    async function showChatWindow(chat) {
+        clearMessages();
+        await displayMessages(chat.messages);
+        if (chat.messages.length > 0) {
+            lastCursor = chat.messages[chat.messages.length - 1].cursor;
+        }
+
+        const anchor = chat.messages.find(message => message.cursor === chat.anchorCursor);
+        const anchorElement = anchor
+            ? document.querySelector('[data-message-id="' + anchor.messageId + '"]')
+            : null;
+        if (anchorElement) {
+            if (chat.anchorUnread) {
+                const divider = document.createElement('div');
+                divider.className = 'divider-text';
+                divider.setAttribute('data-text', '未读消息');
+                anchorElement.parentNode.insertBefore(divider, anchorElement);
+            }
+            anchorElement.scrollIntoView({ block: 'center' });
+        }
+
+        // 窗口没有到达最新消息时立即继续加载，不等待下一次轮询
+        if (lastCursor >= 0 && lastCursor < chat.session.messageCounter) {
+            await loadNewMessages();
+            if (anchorElement) {
+                anchorElement.scrollIntoView({ block: 'center' });
+            }
+        }
+    }
+
+    // 跳转到指定消息：已显示时直接滚动，否则重新加载以该消息为锚点的窗口
+    async function jumpToMessage(messageId) {
+        const element = document.querySelector('[data-message-id="' + messageId + '"]');
+        if (element) {
+            element.scrollIntoView({ block: 'center' });
+            return;
+        }
+        try {
+            const url = new URL(window.location.pathname + '/open', window.location.origin);
+            url.searchParams.append('messageId', messageId);
+            const response = await fetch(url);
+            if (response.redirected) {
+                window.location.href = response.url;
+                return;
+            }
+            if (!response.ok) {
+                throw new Error(response.statusText);
+            }
+            await showChatWindow(await response.json());
+        } catch (error) {
+            showError('跳转到消息失败：' + error.message);
+        }
+    }
+
+    // 从地址中的 #message-{id} 解析要跳转的消息ID
+    function messageIdFromHash() {
+        const match = /^#message-([0-9a-fA-F-]{36})$/.exec(window.location.hash);
+        return match ? match[1] : null;
+    }
+
+    window.addEventListener('hashchange', async () => {
+        const messageId = messageIdFromHash();
+        if (messageId) {
+            await jumpToMessage(messageId);
+        }
+    });
+
     // 安全地格式化消息文本
     function formatMessageSecure(text) {
         const elements = [];
@@ -429,10 +567,7 @@
                 }
 
                 // 解密消息内容
-                const content = await decrypt(
-                    bytesToBase64(message.messageContent),
-                    bytesToBase64(message.messageIv)
-                );
+                const content = await decrypt(message.messageContent, message.messageIv);
 
                 // 将消息添加到全局存储
                 messages.set(message.messageId, {
@@ -589,12 +724,6 @@
             }
         }
     });
-
-    // 定期检查新消息
-    setInterval(loadNewMessages, 3000);
-
-    // 初始加载消息
-    loadNewMessages();
 </script>
 </body>
 </html>
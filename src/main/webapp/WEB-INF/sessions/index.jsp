@@ -1,13 +1,14 @@
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
 <%@ page import="com.steven.e2eechat.model.UserProfile" %>
 <%@ taglib prefix="c" uri="jakarta.tags.core" %>
+<%@ taglib prefix="asset" uri="https://steven.com/e2eechat/assets" %>
 <!DOCTYPE html>
 <html lang="en">
 <head>
   <meta charset="UTF-8">
   <meta name="viewport" content="width=device-width, initial-scale=1.0">
   <title>会话 - E2EE Chat</title>
-  <link href="${pageContext.request.contextPath}/assets/css/dist/sessions.css" rel="stylesheet">
+  <link href="${pageContext.request.contextPath}${asset:url('css/dist/sessions.css')}" rel="stylesheet">
 </head>
 <body class="bg-gray-100">
   <%
@@ -94,14 +95,26 @@
       return true;
     }
 
-    // 定期更新会话列表
+    // 定期更新会话列表；服务器繁忙（503）时按 Retry-After 推迟下一次更新
+    const LIST_POLL_INTERVAL = 3000;
     function updateSessionsList() {
+      let delay = LIST_POLL_INTERVAL;
       fetch('${pageContext.request.contextPath}/sessions/list')
         .then(response => {
           if (response.redirected) {
             window.location.href = response.url;
             return;
           }
+          if (response.status === 503) {
+            const retryAfter = parseInt(response.headers.get('Retry-After'), 10);
+            if (retryAfter > 0) {
+              delay = retryAfter * 1000;
+            }
+            return;
+          }
+          if (!response.ok) {
+            throw new Error(response.statusText);
+          }
           return response.text();
         })
         .then(html => {
@@ -109,12 +122,12 @@
             document.getElementById('sessions-container').innerHTML = html;
           }
         })
-        .catch(error => console.error('更新会话列表失败:', error));
+        .catch(error => console.error('更新会话列表失败:', error))
+        .finally(() => setTimeout(updateSessionsList, delay));
     }
 
-    // 初始加载和定期更新
+    // 初始加载并开始定期更新
     updateSessionsList();
-    setInterval(updateSessionsList, 3000);
   </script>
 </body>
 </html>
\ No newline at end of file
@@ -4,6 +4,7 @@
 <%@ page import="java.time.format.DateTimeFormatter" %>
 <%@ taglib prefix="c" uri="jakarta.tags.core" %>
 <%@ taglib prefix="fn" uri="jakarta.tags.functions" %>
+<%@ taglib prefix="fragment" uri="https://steven.com/e2eechat/fragments" %>
 
 <c:choose>
     <c:when test="${empty sessions}">
@@ -16,6 +17,8 @@
             <c:set var="otherUserId" value="${chatSession.initiatorId eq user.userId ? chatSession.participantId : chatSession.initiatorId}" />
             <c:set var="otherUser" value="${profiles[otherUserId]}" />
             
+            <%-- 行内容未变化时直接输出缓存的片段，跳过下面的时间计算和渲染 --%>
+            <fragment:sessionRow viewer="${user}" session="${chatSession}" otherUser="${otherUser}">
             <%-- 计算显示时间 --%>
             <%
             UserProfile otherUser = (UserProfile)pageContext.getAttribute("otherUser");
@@ -93,6 +96,7 @@
                     </div>
                 </c:if>
             </div>
+            </fragment:sessionRow>
         </c:forEach>
     </c:otherwise>
 </c:choose>
@@ -1,11 +1,12 @@
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ taglib prefix="asset" uri="https://steven.com/e2eechat/assets" %>
 <!DOCTYPE html>
 <html>
 <head>
     <meta charset="UTF-8">
     <meta name="viewport" content="width=device-width, initial-scale=1.0">
     <title>保险库 - E2EE Chat</title>
-    <link href="${pageContext.request.contextPath}/assets/css/dist/styles.css" rel="stylesheet">
+    <link href="${pageContext.request.contextPath}${asset:url('css/dist/styles.css')}" rel="stylesheet">
 </head>
 <body class="bg-gray-100">
     <div class="content-panel-wrapper">
@@ -1,14 +1,15 @@
 <%@ page contentType="text/html;charset=UTF-8" language="java" %>
 <%@ page import="java.time.LocalDateTime" %>
 <%@ page import="java.time.format.DateTimeFormatter" %>
+<%@ taglib prefix="asset" uri="https://steven.com/e2eechat/assets" %>
 <!DOCTYPE html>
 <html lang="zh">
 <head>
     <meta charset="UTF-8">
     <meta name="viewport" content="width=device-width, initial-scale=1.0">
     <title>E2EE Chat - 组件展示</title>
-    <link href="./assets/css/dist/styles.css" rel="stylesheet">
-    <script src="./assets/js/forms.js"></script>
+    <link href="${pageContext.request.contextPath}${asset:url('css/dist/styles.css')}" rel="stylesheet">
+    <script src="${pageContext.request.contextPath}${asset:url('js/forms.js')}"></script>
     <script>
         // 更新服务器时间
         function updateServerTime() {